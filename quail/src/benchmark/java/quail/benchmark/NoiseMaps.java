@@ -0,0 +1,159 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.benchmark;
+
+import com.mineinjava.quail.pathing.OccupancyGrid;
+import java.util.Random;
+
+/**
+ * Generates seeded procedural obstacle maps.
+ *
+ * <p>Java version of the {@code PerlinNoise} maps used in {@code pathPlanner/theta_star.py}: a few
+ * octaves of Perlin noise are thresholded so that the requested fraction of the map is occupied.
+ * The same seed, size and density always produce the same map.
+ */
+public class NoiseMaps {
+  private static final int FEATURES = 8; // noise periods across the map
+  private static final int OCTAVES = 3;
+  private static final int HISTOGRAM_BUCKETS = 4096;
+
+  private NoiseMaps() {}
+
+  /**
+   * Generates a square map with unit cells and its lower-left corner at (0, 0).
+   *
+   * @param size number of rows and columns
+   * @param density fraction of the cells that are occupied, from 0 to 1
+   * @param seed the random seed
+   * @return the map
+   */
+  public static OccupancyGrid generate(int size, double density, long seed) {
+    int[] permutation = permutation(seed);
+    float[] values = new float[size * size];
+    for (int row = 0; row < size; row++) {
+      for (int column = 0; column < size; column++) {
+        double x = (double) column / size * FEATURES;
+        double y = (double) row / size * FEATURES;
+        double value = 0;
+        double amplitude = 1;
+        for (int octave = 0; octave < OCTAVES; octave++) {
+          value += amplitude * noise(permutation, x, y);
+          x *= 2;
+          y *= 2;
+          amplitude /= 2;
+        }
+        values[row * size + column] = (float) value;
+      }
+    }
+
+    float threshold = quantile(values, density);
+    OccupancyGrid grid = new OccupancyGrid(size, size, 1);
+    for (int row = 0; row < size; row++) {
+      for (int column = 0; column < size; column++) {
+        if (values[row * size + column] < threshold) {
+          grid.setOccupied(column, row, true);
+        }
+      }
+    }
+    return grid;
+  }
+
+  /** Returns (approximately) the value below which {@code fraction} of the values fall. */
+  private static float quantile(float[] values, double fraction) {
+    if (fraction <= 0) {
+      return Float.NEGATIVE_INFINITY;
+    }
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (float value : values) {
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    int[] histogram = new int[HISTOGRAM_BUCKETS];
+    float scale = (HISTOGRAM_BUCKETS - 1) / Math.max(max - min, 1e-9f);
+    for (float value : values) {
+      histogram[(int) ((value - min) * scale)]++;
+    }
+    long target = (long) (fraction * values.length);
+    long count = 0;
+    for (int bucket = 0; bucket < HISTOGRAM_BUCKETS; bucket++) {
+      count += histogram[bucket];
+      if (count >= target) {
+        return min + (bucket + 1) / scale;
+      }
+    }
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /** Ken Perlin's improved noise permutation table, shuffled with the seed. */
+  private static int[] permutation(long seed) {
+    Random random = new Random(seed);
+    int[] permutation = new int[512];
+    for (int i = 0; i < 256; i++) {
+      permutation[i] = i;
+    }
+    for (int i = 255; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = permutation[i];
+      permutation[i] = permutation[j];
+      permutation[j] = swap;
+    }
+    System.arraycopy(permutation, 0, permutation, 256, 256);
+    return permutation;
+  }
+
+  /** 2D improved Perlin noise, roughly in [-1, 1]. */
+  private static double noise(int[] p, double x, double y) {
+    int xi = (int) Math.floor(x) & 255;
+    int yi = (int) Math.floor(y) & 255;
+    x -= Math.floor(x);
+    y -= Math.floor(y);
+    double u = fade(x);
+    double v = fade(y);
+    int a = p[xi] + yi;
+    int b = p[xi + 1] + yi;
+    return lerp(
+        v,
+        lerp(u, gradient(p[a], x, y), gradient(p[b], x - 1, y)),
+        lerp(u, gradient(p[a + 1], x, y - 1), gradient(p[b + 1], x - 1, y - 1)));
+  }
+
+  private static double fade(double t) {
+    return t * t * t * (t * (t * 6 - 15) + 10);
+  }
+
+  private static double lerp(double t, double a, double b) {
+    return a + t * (b - a);
+  }
+
+  private static double gradient(int hash, double x, double y) {
+    switch (hash & 3) {
+      case 0:
+        return x + y;
+      case 1:
+        return -x + y;
+      case 2:
+        return x - y;
+      default:
+        return -x - y;
+    }
+  }
+}
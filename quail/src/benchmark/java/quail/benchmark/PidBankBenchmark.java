@@ -0,0 +1,101 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.benchmark;
+
+import com.mineinjava.quail.util.MiniPID;
+import com.mineinjava.quail.util.PidBank;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares updating N separate {@link MiniPID}s with updating a {@link PidBank} of the same size.
+ *
+ * <p>Both are set up like a swerve drive's motor controllers (output limits and a ramp rate), and
+ * each invocation runs one control cycle of every controller.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PidBankBenchmark {
+  @Param({"8", "64"})
+  public int controllers;
+
+  private MiniPID[] miniPids;
+  private PidBank bank;
+  private double[] actuals;
+  private double[] setpoints;
+  private double[] outputs;
+
+  @Setup
+  public void setup() {
+    miniPids = new MiniPID[controllers];
+    bank = new PidBank(controllers);
+    actuals = new double[controllers];
+    setpoints = new double[controllers];
+    outputs = new double[controllers];
+    for (int k = 0; k < controllers; k++) {
+      miniPids[k] = new MiniPID(0.8, 0.01, 0.1, 0.05);
+      miniPids[k].setOutputLimits(1);
+      miniPids[k].setOutputRampRate(0.1);
+      bank.setPID(k, 0.8, 0.01, 0.1, 0.05);
+      bank.setOutputLimits(k, 1);
+      bank.setOutputRampRate(k, 0.1);
+      setpoints[k] = k % 2 == 0 ? 1 : -1;
+    }
+  }
+
+  /** Moves each simulated mechanism by its last output, so the controllers keep working. */
+  private void advance() {
+    for (int k = 0; k < controllers; k++) {
+      actuals[k] += outputs[k] * 0.05;
+    }
+  }
+
+  @Benchmark
+  public void miniPid(Blackhole blackhole) {
+    advance();
+    for (int k = 0; k < controllers; k++) {
+      outputs[k] = miniPids[k].getOutput(actuals[k], setpoints[k]);
+    }
+    blackhole.consume(outputs);
+  }
+
+  @Benchmark
+  public void pidBank(Blackhole blackhole) {
+    advance();
+    bank.getOutputs(actuals, setpoints, outputs);
+    blackhole.consume(outputs);
+  }
+}
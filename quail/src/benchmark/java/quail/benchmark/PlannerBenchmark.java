@@ -0,0 +1,257 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.benchmark;
+
+import com.mineinjava.quail.pathing.AnytimePlanner;
+import com.mineinjava.quail.pathing.FlowField;
+import com.mineinjava.quail.pathing.GridPlanner;
+import com.mineinjava.quail.pathing.OccupancyGrid;
+import com.mineinjava.quail.pathing.Path;
+import com.mineinjava.quail.pathing.ThetaStarPlanner;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Runs every grid planner on the same seeded noise maps and start/goal pairs.
+ *
+ * <p>For each run this reports the nodes expanded, wall time, path length and bytes allocated by
+ * the planning thread. Run it with {@code ./gradlew benchmark}, optionally passing {@code --sizes},
+ * {@code --densities}, {@code --pairs}, {@code --seed} and {@code --repeats} through {@code
+ * --args}.
+ *
+ * <p>The visibility roadmap is not included because it plans around polygons, not grids.
+ */
+public class PlannerBenchmark {
+  private static final int WARMUP_SIZE = 200;
+  private static final int WARMUP_RUNS = 20;
+
+  /** Every planner under test, by name. */
+  static Map<String, Supplier<GridPlanner>> planners() {
+    Map<String, Supplier<GridPlanner>> planners = new LinkedHashMap<>();
+    planners.put("theta*", ThetaStarPlanner::new);
+    planners.put("theta* w=2", () -> new ThetaStarPlanner(2));
+    planners.put("flow field", FlowFieldPlanner::new);
+    planners.put("ara*", AnytimePlanner::new);
+    return planners;
+  }
+
+  public static void main(String[] args) {
+    int[] sizes = {100, 500, 1000, 2000, 4000};
+    double[] densities = {0.1, 0.2, 0.3};
+    int pairs = 3;
+    int repeats = 3;
+    long seed = 42;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--sizes":
+          sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+          break;
+        case "--densities":
+          densities =
+              Arrays.stream(args[i + 1].split(",")).mapToDouble(Double::parseDouble).toArray();
+          break;
+        case "--pairs":
+          pairs = Integer.parseInt(args[i + 1]);
+          break;
+        case "--repeats":
+          repeats = Integer.parseInt(args[i + 1]);
+          break;
+        case "--seed":
+          seed = Long.parseLong(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    Map<String, Supplier<GridPlanner>> planners = planners();
+    warmUp(planners, seed);
+
+    System.out.printf(
+        "%-12s %6s %7s %4s %10s %10s %10s %12s%n",
+        "planner", "size", "density", "pair", "expanded", "time ms", "length", "alloc KB");
+    for (int size : sizes) {
+      for (double density : densities) {
+        OccupancyGrid grid = NoiseMaps.generate(size, density, seed);
+        List<Pose2d[]> queries = queries(grid, pairs, seed);
+        for (Map.Entry<String, Supplier<GridPlanner>> entry : planners.entrySet()) {
+          GridPlanner planner = entry.getValue().get();
+          for (int pair = 0; pair < queries.size(); pair++) {
+            Pose2d[] query = queries.get(pair);
+            Result result = null;
+            for (int repeat = 0; repeat < repeats; repeat++) {
+              Result run = run(planner, grid, query[0], query[1]);
+              if (result == null || run.nanos < result.nanos) {
+                result = run; // report the fastest repeat
+              }
+            }
+            System.out.printf(
+                "%-12s %6d %7.2f %4d %10d %10.3f %10s %12d%n",
+                entry.getKey(),
+                size,
+                density,
+                pair,
+                result.nodesExpanded,
+                result.nanos / 1e6,
+                result.length < 0 ? "none" : String.format("%.1f", result.length),
+                result.allocatedBytes / 1024);
+          }
+        }
+      }
+    }
+  }
+
+  /** Gives the JIT a chance to compile the planners before anything is measured. */
+  private static void warmUp(Map<String, Supplier<GridPlanner>> planners, long seed) {
+    OccupancyGrid grid = NoiseMaps.generate(WARMUP_SIZE, 0.2, seed + 1);
+    List<Pose2d[]> queries = queries(grid, 1, seed + 1);
+    for (Supplier<GridPlanner> supplier : planners.values()) {
+      GridPlanner planner = supplier.get();
+      for (int i = 0; i < WARMUP_RUNS; i++) {
+        for (Pose2d[] query : queries) {
+          planner.plan(grid, query[0], query[1]);
+        }
+      }
+    }
+  }
+
+  private static Result run(GridPlanner planner, OccupancyGrid grid, Pose2d start, Pose2d goal) {
+    long allocatedBefore = allocatedBytes();
+    long startTime = System.nanoTime();
+    Path path = planner.plan(grid, start, goal);
+    long nanos = System.nanoTime() - startTime;
+    long allocated = allocatedBytes() - allocatedBefore;
+    return new Result(
+        planner.getNodesExpanded(), nanos, path == null ? -1 : path.length(), allocated);
+  }
+
+  /**
+   * Picks seeded start/goal pairs that are connected and at least half the map apart.
+   *
+   * <p>Every planner is run on exactly the same pairs.
+   */
+  private static List<Pose2d[]> queries(OccupancyGrid grid, int count, long seed) {
+    Random random = new Random(seed);
+    int size = grid.getWidth();
+    int[] component = new int[size * size];
+    int[] queue = new int[size * size];
+    List<Pose2d[]> queries = new ArrayList<>();
+    for (int attempt = 0; queries.size() < count && attempt < 1000; attempt++) {
+      int startColumn = random.nextInt(size);
+      int startRow = random.nextInt(size);
+      if (grid.isOccupied(startColumn, startRow)) {
+        continue;
+      }
+      label(grid, component, queue, startColumn, startRow, attempt + 1);
+      for (int tries = 0; tries < 1000; tries++) {
+        int goalColumn = random.nextInt(size);
+        int goalRow = random.nextInt(size);
+        if (component[goalRow * size + goalColumn] == attempt + 1
+            && Math.hypot(goalColumn - startColumn, goalRow - startRow) >= size / 2.0) {
+          queries.add(
+              new Pose2d[] {
+                new Pose2d(grid.getCellCenterX(startColumn), grid.getCellCenterY(startRow), 0),
+                new Pose2d(grid.getCellCenterX(goalColumn), grid.getCellCenterY(goalRow), 0)
+              });
+          break;
+        }
+      }
+    }
+    return queries;
+  }
+
+  /** Flood fills the 4-connected free region around a cell with the label. */
+  private static void label(
+      OccupancyGrid grid, int[] component, int[] queue, int column, int row, int label) {
+    int size = grid.getWidth();
+    int head = 0;
+    int tail = 0;
+    queue[tail++] = row * size + column;
+    component[row * size + column] = label;
+    while (head < tail) {
+      int cell = queue[head++];
+      int x = cell % size;
+      int y = cell / size;
+      int[][] neighbors = {{x + 1, y}, {x - 1, y}, {x, y + 1}, {x, y - 1}};
+      for (int[] neighbor : neighbors) {
+        if (!grid.isOccupied(neighbor[0], neighbor[1])) {
+          int index = neighbor[1] * size + neighbor[0];
+          if (component[index] != label) {
+            component[index] = label;
+            queue[tail++] = index;
+          }
+        }
+      }
+    }
+  }
+
+  /** Returns the bytes allocated by this thread so far, or 0 if the JVM can't tell. */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  /**
+   * Builds a fresh flow field for every plan, so the times include the build.
+   *
+   * <p>Querying an existing field is much cheaper; this measures the one-off cost.
+   */
+  private static class FlowFieldPlanner implements GridPlanner {
+    private int nodesExpanded = 0;
+
+    @Override
+    public Path plan(OccupancyGrid grid, Pose2d start, Pose2d goal) {
+      FlowField field = FlowField.build(grid, goal);
+      nodesExpanded = field.getNodesExpanded();
+      return field.getPath(start);
+    }
+
+    @Override
+    public int getNodesExpanded() {
+      return nodesExpanded;
+    }
+  }
+
+  private static class Result {
+    final int nodesExpanded;
+    final long nanos;
+    final double length;
+    final long allocatedBytes;
+
+    Result(int nodesExpanded, long nanos, double length, long allocatedBytes) {
+      this.nodesExpanded = nodesExpanded;
+      this.nanos = nanos;
+      this.length = length;
+      this.allocatedBytes = allocatedBytes;
+    }
+  }
+}
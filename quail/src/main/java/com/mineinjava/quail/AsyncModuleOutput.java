@@ -0,0 +1,213 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Commits module outputs on a dedicated writer thread.
+ *
+ * <p>{@link #commit} only copies the setpoints and wakes the writer, which then passes them to the
+ * wrapped batch. The control loop can go on calculating while the (blocking) hardware writes run.
+ * If the loop commits again before the writer has caught up, the older setpoints are dropped, since
+ * only the latest ones matter.
+ *
+ * <p>The wrapped batch is only called from the writer thread.
+ */
+public class AsyncModuleOutput implements ModuleOutputBatch, AutoCloseable {
+  private final ModuleOutputBatch output;
+
+  // the control thread fills pending, the writer swaps it with writing under the lock
+  private final Object lock = new Object();
+  private double[] pendingAngles = new double[0];
+  private double[] pendingSpeeds = new double[0];
+  private double[] pendingRates = new double[0];
+  private boolean pendingHasRates = false;
+  private int pendingCount = 0;
+  private boolean hasPending = false;
+  private double[] writingAngles = new double[0];
+  private double[] writingSpeeds = new double[0];
+  private double[] writingRates = new double[0];
+
+  private volatile boolean running = false;
+  private volatile Thread thread;
+  private volatile RuntimeException failure;
+  private volatile long writeCount = 0;
+  private volatile long droppedCount = 0;
+
+  /**
+   * Creates an asynchronous output. Call {@link #start()} before committing.
+   *
+   * @param output does the actual writes, called on the writer thread
+   */
+  public AsyncModuleOutput(ModuleOutputBatch output) {
+    this.output = output;
+  }
+
+  /** Starts the writer thread. Does nothing if it is already running. */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    failure = null;
+    running = true;
+    Thread thread = new Thread(this::run, "quail-module-output");
+    thread.setDaemon(true);
+    this.thread = thread;
+    thread.start();
+  }
+
+  /** Stops the writer thread after the write in progress. Pending setpoints are dropped. */
+  public synchronized void stop() {
+    running = false;
+    Thread thread = this.thread;
+    if (thread == null) {
+      return;
+    }
+    LockSupport.unpark(thread);
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    this.thread = null;
+    // so a restart doesn't send setpoints that were committed before the stop
+    synchronized (lock) {
+      hasPending = false;
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void close() {
+    stop();
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Hands the setpoints to the writer thread. Doesn't allocate once the buffers have the size of
+   * the drive.
+   *
+   * @throws IllegalStateException if the writer thread isn't running
+   * @throws RuntimeException the exception that stopped the writer thread, if the wrapped batch
+   *     threw one
+   */
+  @Override
+  public void commit(double[] angles, double[] speeds, int count) {
+    commit(angles, null, speeds, count);
+  }
+
+  /**
+   * Hands the setpoints and steering feedforward to the writer thread. The wrapped batch gets the
+   * same overload: {@link #commit(double[], double[], int)} if the rates are null.
+   *
+   * @param angularVelocities the steering rates, or null for none
+   * @see #commit(double[], double[], int)
+   */
+  @Override
+  public void commit(double[] angles, double[] angularVelocities, double[] speeds, int count) {
+    RuntimeException failure = this.failure;
+    if (failure != null) {
+      throw failure;
+    }
+    if (!running) {
+      throw new IllegalStateException("The writer thread isn't running");
+    }
+    synchronized (lock) {
+      if (pendingAngles.length < count) {
+        pendingAngles = new double[count];
+        pendingSpeeds = new double[count];
+        pendingRates = new double[count];
+      }
+      System.arraycopy(angles, 0, pendingAngles, 0, count);
+      System.arraycopy(speeds, 0, pendingSpeeds, 0, count);
+      if (angularVelocities != null) {
+        System.arraycopy(angularVelocities, 0, pendingRates, 0, count);
+      }
+      pendingHasRates = angularVelocities != null;
+      pendingCount = count;
+      if (hasPending) {
+        droppedCount++;
+      }
+      hasPending = true;
+    }
+    LockSupport.unpark(thread);
+  }
+
+  /** Returns how many commits have been written by the wrapped batch. */
+  public long getWriteCount() {
+    return writeCount;
+  }
+
+  /** Returns how many commits were replaced by a newer one before they could be written. */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  private void run() {
+    while (running) {
+      int count;
+      boolean hasRates = false;
+      synchronized (lock) {
+        if (!hasPending) {
+          count = -1;
+        } else {
+          double[] angles = writingAngles;
+          double[] speeds = writingSpeeds;
+          double[] rates = writingRates;
+          writingAngles = pendingAngles;
+          writingSpeeds = pendingSpeeds;
+          writingRates = pendingRates;
+          pendingAngles = angles;
+          pendingSpeeds = speeds;
+          pendingRates = rates;
+          count = pendingCount;
+          hasRates = pendingHasRates;
+          hasPending = false;
+        }
+      }
+      if (count < 0) {
+        LockSupport.park(this);
+        continue;
+      }
+      try {
+        if (hasRates) {
+          output.commit(writingAngles, writingRates, writingSpeeds, count);
+        } else {
+          output.commit(writingAngles, writingSpeeds, count);
+        }
+      } catch (RuntimeException e) {
+        failure = e;
+        running = false;
+        return;
+      }
+      writeCount++;
+    }
+  }
+}
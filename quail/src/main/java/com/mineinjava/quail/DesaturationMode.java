@@ -0,0 +1,34 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail;
+
+/**
+ * How {@link SwerveDrive#move} slows down a movement that would make a module faster than its
+ * maximum speed.
+ */
+public enum DesaturationMode {
+  /** Scale translation and rotation down together, keeping their ratio. The default. */
+  UNIFORM,
+  /** Keep the rotation, and only slow down the translation as much as needed. */
+  ROTATION_PRIORITY,
+  /** Keep the translation, and only slow down the rotation as much as needed. */
+  TRANSLATION_PRIORITY
+}
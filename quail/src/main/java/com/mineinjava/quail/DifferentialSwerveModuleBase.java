@@ -20,9 +20,26 @@
 
 package com.mineinjava.quail;
 
+import com.mineinjava.quail.localization.SwerveOdometry;
 import com.mineinjava.quail.util.geometry.Vec2d;
-
-/** A base class for differential swerve modules. */
+import java.util.List;
+
+/**
+ * A base class for differential swerve modules.
+ *
+ * <p>Both motors of a differential module drive the wheel and the steering together: their average
+ * turns the pod, and their difference turns the wheel. The static methods convert between motor
+ * speeds and pod rotation and wheel speeds for a whole drivetrain at once, into arrays the caller
+ * keeps, so a control loop can run them without allocating. {@link
+ * SwerveDrive#calculateModuleStates} gives the module angles and speeds to turn into motor speeds,
+ * and {@link SwerveOdometry#calculateOdometry(double[], double[], double[])} takes the measured
+ * angles and wheel speeds back.
+ *
+ * <p>The kinematics methods use one steering ratio convention: each motor turns at {@code
+ * rotationSpeed / (2 * steeringRatio)} for the pod rotation, so the pod turns at {@code (motor1 +
+ * motor2) * steeringRatio}. The drive ratio works the same way on the difference of the motors. The
+ * older {@link #calculateModuleAngle} predates this and uses a different convention.
+ */
 public class DifferentialSwerveModuleBase extends SwerveModuleBase {
 
   public DifferentialSwerveModuleBase(Vec2d position, double steeringRatio, double driveRatio) {
@@ -42,21 +59,122 @@ public class DifferentialSwerveModuleBase extends SwerveModuleBase {
    * @return motor speeds (array of length 2)
    */
   public double[] calculateMotorSpeeds(double rotationSpeed, double wheelSpeed) {
-
     double[] motorSpeeds = new double[2];
+    calculateMotorSpeeds(rotationSpeed, wheelSpeed, motorSpeeds, 0);
+    return motorSpeeds;
+  }
 
+  /**
+   * Calculates the motor speeds for a differential swerve module (inverse kinematics). Doesn't
+   * allocate.
+   *
+   * @param rotationSpeed the rotation speed of the pod
+   * @param wheelSpeed the speed of the wheel
+   * @param out receives the speeds of the two motors at {@code offset} and {@code offset + 1}
+   * @param offset where to store the motor speeds
+   */
+  public void calculateMotorSpeeds(
+      double rotationSpeed, double wheelSpeed, double[] out, int offset) {
     double adjustedRotationSpeed = rotationSpeed / (2 * steeringRatio);
     double adjustedWheelSpeed = wheelSpeed / (2 * driveRatio);
 
-    motorSpeeds[0] = adjustedRotationSpeed + adjustedWheelSpeed;
-    motorSpeeds[1] = adjustedRotationSpeed - adjustedWheelSpeed;
+    out[offset] = adjustedRotationSpeed + adjustedWheelSpeed;
+    out[offset + 1] = adjustedRotationSpeed - adjustedWheelSpeed;
+  }
 
-    return motorSpeeds;
+  /**
+   * Calculates the pod's rotation speed and wheel speed from the speeds of its two motors (forward
+   * kinematics), undoing {@link #calculateMotorSpeeds(double, double, double[], int)}. Doesn't
+   * allocate.
+   *
+   * @param motor1Speed the speed of the first motor
+   * @param motor2Speed the speed of the second motor
+   * @param out receives the rotation speed at {@code offset} and the wheel speed at {@code offset +
+   *     1}
+   * @param offset where to store the speeds
+   */
+  public void calculateModuleSpeeds(
+      double motor1Speed, double motor2Speed, double[] out, int offset) {
+    out[offset] = podRotation(motor1Speed, motor2Speed);
+    out[offset + 1] = (motor1Speed - motor2Speed) * driveRatio;
   }
 
-  /** Calculates the module angle based on the positions of the two motors. */
+  /**
+   * Calculates the motor speeds of every module at once. Doesn't allocate.
+   *
+   * @param modules the modules
+   * @param rotationSpeeds the rotation speed of each pod
+   * @param wheelSpeeds the wheel speed of each module
+   * @param motorSpeeds receives the motor speeds, two per module: module i's motors at 2i and 2i +
+   *     1
+   */
+  public static void calculateMotorSpeeds(
+      List<? extends DifferentialSwerveModuleBase> modules,
+      double[] rotationSpeeds,
+      double[] wheelSpeeds,
+      double[] motorSpeeds) {
+    for (int i = 0; i < modules.size(); i++) {
+      modules.get(i).calculateMotorSpeeds(rotationSpeeds[i], wheelSpeeds[i], motorSpeeds, 2 * i);
+    }
+  }
+
+  /**
+   * Calculates the pod rotation speeds and wheel speeds of every module at once from their motor
+   * speeds. Doesn't allocate.
+   *
+   * <p>The wheel speeds, together with the module angles from {@link #calculatePodAngle}, can be
+   * passed straight to {@link SwerveOdometry#calculateOdometry(double[], double[], double[])}.
+   *
+   * @param modules the modules
+   * @param motorSpeeds the motor speeds, two per module: module i's motors at 2i and 2i + 1
+   * @param rotationSpeeds receives the rotation speed of each pod
+   * @param wheelSpeeds receives the wheel speed of each module
+   */
+  public static void calculateModuleSpeeds(
+      List<? extends DifferentialSwerveModuleBase> modules,
+      double[] motorSpeeds,
+      double[] rotationSpeeds,
+      double[] wheelSpeeds) {
+    for (int i = 0; i < modules.size(); i++) {
+      DifferentialSwerveModuleBase module = modules.get(i);
+      double motor1Speed = motorSpeeds[2 * i];
+      double motor2Speed = motorSpeeds[2 * i + 1];
+      rotationSpeeds[i] = module.podRotation(motor1Speed, motor2Speed);
+      wheelSpeeds[i] = (motor1Speed - motor2Speed) * module.driveRatio;
+    }
+  }
+
+  /**
+   * Calculates the module angle based on the positions of the two motors.
+   *
+   * @deprecated this divides the average motor position by the steering ratio, which doesn't match
+   *     the convention of {@link #calculateMotorSpeeds} and {@link #calculateModuleSpeeds}. Use
+   *     {@link #calculatePodAngle(double, double)} for an angle that matches them.
+   */
+  @Deprecated
   public double calculateModuleAngle(double motor1pos, double motor2pos) {
     double averageRotation = (motor1pos + motor2pos) / 2;
     return averageRotation / steeringRatio;
   }
+
+  /**
+   * Calculates the pod angle from the positions of the two motors, with the same kinematics as
+   * {@link #calculateModuleSpeeds(double, double, double[], int)}: the angle changes at the
+   * rotation speed it gives.
+   *
+   * @param motor1Position the position of the first motor
+   * @param motor2Position the position of the second motor
+   * @return the pod angle, relative to where both motors were at 0
+   */
+  public double calculatePodAngle(double motor1Position, double motor2Position) {
+    return podRotation(motor1Position, motor2Position);
+  }
+
+  /**
+   * Returns the pod rotation for motor speeds or positions, the inverse of the {@code rotationSpeed
+   * / (2 * steeringRatio)} that {@link #calculateMotorSpeeds} gives each motor.
+   */
+  private double podRotation(double motor1, double motor2) {
+    return (motor1 + motor2) * steeringRatio;
+  }
 }
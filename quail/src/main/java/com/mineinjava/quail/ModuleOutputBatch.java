@@ -0,0 +1,62 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail;
+
+/**
+ * Receives the outputs of all swerve modules at once.
+ *
+ * <p>By default {@link SwerveDrive#move} sets one module at a time, and each module writes to its
+ * motor controllers before the next one is calculated. When the hardware can take several setpoints
+ * in one transaction, such as a bulk CAN frame or a hub's bulk write, give the drive an
+ * implementation of this interface with {@link SwerveDrive#setOutputBatch}. The drive then
+ * calculates every module first and commits them together. {@link AsyncModuleOutput} moves the
+ * commit to its own thread, so the control loop doesn't wait for the writes at all.
+ */
+@FunctionalInterface
+public interface ModuleOutputBatch {
+  /**
+   * Writes the setpoints of every module.
+   *
+   * <p>The arrays are reused on the next loop, so copy anything that is needed after returning.
+   *
+   * @param angles the steering setpoint of each module, as passed to {@link
+   *     SwerveModuleBase#setRawAngle}
+   * @param speeds the drive speed of each module, as passed to {@link SwerveModuleBase#setRawSpeed}
+   * @param count the number of modules, in the order of {@link SwerveDrive#swerveModules}
+   */
+  void commit(double[] angles, double[] speeds, int count);
+
+  /**
+   * Writes the setpoints of every module, with a steering feedforward.
+   *
+   * <p>Called instead of {@link #commit(double[], double[], int)} when {@link SwerveDrive#move} is
+   * given an acceleration. By default the feedforward is ignored.
+   *
+   * @param angles the steering setpoint of each module
+   * @param angularVelocities the steering rate of each module in radians per second, as passed to
+   *     {@link SwerveModuleBase#setRawAngle(double, double)}
+   * @param speeds the drive speed of each module
+   * @param count the number of modules
+   */
+  default void commit(double[] angles, double[] angularVelocities, double[] speeds, int count) {
+    commit(angles, speeds, count);
+  }
+}
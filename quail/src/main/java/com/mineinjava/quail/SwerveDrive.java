@@ -26,6 +26,12 @@ import java.util.List;
 public class SwerveDrive<T extends SwerveModuleBase> {
   public final List<T> swerveModules;
   private double maxModuleSpeed = 1.0;
+  private DesaturationMode desaturationMode = DesaturationMode.UNIFORM;
+  private ModuleOutputBatch outputBatch;
+  private double[] batchAngles = new double[0];
+  private double[] batchSpeeds = new double[0];
+  private double[] steeringRates = new double[0];
+  private double minFeedforwardSpeedSquared = 0.1 * 0.1;
 
   /**
    * Represents a swerve drive .
@@ -89,14 +95,286 @@ public class SwerveDrive<T extends SwerveModuleBase> {
 
   /** Attempts to move the drivetrain */
   public void move(RobotMovement movement, double gyroOffset) {
+    move(movement, null, gyroOffset);
+  }
+
+  /**
+   * Attempts to move the drivetrain, with a steering feedforward for each module.
+   *
+   * <p>The modules get their steering rates from {@link #calculateSteeringRates} through {@link
+   * SwerveModuleBase#set(Vec2d, double)}, or the batch's {@link ModuleOutputBatch#commit(double[],
+   * double[], double[], int)}.
+   *
+   * @param movement the desired movement, with a field-centric translation
+   * @param acceleration the rate of change of the movement: the field-centric translational
+   *     acceleration, and the angular acceleration as its rotation. Null for no feedforward.
+   * @param gyroOffset the gyro rotation in radians
+   */
+  public void move(RobotMovement movement, RobotMovement acceleration, double gyroOffset) {
+    if (desaturationMode != DesaturationMode.UNIFORM) {
+      movement = desaturate(movement, gyroOffset, this.maxModuleSpeed, desaturationMode);
+    }
+    int count = this.swerveModules.size();
+    double[] rates = null;
+    if (acceleration != null) {
+      if (steeringRates.length != count) {
+        steeringRates = new double[count];
+      }
+      calculateSteeringRates(movement, acceleration, gyroOffset, steeringRates);
+      rates = steeringRates;
+    }
     Vec2d[] moduleVectors =
         calculateMoveAngles(movement.translation, movement.rotation, gyroOffset);
     moduleVectors = normalizeModuleVectors(moduleVectors, this.maxModuleSpeed);
+    if (outputBatch == null) {
+      for (int i = 0; i < count; i++) {
+        if (rates == null) {
+          swerveModules.get(i).set(moduleVectors[i]);
+        } else {
+          swerveModules.get(i).set(moduleVectors[i], rates[i]);
+        }
+      }
+      return;
+    }
+    if (batchAngles.length != count) {
+      batchAngles = new double[count];
+      batchSpeeds = new double[count];
+    }
+    for (int i = 0; i < count; i++) {
+      if (rates == null) {
+        swerveModules.get(i).calculateOutput(moduleVectors[i], batchAngles, batchSpeeds, i);
+      } else {
+        swerveModules
+            .get(i)
+            .calculateOutput(moduleVectors[i], rates[i], batchAngles, rates, batchSpeeds, i);
+      }
+    }
+    if (rates == null) {
+      outputBatch.commit(batchAngles, batchSpeeds, count);
+    } else {
+      outputBatch.commit(batchAngles, rates, batchSpeeds, count);
+    }
+  }
+
+  /**
+   * Calculates the angle and speed of every module for a movement, into arrays the caller keeps.
+   *
+   * <p>This is what {@link #move} sends to the modules, before the optimizations done by each
+   * module, for drivetrains whose modules aren't driven by an angle and a speed, such as {@link
+   * DifferentialSwerveModuleBase}. The movement is desaturated like in {@link #move}. Doesn't
+   * allocate, unless a priority {@link DesaturationMode} has to slow the movement down.
+   *
+   * @param movement the desired movement, with a field-centric translation
+   * @param gyroOffset the gyro rotation in radians
+   * @param angles receives the angle of each module in radians
+   * @param speeds receives the speed of each module
+   */
+  public void calculateModuleStates(
+      RobotMovement movement, double gyroOffset, double[] angles, double[] speeds) {
+    if (desaturationMode != DesaturationMode.UNIFORM) {
+      movement = desaturate(movement, gyroOffset, this.maxModuleSpeed, desaturationMode);
+    }
+    double cos = Math.cos(gyroOffset);
+    double sin = Math.sin(gyroOffset);
+    double w = movement.rotation;
+    double tx = movement.translation.x * cos - movement.translation.y * sin;
+    double ty = movement.translation.x * sin + movement.translation.y * cos;
+    double fastest = 0;
     for (int i = 0; i < this.swerveModules.size(); i++) {
-      swerveModules.get(i).set(moduleVectors[i]);
+      Vec2d position = swerveModules.get(i).position;
+      double vx = moduleVelocityX(tx, w, position);
+      double vy = moduleVelocityY(ty, w, position);
+      angles[i] = Math.atan2(vy, vx);
+      speeds[i] = Math.hypot(vx, vy);
+      fastest = Math.max(fastest, speeds[i]);
+    }
+    if (fastest > this.maxModuleSpeed) {
+      double scale = this.maxModuleSpeed / fastest;
+      for (int i = 0; i < this.swerveModules.size(); i++) {
+        speeds[i] *= scale;
+      }
     }
   }
 
+  /**
+   * Calculates how fast each module's steering angle changes (second-order kinematics).
+   *
+   * <p>Module i moves at {@code v = t + w J p}, where t is the robot-relative translation, w the
+   * rotation speed, p the module position and J a 90 degree turn. Its angle changes at {@code (v x
+   * dv/dt) / |v|^2}, where {@code dv/dt = R a + (dg/dt) J t + (dw/dt) J p}, with a the
+   * field-centric acceleration turned into the robot frame by the gyro offset g. For field-centric
+   * driving the gyro offset is minus the heading, so it changes at minus the rotation speed.
+   *
+   * <p>Uniform normalization scales a module's velocity without turning it, so the rates are found
+   * before normalizing. The rate of a module goes to infinity as it stops, which happens whenever
+   * the drive passes through a stop, so it is faded out below {@link #setMinFeedforwardSpeed the
+   * minimum feedforward speed}: the denominator is never less than that speed squared.
+   *
+   * @param movement the desired movement, with a field-centric translation
+   * @param acceleration the field-centric translational acceleration, and the angular acceleration
+   *     as its rotation
+   * @param gyroOffset the gyro rotation in radians
+   * @param out array with an element per module that receives the steering rates in radians per
+   *     second
+   */
+  public void calculateSteeringRates(
+      RobotMovement movement, RobotMovement acceleration, double gyroOffset, double[] out) {
+    double cos = Math.cos(gyroOffset);
+    double sin = Math.sin(gyroOffset);
+    double w = movement.rotation;
+    double tx = movement.translation.x * cos - movement.translation.y * sin;
+    double ty = movement.translation.x * sin + movement.translation.y * cos;
+    // the robot-relative acceleration, plus the turning of the robot frame under the translation
+    double ax = acceleration.translation.x * cos - acceleration.translation.y * sin + w * ty;
+    double ay = acceleration.translation.x * sin + acceleration.translation.y * cos - w * tx;
+    double alpha = acceleration.rotation;
+    for (int i = 0; i < this.swerveModules.size(); i++) {
+      Vec2d position = swerveModules.get(i).position;
+      double vx = moduleVelocityX(tx, w, position);
+      double vy = moduleVelocityY(ty, w, position);
+      // the velocity is linear in the movement, so its derivative has the same form
+      double dvx = moduleVelocityX(ax, alpha, position);
+      double dvy = moduleVelocityY(ay, alpha, position);
+      double speedSquared = Math.max(vx * vx + vy * vy, minFeedforwardSpeedSquared);
+      out[i] = speedSquared == 0 ? 0 : (vx * dvy - vy * dvx) / speedSquared;
+    }
+  }
+
+  /**
+   * Sets the module speed below which {@link #calculateSteeringRates} fades the steering
+   * feedforward out, so a module passing through a stop doesn't get a huge rate. Set it in your
+   * speed units; the default of 0.1 suits meters per second.
+   *
+   * @param minFeedforwardSpeed the speed, 0 to never fade the rates
+   */
+  public void setMinFeedforwardSpeed(double minFeedforwardSpeed) {
+    if (minFeedforwardSpeed < 0) {
+      throw new IllegalArgumentException("minFeedforwardSpeed must not be negative");
+    }
+    this.minFeedforwardSpeedSquared = minFeedforwardSpeed * minFeedforwardSpeed;
+  }
+
+  /**
+   * Returns the x velocity of a module, for a robot-relative translation and a counterclockwise
+   * rotation speed. The module's velocity is the translation plus the rotation speed times its
+   * position turned by 90 degrees.
+   */
+  private static double moduleVelocityX(double tx, double rotation, Vec2d position) {
+    return tx - rotation * position.y;
+  }
+
+  /** Returns the y velocity of a module, see {@link #moduleVelocityX}. */
+  private static double moduleVelocityY(double ty, double rotation, Vec2d position) {
+    return ty + rotation * position.x;
+  }
+
+  /**
+   * Sets how {@link #move} handles movements that are too fast for the modules.
+   *
+   * @param desaturationMode which part of the movement to keep at full speed
+   */
+  public void setDesaturationMode(DesaturationMode desaturationMode) {
+    this.desaturationMode = desaturationMode;
+  }
+
+  public DesaturationMode getDesaturationMode() {
+    return desaturationMode;
+  }
+
+  /**
+   * Slows a movement down so that no module has to go faster than the maximum speed.
+   *
+   * <p>Module i moves at {@code t + w r_i}, where t is the translation, w the rotation speed and
+   * r_i the module's position turned by 90 degrees. With the prioritized part fixed (and first
+   * limited to what the modules can do on their own), the largest scale k of the other part that
+   * keeps module i within the maximum speed is the positive root of a quadratic in k. The movement
+   * is scaled by the smallest of those roots, so this costs one pass over the modules and no
+   * iteration.
+   *
+   * @param movement the desired movement, with the translation field-centric as in {@link #move}
+   * @param gyroOffset the gyro rotation in radians
+   * @param maxSpeed the maximum module speed
+   * @param mode which part of the movement to keep
+   * @return the movement to command, unchanged if it is already possible
+   */
+  public RobotMovement desaturate(
+      RobotMovement movement, double gyroOffset, double maxSpeed, DesaturationMode mode) {
+    // robot-relative translation, as the modules see it
+    Vec2d translation = movement.translation.rotate(gyroOffset, false);
+    double tx = translation.x;
+    double ty = translation.y;
+    double rotation = movement.rotation;
+    double maxSquared = maxSpeed * maxSpeed;
+
+    double maxRadius = 0;
+    for (SwerveModuleBase module : this.swerveModules) {
+      maxRadius = Math.max(maxRadius, module.position.getLength());
+    }
+
+    if (mode == DesaturationMode.UNIFORM) {
+      double fastest = 0;
+      for (SwerveModuleBase module : this.swerveModules) {
+        double vx = moduleVelocityX(tx, rotation, module.position);
+        double vy = moduleVelocityY(ty, rotation, module.position);
+        fastest = Math.max(fastest, Math.hypot(vx, vy));
+      }
+      if (fastest <= maxSpeed) {
+        return movement;
+      }
+      double scale = maxSpeed / fastest;
+      return new RobotMovement(rotation * scale, movement.translation.scale(scale));
+    }
+
+    boolean keepRotation = mode == DesaturationMode.ROTATION_PRIORITY;
+    // limit the kept part to what the modules can do alone
+    double keptScale = 1;
+    if (keepRotation && Math.abs(rotation) * maxRadius > maxSpeed) {
+      keptScale = maxSpeed / (Math.abs(rotation) * maxRadius);
+    } else if (!keepRotation && Math.hypot(tx, ty) > maxSpeed) {
+      keptScale = maxSpeed / Math.hypot(tx, ty);
+    }
+
+    double scale = 1;
+    for (SwerveModuleBase module : this.swerveModules) {
+      // module velocity from rotation alone
+      double rx = moduleVelocityX(0, rotation, module.position);
+      double ry = moduleVelocityY(0, rotation, module.position);
+      // kept part f and scaled part s: |f + k s|^2 = max^2
+      double fx = keepRotation ? rx * keptScale : tx * keptScale;
+      double fy = keepRotation ? ry * keptScale : ty * keptScale;
+      double sx = keepRotation ? tx : rx;
+      double sy = keepRotation ? ty : ry;
+      double a = sx * sx + sy * sy;
+      if (a == 0) {
+        continue;
+      }
+      double b = fx * sx + fy * sy;
+      double c = fx * fx + fy * fy - maxSquared;
+      // c <= 0 because the kept part alone is possible, so the root is real and not negative
+      double k = (-b + Math.sqrt(Math.max(0, b * b - a * c))) / a;
+      scale = Math.min(scale, k);
+    }
+    scale = Math.max(0, scale);
+
+    double rotationScale = keepRotation ? keptScale : scale;
+    double translationScale = keepRotation ? scale : keptScale;
+    if (rotationScale == 1 && translationScale == 1) {
+      return movement;
+    }
+    return new RobotMovement(
+        rotation * rotationScale, movement.translation.scale(translationScale));
+  }
+
+  /**
+   * Makes {@link #move} calculate every module first and then write them all in one {@link
+   * ModuleOutputBatch#commit}, instead of calling {@link SwerveModuleBase#set} on each module.
+   *
+   * @param outputBatch writes the module setpoints, or null to set each module again
+   */
+  public void setOutputBatch(ModuleOutputBatch outputBatch) {
+    this.outputBatch = outputBatch;
+  }
+
   /**
    * @param moveVector the vector to move in
    * @param rotationSpeed speed of rotation
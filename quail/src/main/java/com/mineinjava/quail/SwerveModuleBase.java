@@ -32,6 +32,21 @@ public class SwerveModuleBase {
   protected double currentAngle; // in radians
   protected int motorFlipper = 1; // optimization for motor rotation
 
+  // write suppression, see setWriteSuppression()
+  private boolean suppressWrites = false;
+  private double angleWriteTolerance = 0;
+  private double speedWriteTolerance = 0;
+  private long keepAliveNanos = 0;
+  private double minSteeringSpeed = 0;
+  private boolean angleWritten = false;
+  private boolean speedWritten = false;
+  private double lastWrittenAngle;
+  private double lastWrittenAngularVelocity;
+  private double lastWrittenSpeed;
+  private long lastAngleWriteNanos;
+  private long lastSpeedWriteNanos;
+  private long suppressedWrites = 0;
+
   /**
    * Represents a swerve module Designed to be inherited.
    *
@@ -134,8 +149,53 @@ public class SwerveModuleBase {
         "Default quail.swerveModuleBase.setAngle() called. Override me!.    Angle: " + angle);
   }
 
+  /**
+   * Sets the angle of the module, and how fast the steering should be turning there.
+   *
+   * <p>The angular velocity is a feedforward for the steering motor: with it, the steering can keep
+   * up with the target angle while the robot turns and translates at once, instead of lagging
+   * behind until the steering controller's error grows. By default it is ignored; override this
+   * method to use it.
+   *
+   * @param angle the angle to set the module to
+   * @param angularVelocity the rate of change of the angle, in radians per second
+   */
+  public void setRawAngle(double angle, double angularVelocity) {
+    setRawAngle(angle);
+  }
+
   public void setAngle(double angle) {
-    setRawAngle(calculateDesiredAngleWrapper(angle));
+    setAngle(angle, 0);
+  }
+
+  /**
+   * Sets the angle of the module, with a steering feedforward.
+   *
+   * @param angle the angle to set the module to
+   * @param angularVelocity the rate of change of the angle, in radians per second
+   * @see #setRawAngle(double, double)
+   */
+  public void setAngle(double angle, double angularVelocity) {
+    writeAngle(calculateDesiredAngleWrapper(angle), angularVelocity);
+  }
+
+  /** Forwards a steering setpoint to {@link #setRawAngle}, unless it is suppressed. */
+  private void writeAngle(double setpoint, double angularVelocity) {
+    if (suppressWrites) {
+      long now = System.nanoTime();
+      if (angleWritten
+          && Math.abs(setpoint - lastWrittenAngle) <= angleWriteTolerance
+          && !feedforwardChanged(now, angularVelocity)
+          && !keepAliveDue(now, lastAngleWriteNanos)) {
+        suppressedWrites++;
+        return;
+      }
+      angleWritten = true;
+      lastWrittenAngle = setpoint;
+      lastWrittenAngularVelocity = angularVelocity;
+      lastAngleWriteNanos = now;
+    }
+    setRawAngle(setpoint, angularVelocity);
   }
 
   /**
@@ -156,7 +216,22 @@ public class SwerveModuleBase {
    * @param speed the speed to set the module to
    */
   public void setSpeed(double speed) {
-    setRawSpeed(this.motorFlipper * speed);
+    double rawSpeed = this.motorFlipper * speed;
+    if (suppressWrites) {
+      long now = System.nanoTime();
+      // stopping is never delayed
+      if (speedWritten
+          && Math.abs(rawSpeed - lastWrittenSpeed) <= speedWriteTolerance
+          && !(rawSpeed == 0 && lastWrittenSpeed != 0)
+          && !keepAliveDue(now, lastSpeedWriteNanos)) {
+        suppressedWrites++;
+        return;
+      }
+      speedWritten = true;
+      lastWrittenSpeed = rawSpeed;
+      lastSpeedWriteNanos = now;
+    }
+    setRawSpeed(rawSpeed);
   }
 
   /**
@@ -165,7 +240,150 @@ public class SwerveModuleBase {
    * @param vec the vector to set the module to
    */
   public void set(Vec2d vec) {
-    setAngle(vec.getAngle());
-    setSpeed(vec.getLength());
+    double speed = vec.getLength();
+    if (speed < minSteeringSpeed) {
+      // the wheel barely moves, so its direction doesn't matter; keep the last angle
+      writeAngle(currentAngle, 0);
+    } else {
+      setAngle(vec.getAngle());
+    }
+    setSpeed(speed);
+  }
+
+  /**
+   * Sets the module's motion to the specified vector, with a steering feedforward.
+   *
+   * @param vec the vector to set the module to
+   * @param angularVelocity the rate of change of the vector's angle, in radians per second
+   * @see #setRawAngle(double, double)
+   */
+  public void set(Vec2d vec, double angularVelocity) {
+    double speed = vec.getLength();
+    if (speed < minSteeringSpeed) {
+      writeAngle(currentAngle, 0);
+    } else {
+      setAngle(vec.getAngle(), angularVelocity);
+    }
+    setSpeed(speed);
+  }
+
+  /**
+   * Calculates the setpoints {@link #set} would write, without writing them.
+   *
+   * <p>Used by {@link SwerveDrive} to commit every module together through a {@link
+   * ModuleOutputBatch}. The module's state is updated as if the setpoints had been written. Write
+   * suppression doesn't apply, since the batch writes everything at once.
+   *
+   * @param vec the vector to set the module to
+   * @param angles receives the steering setpoint at {@code index}
+   * @param speeds receives the drive speed at {@code index}
+   * @param index where to store the setpoints
+   */
+  public void calculateOutput(Vec2d vec, double[] angles, double[] speeds, int index) {
+    double speed = vec.getLength();
+    // like set(), keep the last angle when barely moving
+    angles[index] =
+        speed < minSteeringSpeed ? currentAngle : calculateDesiredAngleWrapper(vec.getAngle());
+    speeds[index] = this.motorFlipper * speed;
+  }
+
+  /**
+   * Calculates the setpoints and steering feedforward {@link #set(Vec2d, double)} would write,
+   * without writing them. Like there, a module that keeps its angle because it is barely moving
+   * gets a feedforward of 0.
+   *
+   * @param vec the vector to set the module to
+   * @param angularVelocity the rate of change of the vector's angle, in radians per second
+   * @param angles receives the steering setpoint at {@code index}
+   * @param angularVelocities receives the steering feedforward at {@code index}, may be the array
+   *     the rate came from
+   * @param speeds receives the drive speed at {@code index}
+   * @param index where to store the setpoints
+   * @see #calculateOutput(Vec2d, double[], double[], int)
+   */
+  public void calculateOutput(
+      Vec2d vec,
+      double angularVelocity,
+      double[] angles,
+      double[] angularVelocities,
+      double[] speeds,
+      int index) {
+    calculateOutput(vec, angles, speeds, index);
+    angularVelocities[index] = vec.getLength() < minSteeringSpeed ? 0 : angularVelocity;
+  }
+
+  /**
+   * Only forwards writes to {@link #setRawAngle} and {@link #setRawSpeed} when they change.
+   *
+   * <p>Every write to a CAN or I2C motor controller takes bus time and often blocks for a few
+   * hundred microseconds, so resending an unchanged setpoint every loop slows the whole loop down.
+   * With suppression on, a write is only forwarded when it differs from the last forwarded value by
+   * more than the tolerance, or when the keep-alive interval has passed since the last one, so
+   * controllers that time out without new setpoints stay enabled. A command to stop is always
+   * forwarded.
+   *
+   * <p>A steering feedforward counts as changed once the difference from the last one sent, over
+   * the time since then, would have moved the steering by more than the angle tolerance.
+   *
+   * <p>Call {@link #resetWrites()} after a motor controller resets, so the next setpoints are sent
+   * again.
+   *
+   * @param angleTolerance the smallest change of the steering setpoint to send, in radians
+   * @param speedTolerance the smallest change of the drive speed to send
+   * @param keepAliveSeconds the longest time between writes to each motor, or 0 for no keep-alive
+   */
+  public void setWriteSuppression(
+      double angleTolerance, double speedTolerance, double keepAliveSeconds) {
+    if (angleTolerance < 0 || speedTolerance < 0 || keepAliveSeconds < 0) {
+      throw new IllegalArgumentException("Tolerances and keep-alive must not be negative");
+    }
+    this.suppressWrites = true;
+    this.angleWriteTolerance = angleTolerance;
+    this.speedWriteTolerance = speedTolerance;
+    this.keepAliveNanos = (long) (keepAliveSeconds * 1e9);
+  }
+
+  /** Forwards every write again, which is the default. */
+  public void disableWriteSuppression() {
+    this.suppressWrites = false;
+  }
+
+  /**
+   * Skips steering in {@link #set} while the commanded speed is below a threshold.
+   *
+   * <p>Near zero speed the angle of the module vector is mostly noise, so the wheel would turn back
+   * and forth while standing still. The module keeps its last angle instead, which is written like
+   * any other setpoint: every time, or with write suppression on, only when the keep-alive is due.
+   * {@link #setAngle} and {@link #XLock} still steer.
+   *
+   * @param minSteeringSpeed the speed below which the angle isn't changed, or 0 to always steer
+   */
+  public void setMinSteeringSpeed(double minSteeringSpeed) {
+    this.minSteeringSpeed = minSteeringSpeed;
+  }
+
+  /** Makes the next angle and speed writes go through, whatever the suppression settings. */
+  public void resetWrites() {
+    angleWritten = false;
+    speedWritten = false;
+  }
+
+  /** Returns how many writes have been suppressed, including held angles that weren't resent. */
+  public long getSuppressedWriteCount() {
+    return suppressedWrites;
+  }
+
+  /**
+   * Returns whether the steering feedforward drifted too far from the last one sent: the rate
+   * difference over the time since the last write is the angle error it caused.
+   */
+  private boolean feedforwardChanged(long now, double angularVelocity) {
+    double drift =
+        Math.abs(angularVelocity - lastWrittenAngularVelocity) * (now - lastAngleWriteNanos) / 1e9;
+    return drift > angleWriteTolerance;
+  }
+
+  private boolean keepAliveDue(long now, long lastWrite) {
+    return keepAliveNanos > 0 && now - lastWrite >= keepAliveNanos;
   }
 }
@@ -0,0 +1,286 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail;
+
+import com.mineinjava.quail.util.MathUtil;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.util.List;
+
+/**
+ * Limits chassis movements to what the swerve modules can physically follow in one loop.
+ *
+ * <p>Going straight from one commanded movement to the next can ask a module to turn its steering
+ * by up to 90 degrees (after the usual motor flip), or to change its wheel speed by any amount, in
+ * a single loop. The wheels then scrub while the steering catches up, and large current spikes can
+ * brown the robot out. This generator remembers the previous movement and module states, and moves
+ * towards the desired movement only as far as every module can follow within its maximum steering
+ * rate and drive acceleration. A stopped wheel may steer freely, since turning it doesn't scrub.
+ *
+ * <p>The module velocities change linearly between the previous and desired movement, so the
+ * generator searches for the largest fraction of the way it can go. Because a wheel may flip
+ * instead of turning past 90 degrees, a module that can follow a larger fraction can't always
+ * follow a smaller one, so the fraction is found by bisection over every module at once, with a
+ * fixed number of steps. Only fractions that every module can follow are ever accepted. The cost is
+ * bounded, and nothing is allocated.
+ *
+ * <p>Movements are robot-relative: x and y velocity and counterclockwise rotation speed, as the
+ * modules see them. A typical loop looks like:
+ *
+ * <pre>{@code
+ * generator.generate(desiredX, desiredY, desiredRotation, dt, setpoint);
+ * swerveDrive.move(new RobotMovement(setpoint[2], setpoint[0], setpoint[1]), 0);
+ * }</pre>
+ */
+public class SwerveSetpointGenerator {
+  private static final int ITERATIONS = 12;
+
+  /** module speeds below this count as stopped, so their steering is free */
+  private static final double STOPPED_SPEED = 1e-6;
+
+  private final int count;
+  private final double[] positionX;
+  private final double[] positionY;
+  private final double maxSteeringRate;
+  private final double maxDriveAcceleration;
+  private final double maxModuleSpeed;
+
+  // the previous chassis movement, and each module's angle and signed speed along it
+  private double velocityX = 0;
+  private double velocityY = 0;
+  private double rotation = 0;
+  private final double[] angles;
+  private final double[] speeds;
+
+  // the desired movement, after desaturation, while generating
+  private double desiredX;
+  private double desiredY;
+  private double desiredRotation;
+
+  /**
+   * Creates a generator for a drivetrain.
+   *
+   * @param modules the swerve modules; their positions are copied
+   * @param maxSteeringRate the fastest the steering can turn, in radians per second
+   * @param maxDriveAcceleration the fastest a wheel's speed can change, per second
+   * @param maxModuleSpeed the maximum wheel speed
+   */
+  public SwerveSetpointGenerator(
+      List<? extends SwerveModuleBase> modules,
+      double maxSteeringRate,
+      double maxDriveAcceleration,
+      double maxModuleSpeed) {
+    if (!(maxSteeringRate > 0 && maxDriveAcceleration > 0 && maxModuleSpeed > 0)) {
+      throw new IllegalArgumentException("Limits must be positive");
+    }
+    this.count = modules.size();
+    this.positionX = new double[count];
+    this.positionY = new double[count];
+    for (int i = 0; i < count; i++) {
+      Vec2d position = modules.get(i).position;
+      positionX[i] = position.x;
+      positionY[i] = position.y;
+    }
+    this.maxSteeringRate = maxSteeringRate;
+    this.maxDriveAcceleration = maxDriveAcceleration;
+    this.maxModuleSpeed = maxModuleSpeed;
+    this.angles = new double[count];
+    this.speeds = new double[count];
+  }
+
+  /**
+   * Sets the previous movement, for example the measured one when the robot is enabled. The module
+   * angles are set to match, except for stopped modules, which keep theirs.
+   *
+   * @param velocityX robot-relative x velocity
+   * @param velocityY robot-relative y velocity
+   * @param rotation rotation speed in radians per second
+   */
+  public void reset(double velocityX, double velocityY, double rotation) {
+    this.velocityX = velocityX;
+    this.velocityY = velocityY;
+    this.rotation = rotation;
+    for (int i = 0; i < count; i++) {
+      double vx = velocityX - rotation * positionY[i];
+      double vy = velocityY + rotation * positionX[i];
+      double speed = Math.hypot(vx, vy);
+      if (speed < STOPPED_SPEED) {
+        speeds[i] = 0;
+      } else {
+        angles[i] = Math.atan2(vy, vx);
+        speeds[i] = speed;
+      }
+    }
+  }
+
+  /**
+   * Sets the previous movement and the measured module states, for example when the robot is
+   * enabled with its wheels pointing in arbitrary directions.
+   *
+   * <p>If the module states don't match the movement, the first movements are limited by how far
+   * each module can steer from its measured angle.
+   *
+   * @param velocityX robot-relative x velocity
+   * @param velocityY robot-relative y velocity
+   * @param rotation rotation speed in radians per second
+   * @param angles the steering angle of each module in radians
+   * @param speeds the wheel speed of each module along its angle, negative when the wheel is driven
+   *     backwards
+   */
+  public void reset(
+      double velocityX, double velocityY, double rotation, double[] angles, double[] speeds) {
+    this.velocityX = velocityX;
+    this.velocityY = velocityY;
+    this.rotation = rotation;
+    System.arraycopy(angles, 0, this.angles, 0, count);
+    System.arraycopy(speeds, 0, this.speeds, 0, count);
+  }
+
+  /**
+   * Calculates the next movement to command.
+   *
+   * <p>The desired movement is first scaled down uniformly if a module would be faster than the
+   * maximum speed. Then the result is the movement closest to it, on the way from the previous
+   * movement, that every module can reach within {@code dt}. It becomes the previous movement of
+   * the next call. Doesn't allocate.
+   *
+   * @param desiredX robot-relative x velocity to reach
+   * @param desiredY robot-relative y velocity to reach
+   * @param desiredRotation rotation speed to reach, in radians per second
+   * @param dt time until the next call in seconds
+   * @param out array of at least 3 elements that receives the x and y velocity and rotation speed
+   *     to command
+   */
+  public void generate(
+      double desiredX, double desiredY, double desiredRotation, double dt, double[] out) {
+    if (!(dt > 0)) {
+      throw new IllegalArgumentException("dt must be positive");
+    }
+    double fastest = 0;
+    for (int i = 0; i < count; i++) {
+      double vx = desiredX - desiredRotation * positionY[i];
+      double vy = desiredY + desiredRotation * positionX[i];
+      fastest = Math.max(fastest, Math.hypot(vx, vy));
+    }
+    double desaturation = fastest > maxModuleSpeed ? maxModuleSpeed / fastest : 1;
+    this.desiredX = desiredX * desaturation;
+    this.desiredY = desiredY * desaturation;
+    this.desiredRotation = desiredRotation * desaturation;
+
+    double maxSteering = maxSteeringRate * dt;
+    double maxSpeedChange = maxDriveAcceleration * dt;
+    double fraction = 1;
+    if (!feasible(fraction, maxSteering, maxSpeedChange)) {
+      // low is only ever moved to fractions every module can follow, starting from the previous
+      // movement
+      double low = 0;
+      double high = fraction;
+      for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+        double middle = (low + high) / 2;
+        if (feasible(middle, maxSteering, maxSpeedChange)) {
+          low = middle;
+        } else {
+          high = middle;
+        }
+      }
+      fraction = low;
+    }
+
+    velocityX += (this.desiredX - velocityX) * fraction;
+    velocityY += (this.desiredY - velocityY) * fraction;
+    rotation += (this.desiredRotation - rotation) * fraction;
+    for (int i = 0; i < count; i++) {
+      double vx = velocityX - rotation * positionY[i];
+      double vy = velocityY + rotation * positionX[i];
+      if (Math.hypot(vx, vy) < STOPPED_SPEED) {
+        speeds[i] = 0;
+        continue;
+      }
+      double steering = steering(angles[i], vx, vy);
+      if (Math.abs(speeds[i]) >= STOPPED_SPEED) {
+        // only has an effect when measured module states don't match the previous movement
+        steering = MathUtil.clamp(steering, -maxSteering, maxSteering);
+      }
+      angles[i] += steering;
+      speeds[i] = vx * Math.cos(angles[i]) + vy * Math.sin(angles[i]);
+    }
+    out[0] = velocityX;
+    out[1] = velocityY;
+    out[2] = rotation;
+  }
+
+  /**
+   * Copies the module states of the last movement.
+   *
+   * @param angles receives the steering angle of each module in radians, not wrapped
+   * @param speeds receives the wheel speed of each module along its angle, negative when the wheel
+   *     is driven backwards
+   */
+  public void getModuleStates(double[] angles, double[] speeds) {
+    System.arraycopy(this.angles, 0, angles, 0, count);
+    System.arraycopy(this.speeds, 0, speeds, 0, count);
+  }
+
+  /** Returns whether every module can go a fraction of the way to the desired movement. */
+  private boolean feasible(double fraction, double maxSteering, double maxSpeedChange) {
+    for (int i = 0; i < count; i++) {
+      if (!feasible(i, fraction, maxSteering, maxSpeedChange)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether module i can go a fraction of the way to the desired movement. */
+  private boolean feasible(int i, double fraction, double maxSteering, double maxSpeedChange) {
+    double x = velocityX + (desiredX - velocityX) * fraction;
+    double y = velocityY + (desiredY - velocityY) * fraction;
+    double w = rotation + (desiredRotation - rotation) * fraction;
+    double vx = x - w * positionY[i];
+    double vy = y + w * positionX[i];
+    if (Math.hypot(vx, vy) < STOPPED_SPEED) {
+      // stopping only needs the wheel to slow down
+      return Math.abs(speeds[i]) <= maxSpeedChange;
+    }
+    double steering = steering(angles[i], vx, vy);
+    // a stopped wheel can be turned without scrubbing, otherwise it could never start moving in a
+    // new direction
+    if (Math.abs(steering) > maxSteering && Math.abs(speeds[i]) >= STOPPED_SPEED) {
+      return false;
+    }
+    double angle = angles[i] + steering;
+    double speed = vx * Math.cos(angle) + vy * Math.sin(angle);
+    return Math.abs(speed - speeds[i]) <= maxSpeedChange;
+  }
+
+  /**
+   * The smallest steering change from an angle to a velocity's direction, driving the wheel
+   * backwards instead of turning more than 90 degrees.
+   */
+  private static double steering(double angle, double vx, double vy) {
+    double steering = MathUtil.deltaAngle(angle, Math.atan2(vy, vx));
+    if (steering > Math.PI / 2) {
+      steering -= Math.PI;
+    } else if (steering < -Math.PI / 2) {
+      steering += Math.PI;
+    }
+    return steering;
+  }
+}
@@ -0,0 +1,273 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.localization;
+
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs odometry updates on a dedicated thread at a fixed rate.
+ *
+ * <p>Encoders can usually be read much faster than the control loop runs, and integrating at the
+ * higher rate is more accurate, especially while turning. This runner calls an update step (for
+ * example {@link DeadWheelLocalizer#update()}, or a lambda that reads the swerve modules and feeds
+ * {@link SwerveOdometry}) on its own thread, and publishes each resulting pose as an immutable
+ * snapshot. {@link #getPose()} just reads the latest snapshot, so it never blocks the control
+ * thread.
+ *
+ * <p>The wrapped localizer must only be touched by the runner's thread while it is running. Use
+ * {@link #setPose} on the runner instead, which hands the pose over to the odometry thread.
+ *
+ * <p>The runner measures how late each update starts compared to its schedule (jitter), and counts
+ * overruns, where an update took longer than the period and the missed ticks were skipped.
+ */
+public class AsyncOdometryRunner implements Localizer, AutoCloseable {
+  private final Localizer localizer;
+  private final Runnable update;
+  private final long periodNanos;
+
+  private final AtomicReference<Pose2d> pendingPose = new AtomicReference<>();
+  private volatile Snapshot snapshot;
+  private volatile boolean running = false;
+  private volatile Thread thread;
+  private volatile RuntimeException failure;
+
+  // statistics, only written by the odometry thread
+  private volatile long sampleCount = 0;
+  private volatile long overrunCount = 0;
+  private volatile long maxJitterNanos = 0;
+  private volatile long totalJitterNanos = 0;
+
+  /**
+   * Creates a runner for a dead wheel localizer, which is updated by calling its {@link
+   * DeadWheelLocalizer#update()}.
+   *
+   * @param localizer the localizer to update
+   * @param frequency how many updates to run per second
+   */
+  public AsyncOdometryRunner(DeadWheelLocalizer localizer, double frequency) {
+    this(localizer, localizer::update, frequency);
+  }
+
+  /**
+   * Creates a runner.
+   *
+   * @param localizer the localizer whose pose is published after each update
+   * @param update reads the sensors and updates the localizer, called on the odometry thread
+   * @param frequency how many updates to run per second
+   */
+  public AsyncOdometryRunner(Localizer localizer, Runnable update, double frequency) {
+    if (frequency <= 0) {
+      throw new IllegalArgumentException("frequency must be positive");
+    }
+    this.localizer = localizer;
+    this.update = update;
+    this.periodNanos = Math.round(1e9 / frequency);
+    this.snapshot = takeSnapshot();
+  }
+
+  /** Starts the odometry thread. Does nothing if it is already running. */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    failure = null;
+    running = true;
+    Thread thread = new Thread(this::run, "quail-odometry");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    this.thread = thread;
+    thread.start();
+  }
+
+  /**
+   * Stops the odometry thread and waits for the update in progress to finish.
+   *
+   * <p>Afterwards the wrapped localizer may be used directly again. A pose set since the last
+   * update is applied to it, so it isn't lost.
+   */
+  public synchronized void stop() {
+    running = false;
+    Thread thread = this.thread;
+    if (thread == null) {
+      return;
+    }
+    LockSupport.unpark(thread);
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    this.thread = null;
+    Pose2d pose = pendingPose.getAndSet(null);
+    if (pose != null) {
+      localizer.setPose(pose);
+      snapshot = takeSnapshot();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void close() {
+    stop();
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void run() {
+    long nextStart = System.nanoTime();
+    long lastStart = 0;
+    while (running) {
+      long start = System.nanoTime();
+      if (lastStart != 0) {
+        long jitter = Math.max(0, start - nextStart);
+        totalJitterNanos += jitter;
+        maxJitterNanos = Math.max(maxJitterNanos, jitter);
+      }
+      lastStart = start;
+
+      try {
+        Pose2d pose = pendingPose.getAndSet(null);
+        if (pose != null) {
+          localizer.setPose(pose);
+        }
+        update.run();
+        snapshot = takeSnapshot();
+      } catch (RuntimeException e) {
+        failure = e;
+        running = false;
+        return;
+      }
+      sampleCount++;
+
+      nextStart += periodNanos;
+      long now = System.nanoTime();
+      if (now - nextStart > 0) {
+        // the update took longer than the period, so skip the ticks that were missed
+        overrunCount++;
+        nextStart = now;
+        continue;
+      }
+      long remaining;
+      while (running && (remaining = nextStart - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(remaining);
+      }
+    }
+  }
+
+  private Snapshot takeSnapshot() {
+    PoseSample sample = new PoseSample();
+    localizer.getPoseSample(sample);
+    return new Snapshot(sample.getPose(), sample);
+  }
+
+  /** Returns the pose from the latest update. Never blocks. */
+  @Override
+  public Pose2d getPose() {
+    return snapshot.pose;
+  }
+
+  /**
+   * Copies the pose, velocity and timestamp from the latest update into a sample. Never blocks.
+   *
+   * @param out the sample to fill in
+   */
+  @Override
+  public void getPoseSample(PoseSample out) {
+    out.set(snapshot.sample);
+  }
+
+  /** Returns the {@link System#nanoTime()} at which the latest published pose was measured. */
+  public long getPoseTimestampNanos() {
+    return snapshot.sample.timestampNanos;
+  }
+
+  /**
+   * Sets the robot's pose.
+   *
+   * <p>While running, the pose is handed to the odometry thread, which applies it before its next
+   * update.
+   *
+   * @param pose the robot's pose
+   */
+  @Override
+  public synchronized void setPose(Pose2d pose) {
+    if (running) {
+      pendingPose.set(pose);
+    } else {
+      localizer.setPose(pose);
+      snapshot = takeSnapshot();
+    }
+  }
+
+  /** Returns the exception that stopped the odometry thread, or null if it didn't fail. */
+  public RuntimeException getFailure() {
+    return failure;
+  }
+
+  /** Returns the number of updates run. */
+  public long getSampleCount() {
+    return sampleCount;
+  }
+
+  /** Returns the number of updates that took longer than the period. */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+
+  /** Returns the largest delay between when an update should have started and when it did. */
+  public long getMaxJitterNanos() {
+    return maxJitterNanos;
+  }
+
+  /** Returns the mean delay between when an update should have started and when it did. */
+  public double getMeanJitterNanos() {
+    long samples = sampleCount;
+    return samples <= 1 ? 0 : (double) totalJitterNanos / (samples - 1);
+  }
+
+  /** Returns the time between updates in nanoseconds. */
+  public long getPeriodNanos() {
+    return periodNanos;
+  }
+
+  /**
+   * A published pose. Never changed after it is published, so it can be handed between threads
+   * without locking.
+   */
+  private static final class Snapshot {
+    final Pose2d pose;
+    final PoseSample sample;
+
+    Snapshot(Pose2d pose, PoseSample sample) {
+      this.pose = pose;
+      this.sample = sample;
+    }
+  }
+}
@@ -0,0 +1,401 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.localization;
+
+import com.mineinjava.quail.util.MathUtil;
+import com.mineinjava.quail.util.geometry.Angle;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * Localizer for any number of encoder wheels, optionally with a gyro.
+ *
+ * <p>Each wheel measures a linear combination of the robot's motion: for a dead wheel at (x, y)
+ * rolling along heading phi, that is {@code dx * cos(phi) + dy * sin(phi) + dtheta * (x * sin(phi)
+ * - y * cos(phi))}. The least-squares pseudo-inverse of those rows is computed once at
+ * construction, so each {@link #update()} turns the wheel deltas into a robot motion with a small
+ * matrix-vector product and doesn't allocate. With more measurements than the three degrees of
+ * freedom, the pseudo-inverse averages out their noise.
+ *
+ * <p>With a gyro, the heading change is taken from the gyro as is, and only the x and y motion is
+ * fitted to the wheels, after removing the part of each wheel's motion the turn explains. A gyro is
+ * usually far more accurate than the heading the wheels imply, so it isn't averaged with them.
+ *
+ * <p>Subclasses supply the wheel positions through {@link #getWheelPositions(double[])}. The
+ * heading comes from the supplier given to the constructor, or from {@link
+ * TwoWheelLocalizer#getHeading()}.
+ *
+ * @see TwoWheelLocalizer
+ * @see ThreeWheelLocalizer
+ * @see MecanumWheelLocalizer
+ */
+public abstract class DeadWheelLocalizer implements Localizer {
+  private final int wheelCount;
+  private final boolean usesHeading;
+  private final DoubleSupplier headingSupplier;
+
+  /**
+   * the pseudo-inverse, row-major with one column per wheel. It has 3 rows for x, y and heading, or
+   * only 2 rows for x and y when the heading comes from the gyro.
+   */
+  private final double[] pseudoInverse;
+
+  /** how much each wheel moves per radian of turning, which is removed when using the gyro. */
+  private final double[] turnRow;
+
+  private double x = 0;
+  private double y = 0;
+  private double heading = 0;
+
+  private boolean hasVelocity = false;
+  private double velocityX = 0;
+  private double velocityY = 0;
+  private double velocityHeading = 0;
+
+  // field-centric velocity from the pose change over the last update, for when the wheel
+  // velocities aren't available
+  private boolean hasDeltaVelocity = false;
+  private double deltaVelocityX = 0;
+  private double deltaVelocityY = 0;
+  private double deltaVelocityHeading = 0;
+  private long timestampNanos = System.nanoTime();
+
+  private final double[] wheelPositions;
+  private final double[] lastWheelPositions;
+  private final double[] measurements;
+  private final double[] poseDelta = new double[3];
+  private boolean hasLastWheelPositions = false;
+  private double lastHeading;
+
+  /**
+   * Creates a localizer for dead wheels without a gyro.
+   *
+   * @param wheelPoses the position of each wheel relative to the robot's center, with the heading
+   *     it rolls along
+   * @throws IllegalArgumentException if the wheels can't measure all three degrees of freedom
+   */
+  public DeadWheelLocalizer(List<Pose2d> wheelPoses) {
+    this(wheelRows(wheelPoses), false, null);
+  }
+
+  /**
+   * Creates a localizer for dead wheels and a gyro.
+   *
+   * @param wheelPoses the position of each wheel relative to the robot's center, with the heading
+   *     it rolls along
+   * @param heading gives the robot's heading in radians, usually from a gyroscope or IMU
+   * @throws IllegalArgumentException if the heading is null, or the wheels can't measure both x and
+   *     y
+   */
+  public DeadWheelLocalizer(List<Pose2d> wheelPoses, DoubleSupplier heading) {
+    this(wheelRows(wheelPoses), true, requireHeading(heading));
+  }
+
+  /**
+   * Creates a localizer without a gyro, for wheels that measure arbitrary combinations of the
+   * robot's motion.
+   *
+   * @param wheelRows for each wheel, how much it moves per unit of robot-relative x, y and heading
+   *     motion
+   * @throws IllegalArgumentException if the wheels can't measure all three degrees of freedom
+   */
+  public DeadWheelLocalizer(double[][] wheelRows) {
+    this(wheelRows, false, null);
+  }
+
+  /**
+   * Creates a localizer with a gyro, for wheels that measure arbitrary combinations of the robot's
+   * motion.
+   *
+   * @param wheelRows for each wheel, how much it moves per unit of robot-relative x, y and heading
+   *     motion
+   * @param heading gives the robot's heading in radians, usually from a gyroscope or IMU
+   * @throws IllegalArgumentException if the heading is null, or the wheels can't measure both x and
+   *     y
+   */
+  public DeadWheelLocalizer(double[][] wheelRows, DoubleSupplier heading) {
+    this(wheelRows, true, requireHeading(heading));
+  }
+
+  /**
+   * Creates a localizer that reads the heading through {@link #readHeading()}, for subclasses in
+   * this package that declare their own abstract heading accessor.
+   */
+  DeadWheelLocalizer(double[][] wheelRows, boolean usesHeading, DoubleSupplier heading) {
+    this.wheelCount = wheelRows.length;
+    this.usesHeading = usesHeading;
+    this.headingSupplier = heading;
+    // with a gyro, only x and y are fitted to the wheels
+    int unknowns = usesHeading ? 2 : 3;
+
+    RealMatrix matrix = new Array2DRowRealMatrix(wheelCount, unknowns);
+    turnRow = new double[wheelCount];
+    for (int i = 0; i < wheelCount; i++) {
+      for (int column = 0; column < unknowns; column++) {
+        matrix.setEntry(i, column, wheelRows[i][column]);
+      }
+      turnRow[i] = wheelRows[i][2];
+    }
+    DecompositionSolver solver =
+        new LUDecomposition(matrix.transpose().multiply(matrix)).getSolver();
+    if (!solver.isNonSingular()) {
+      throw new IllegalArgumentException(
+          "The specified configuration cannot support full localization");
+    }
+    RealMatrix inverse = solver.getInverse().multiply(matrix.transpose());
+
+    pseudoInverse = new double[unknowns * wheelCount];
+    for (int row = 0; row < unknowns; row++) {
+      for (int column = 0; column < wheelCount; column++) {
+        pseudoInverse[row * wheelCount + column] = inverse.getEntry(row, column);
+      }
+    }
+    wheelPositions = new double[wheelCount];
+    lastWheelPositions = new double[wheelCount];
+    measurements = new double[wheelCount + (usesHeading ? 1 : 0)];
+  }
+
+  private static DoubleSupplier requireHeading(DoubleSupplier heading) {
+    if (heading == null) {
+      throw new IllegalArgumentException("A localizer with a gyro needs a heading");
+    }
+    return heading;
+  }
+
+  /** Builds the measurement row of each dead wheel from its pose. */
+  static double[][] wheelRows(List<Pose2d> wheelPoses) {
+    double[][] rows = new double[wheelPoses.size()][];
+    for (int i = 0; i < rows.length; i++) {
+      Vec2d orientationVector = wheelPoses.get(i).headingVec();
+      Vec2d positionVector = wheelPoses.get(i).vec();
+      rows[i] =
+          new double[] {
+            orientationVector.x,
+            orientationVector.y,
+            positionVector.x * orientationVector.y - positionVector.y * orientationVector.x
+          };
+    }
+    return rows;
+  }
+
+  /** Updates the robot's position on the field using the wheel positions. */
+  public void update() {
+    long now = System.nanoTime();
+    getWheelPositions(wheelPositions);
+    double gyroHeading = usesHeading ? readHeading() : 0;
+
+    if (hasLastWheelPositions) {
+      for (int i = 0; i < wheelCount; i++) {
+        measurements[i] = wheelPositions[i] - lastWheelPositions[i];
+      }
+      if (usesHeading) {
+        measurements[wheelCount] = Angle.normDelta(gyroHeading - lastHeading);
+      }
+      solve(measurements, poseDelta);
+      double lastX = x;
+      double lastY = y;
+      double dtheta = poseDelta[2];
+      twistToFieldDelta(heading, poseDelta[0], poseDelta[1], dtheta, poseDelta);
+      x += poseDelta[0];
+      y += poseDelta[1];
+      heading = Angle.norm(heading + dtheta);
+      if (now != timestampNanos) {
+        double dt = (now - timestampNanos) / 1e9;
+        deltaVelocityX = (x - lastX) / dt;
+        deltaVelocityY = (y - lastY) / dt;
+        deltaVelocityHeading = dtheta / dt;
+        hasDeltaVelocity = true;
+      }
+    }
+    timestampNanos = now;
+
+    hasVelocity = getVelocities(measurements);
+    if (hasVelocity) {
+      solve(measurements, poseDelta);
+      velocityX = poseDelta[0];
+      velocityY = poseDelta[1];
+      velocityHeading = poseDelta[2];
+    }
+
+    System.arraycopy(wheelPositions, 0, lastWheelPositions, 0, wheelCount);
+    hasLastWheelPositions = true;
+    lastHeading = gyroHeading;
+  }
+
+  /**
+   * Multiplies the measurements by the pseudo-inverse, giving the robot-relative motion. With a
+   * gyro, its measurement is the heading change, and the wheels only give x and y.
+   */
+  private void solve(double[] measurements, double[] out) {
+    double dtheta = usesHeading ? measurements[wheelCount] : 0;
+    int rows = usesHeading ? 2 : 3;
+    for (int row = 0; row < rows; row++) {
+      double sum = 0;
+      int offset = row * wheelCount;
+      for (int column = 0; column < wheelCount; column++) {
+        sum += pseudoInverse[offset + column] * (measurements[column] - turnRow[column] * dtheta);
+      }
+      out[row] = sum;
+    }
+    if (usesHeading) {
+      out[2] = dtheta;
+    }
+  }
+
+  /**
+   * Turns a robot-relative motion into a field-centric one with the pose exponential, which assumes
+   * the robot moved along an arc at constant velocity instead of in a straight line.
+   *
+   * <p>Doesn't allocate, and {@code out} may be an array that holds the inputs.
+   *
+   * @param heading the robot's heading at the start of the motion
+   * @param dx forward distance moved, in the robot's frame
+   * @param dy sideways (left) distance moved, in the robot's frame
+   * @param dtheta angle turned in radians
+   * @param out array of at least 2 elements that receives the field-centric x and y change
+   */
+  static void twistToFieldDelta(double heading, double dx, double dy, double dtheta, double[] out) {
+    double sineTerm, cosTerm;
+
+    if (MathUtil.epsilonEquals(dtheta, 0.0)) {
+      // Taylor series, since sin(dtheta) / dtheta is 0 / 0 at dtheta = 0
+      sineTerm = 1.0 - dtheta * dtheta / 6.0;
+      cosTerm = dtheta / 2.0;
+    } else {
+      sineTerm = Math.sin(dtheta) / dtheta;
+      cosTerm = (1 - Math.cos(dtheta)) / dtheta;
+    }
+
+    double xDelta = sineTerm * dx - cosTerm * dy;
+    double yDelta = cosTerm * dx + sineTerm * dy;
+
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    out[0] = xDelta * cos - yDelta * sin;
+    out[1] = xDelta * sin + yDelta * cos;
+  }
+
+  /**
+   * Returns the robot's pose.
+   *
+   * @return the robot's pose (Pose2d)
+   */
+  @Override
+  public Pose2d getPose() {
+    return new Pose2d(x, y, heading);
+  }
+
+  /**
+   * Sets the robot's pose.
+   *
+   * <p>Use this method to override with Vision data or for initial pose
+   *
+   * @param pose the robot's pose
+   */
+  @Override
+  public void setPose(Pose2d pose) {
+    x = pose.x;
+    y = pose.y;
+    heading = pose.heading;
+  }
+
+  /**
+   * Returns the robot's velocity in its own frame, from the last update.
+   *
+   * @return the velocity, or null if the wheel velocities aren't available
+   */
+  public Pose2d getPoseVelocity() {
+    return hasVelocity ? new Pose2d(velocityX, velocityY, velocityHeading) : null;
+  }
+
+  /**
+   * Copies the pose from the last update into a sample, with the field-centric velocity.
+   *
+   * <p>The velocity comes from {@link #getVelocities(double[])} when the wheel velocities are
+   * available, and otherwise from the pose change over the last update.
+   *
+   * @param out the sample to fill in
+   */
+  @Override
+  public void getPoseSample(PoseSample out) {
+    out.set(x, y, heading, timestampNanos);
+    if (hasVelocity) {
+      double cos = Math.cos(heading);
+      double sin = Math.sin(heading);
+      out.setVelocity(
+          velocityX * cos - velocityY * sin, velocityX * sin + velocityY * cos, velocityHeading);
+    } else if (hasDeltaVelocity) {
+      out.setVelocity(deltaVelocityX, deltaVelocityY, deltaVelocityHeading);
+    }
+  }
+
+  /** Returns the number of wheels. */
+  public int getWheelCount() {
+    return wheelCount;
+  }
+
+  /**
+   * Copies the positions of the wheels, in the desired distance units (not encoder counts!), into
+   * an array.
+   *
+   * @param out array with an element for each wheel, in the order they were given
+   */
+  public abstract void getWheelPositions(double[] out);
+
+  /** Returns the gyro heading. Only called if the localizer was created with a gyro. */
+  double readHeading() {
+    return headingSupplier.getAsDouble();
+  }
+
+  /**
+   * Copies the velocities of the wheels, followed by the heading velocity if the heading is used,
+   * into an array.
+   *
+   * @param out array with an element for each wheel, plus one for the heading if it is used
+   * @return false if the velocities aren't available, which is the default
+   */
+  public boolean getVelocities(double[] out) {
+    return false;
+  }
+
+  /**
+   * Returns the robot's releative pose.
+   *
+   * @param fieldPose the robot's pose on the field
+   * @param robotPoseDelta the robot's pose delta
+   * @return the robot's relative pose
+   */
+  public static Pose2d relativeOdometryUpdate(Pose2d fieldPose, Pose2d robotPoseDelta) {
+    double[] fieldDelta = new double[2];
+    twistToFieldDelta(
+        fieldPose.heading, robotPoseDelta.x, robotPoseDelta.y, robotPoseDelta.heading, fieldDelta);
+    return new Pose2d(
+        fieldPose.x + fieldDelta[0],
+        fieldPose.y + fieldDelta[1],
+        Angle.norm(fieldPose.heading + robotPoseDelta.heading));
+  }
+}
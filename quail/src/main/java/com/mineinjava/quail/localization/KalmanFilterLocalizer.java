@@ -22,36 +22,100 @@ package com.mineinjava.quail.localization;
 
 import com.mineinjava.quail.util.MathUtil;
 import com.mineinjava.quail.util.geometry.Pose2d;
-import com.mineinjava.quail.util.geometry.Vec2d;
-import java.util.ArrayList;
 
 /**
  * Localizer that uses a Kalman Filter.
  *
- * <p>
+ * <p>There are two ways to use it. {@link #update} blends a vision pose and dead reckoning with
+ * fixed weights. Alternatively, the localizer can be run as an extended Kalman filter: call {@link
+ * #predict} every loop with the measured velocity, and {@link #correct} whenever a vision pose
+ * arrives, along with how uncertain that pose is. The filter tracks the covariance of its own
+ * estimate, so each observation is weighted by how much it can actually be trusted.
+ *
+ * <p>The filter state and its 3x3 covariance are kept in primitive fields and the matrix math is
+ * written out by hand, so {@link #predict} and {@link #correct} don't allocate.
  *
  * @see https://astr0clad.github.io/quail_docs/localization/vision/
  */
 public class KalmanFilterLocalizer implements Localizer {
-  private Pose2d poseEstimate = new Pose2d();
-  private double looptime = 0;
-  private ArrayList<KalmanPose2d> velocities =
-      new ArrayList<KalmanPose2d>(); // / list of velocities, most recent last
+  // pose estimate
+  private double x = 0;
+  private double y = 0;
+  private double theta = 0;
+
+  // covariance of the pose estimate, which is symmetric so only the upper triangle is stored
+  private double pxx = 0;
+  private double pxy = 0;
+  private double pxt = 0;
+  private double pyy = 0;
+  private double pyt = 0;
+  private double ptt = 0;
+
+  // process noise variance added per second of prediction
+  private double translationNoise = 0.01;
+  private double headingNoise = 0.001;
+
+  private static final int DEFAULT_HISTORY_CAPACITY = 256;
+
+  /** number of values per observation in {@link #correctBatch}. */
+  public static final int OBSERVATION_SIZE = 6;
+
+  /**
+   * Mahalanobis gate that keeps 99% of correct observations: the 99th percentile of the chi-squared
+   * distribution with 3 degrees of freedom.
+   */
+  public static final double DEFAULT_GATE = 11.345;
+
+  private long rejectedObservationCount = 0;
+
+  private final double looptime;
+  private final PoseHistory poseHistory;
+  private final double[] historicalPose = new double[3];
+  private final double[] correctedPose = new double[3];
   public double heading = 0;
 
+  // field-centric velocity from the last update or prediction, and when it happened
+  private boolean hasVelocity = false;
+  private double velocityX = 0;
+  private double velocityY = 0;
+  private double velocityTheta = 0;
+  private long timestampNanos = System.nanoTime();
+
+  /**
+   * Creates a localizer that remembers the last 256 poses for latency compensation.
+   *
+   * @param initialPose the starting pose
+   * @param looptime the nominal time between updates in seconds, used for the very first update
+   */
   public KalmanFilterLocalizer(Pose2d initialPose, double looptime) {
-    poseEstimate = initialPose;
+    this(initialPose, looptime, DEFAULT_HISTORY_CAPACITY);
+  }
+
+  /**
+   * Creates a localizer.
+   *
+   * @param initialPose the starting pose
+   * @param looptime the nominal time between updates in seconds, used for the very first update
+   * @param historyCapacity how many poses to remember, which should cover the largest vision
+   *     latency
+   */
+  public KalmanFilterLocalizer(Pose2d initialPose, double looptime, int historyCapacity) {
     this.looptime = looptime;
+    this.poseHistory = new PoseHistory(historyCapacity);
+    setPose(initialPose);
   }
 
   /**
    * Updates the pose estimate.
    *
-   * <p>Updates based on the current velocity and the time since the last vision update
+   * <p>Dead reckons with the velocity over the actual time since the last update, then blends the
+   * vision pose with the pose estimate from when the vision pose was captured. The correction is
+   * applied to that historical pose and the odometry since then is replayed on top of it (see
+   * {@link PoseHistory#correct}), so latency is compensated exactly.
    *
    * @param observedPose the current pose estimate (get this from vision usually), include rotation
-   * @param velocity the current velocity, include rotation
-   * @param poseEstimateLatency the time since the last vision update
+   * @param velocity the current velocity per second, include rotation
+   * @param poseEstimateLatency the time since the last vision update in ms
    * @param w how much weight to "trust" the vision estimate for position
    * @param hw how much weight to "trust" the vision estimate for heading
    * @param timestampMillis the current system time in ms
@@ -64,63 +128,381 @@ public class KalmanFilterLocalizer implements Localizer {
       double hw,
       double timestampMillis) {
 
-    KalmanPose2d currentVelocity = new KalmanPose2d(velocity, timestampMillis);
-    velocities.add(currentVelocity); // add the current velocity to the list of velocities
-    // trim the list of velocities to only include the relevant ones.
-    while (velocities.size() > 0
-        && velocities.get(0).timestamp < timestampMillis - poseEstimateLatency) {
-      velocities.remove(0);
-    }
-    // distance traveled since the vision update
-    Vec2d deltaTranslationSinceVision = new Vec2d(0, 0);
-    double deltaRotationSinceVision = 0d;
-    for (KalmanPose2d vel : velocities) {
-      // don't scale here, we'll do it later (distributive property)
-      deltaTranslationSinceVision = deltaTranslationSinceVision.add(vel.vec());
-      deltaRotationSinceVision += vel.heading;
-    }
-
-    // scale by the looptime: distance = velocity * time
-    deltaTranslationSinceVision = deltaTranslationSinceVision.scale(this.looptime);
-    deltaRotationSinceVision = deltaRotationSinceVision * this.looptime;
-
-    // update the vision pose estimate with the delta from velocity
-    Vec2d updatedPoseSinceVision = observedPose.vec().add(deltaTranslationSinceVision);
-    double updatedRotationSinceVision = observedPose.heading + deltaRotationSinceVision;
     // update the last pose estimate with the velocity
-    Vec2d kinematicsTranslationEstimate =
-        this.poseEstimate.vec().add(velocity.vec().scale(this.looptime));
-    double kinematicsRotationEstimate =
-        this.poseEstimate.heading + (velocity.heading * this.looptime);
+    double dt = looptime;
+    if (!poseHistory.isEmpty()) {
+      dt = Math.max(0, (timestampMillis - poseHistory.getNewestTimestamp()) / 1000);
+    }
+    this.x += velocity.x * dt;
+    this.y += velocity.y * dt;
+    this.theta += velocity.heading * dt;
+    poseHistory.add(timestampMillis, this.x, this.y, this.theta);
+    setVelocity(velocity.x, velocity.y, velocity.heading);
 
-    // update the pose estimate with a weighted average of the vision and kinematics pose estimates
     // make sure w is between 0 and 1 (inclusive)
     w = MathUtil.clamp(w, 0, 1);
     hw = MathUtil.clamp(hw, 0, 1);
 
-    Vec2d translationEstimate =
-        ((updatedPoseSinceVision.scale(w)).add(kinematicsTranslationEstimate.scale(1 - w)));
+    // move the pose estimate from when the vision pose was captured towards the vision pose
+    double captureTimestamp = timestampMillis - poseEstimateLatency;
+    poseHistory.sample(captureTimestamp, historicalPose);
+    double correctedX = MathUtil.lerp(historicalPose[0], observedPose.x, w);
+    double correctedY = MathUtil.lerp(historicalPose[1], observedPose.y, w);
+    double correctedHeading =
+        historicalPose[2] + MathUtil.deltaAngle(historicalPose[2], observedPose.heading) * hw;
+    if (poseHistory.correct(
+        captureTimestamp, correctedX, correctedY, correctedHeading, correctedPose)) {
+      this.x = correctedPose[0];
+      this.y = correctedPose[1];
+      this.theta = correctedPose[2];
+    }
+    return getPose();
+  }
+
+  /**
+   * Predicts how the pose moved since the last prediction (EKF mode).
+   *
+   * <p>Moves the estimate by the velocity, using the heading halfway through the step, and grows
+   * the covariance by the process noise. Call this every loop.
+   *
+   * @param vx forward velocity in the robot's frame
+   * @param vy sideways (left) velocity in the robot's frame
+   * @param omega angular velocity in radians per second, counterclockwise positive
+   * @param dt time since the last prediction in seconds
+   */
+  public void predict(double vx, double vy, double omega, double dt) {
+    double midHeading = theta + omega * dt / 2;
+    double cos = Math.cos(midHeading);
+    double sin = Math.sin(midHeading);
+    double dx = (vx * cos - vy * sin) * dt;
+    double dy = (vx * sin + vy * cos) * dt;
+    x += dx;
+    y += dy;
+    theta += omega * dt;
+    setVelocity(vx * cos - vy * sin, vx * sin + vy * cos, omega);
+
+    // P = F P F^T + Q, where F is the identity except for d(x, y)/d(theta) = (-dy, dx)
+    double a = -dy;
+    double b = dx;
+    double newPxx = pxx + 2 * a * pxt + a * a * ptt;
+    double newPxy = pxy + a * pyt + b * pxt + a * b * ptt;
+    double newPyy = pyy + 2 * b * pyt + b * b * ptt;
+    pxt += a * ptt;
+    pyt += b * ptt;
+    pxx = newPxx + translationNoise * dt;
+    pxy = newPxy;
+    pyy = newPyy + translationNoise * dt;
+    ptt += headingNoise * dt;
+  }
+
+  /**
+   * Corrects the estimate with an observed pose (EKF mode).
+   *
+   * <p>The observation is weighted against the current estimate by their covariances: a precise
+   * observation moves the estimate a lot, a noisy one barely moves it. The observation should be
+   * for the current time, so shift latent vision poses by the odometry since they were captured.
+   *
+   * @param observedX observed x position
+   * @param observedY observed y position
+   * @param observedHeading observed heading in radians
+   * @param varianceX variance of the observed x position
+   * @param varianceY variance of the observed y position
+   * @param varianceHeading variance of the observed heading
+   * @return the new pose estimate
+   */
+  public Pose2d correct(
+      double observedX,
+      double observedY,
+      double observedHeading,
+      double varianceX,
+      double varianceY,
+      double varianceHeading) {
+    correctState(observedX, observedY, observedHeading, varianceX, varianceY, varianceHeading);
+    return getPose();
+  }
+
+  /**
+   * Corrects the estimate with an observed pose (EKF mode).
+   *
+   * @param observedPose the observed pose
+   * @param translationStdDev standard deviation of the observed x and y positions
+   * @param headingStdDev standard deviation of the observed heading in radians
+   * @return the new pose estimate
+   * @see #correct(double, double, double, double, double, double)
+   */
+  public Pose2d correct(Pose2d observedPose, double translationStdDev, double headingStdDev) {
+    double translationVariance = translationStdDev * translationStdDev;
+    return correct(
+        observedPose.x,
+        observedPose.y,
+        observedPose.heading,
+        translationVariance,
+        translationVariance,
+        headingStdDev * headingStdDev);
+  }
+
+  /**
+   * Corrects the estimate with several observed poses at once, such as one from each camera (EKF
+   * mode).
+   *
+   * <p>Each observation is first checked against the current estimate: if its Mahalanobis distance
+   * (how far it is from the estimate, measured in standard deviations of their combined
+   * uncertainty) is beyond the gate, it is rejected as an outlier. The observations that pass are
+   * fused, weighted by their variances, into one observation with a smaller variance, and the
+   * estimate is corrected once with that. This gives the same result as correcting with each of
+   * them in turn, but bad detections can't pull the estimate away first.
+   *
+   * <p>Like {@link #correct(double, double, double, double, double, double)}, the observations
+   * should be for the current time. Nothing is allocated.
+   *
+   * @param observations {@link #OBSERVATION_SIZE} values per observation: x, y, heading, and the
+   *     variances of x, y and heading, which must be positive
+   * @param count the number of observations in the array
+   * @param gate the largest squared Mahalanobis distance accepted, for example {@link
+   *     #DEFAULT_GATE}
+   * @return the number of observations rejected
+   */
+  public int correctBatch(double[] observations, int count, double gate) {
+    if (observations.length < count * OBSERVATION_SIZE) {
+      throw new IllegalArgumentException("observations holds fewer than count observations");
+    }
+    // the sum of the inverse variances, and the innovations weighted by them
+    double informationX = 0;
+    double informationY = 0;
+    double informationHeading = 0;
+    double weightedX = 0;
+    double weightedY = 0;
+    double weightedHeading = 0;
+    int rejected = 0;
+
+    for (int i = 0; i < count; i++) {
+      int offset = i * OBSERVATION_SIZE;
+      double rx = observations[offset + 3];
+      double ry = observations[offset + 4];
+      double rt = observations[offset + 5];
+      if (!(rx > 0 && ry > 0 && rt > 0)) {
+        throw new IllegalArgumentException("observation variances must be positive");
+      }
+      double innovationX = observations[offset] - x;
+      double innovationY = observations[offset + 1] - y;
+      double innovationHeading = MathUtil.deltaAngle(theta, observations[offset + 2]);
+      if (!(mahalanobisSquared(innovationX, innovationY, innovationHeading, rx, ry, rt) <= gate)) {
+        rejected++;
+        continue;
+      }
+      informationX += 1 / rx;
+      informationY += 1 / ry;
+      informationHeading += 1 / rt;
+      weightedX += innovationX / rx;
+      weightedY += innovationY / ry;
+      weightedHeading += innovationHeading / rt;
+    }
+    rejectedObservationCount += rejected;
+
+    if (rejected < count) {
+      // the observations all observe the pose directly with independent noise, so together they
+      // are one observation at their inverse-variance weighted mean, with the combined information
+      correctState(
+          x + weightedX / informationX,
+          y + weightedY / informationY,
+          theta + weightedHeading / informationHeading,
+          1 / informationX,
+          1 / informationY,
+          1 / informationHeading);
+    }
+    return rejected;
+  }
+
+  /**
+   * Corrects the estimate with several observed poses at once, rejecting outliers with {@link
+   * #DEFAULT_GATE}.
+   *
+   * @return the number of observations rejected
+   * @see #correctBatch(double[], int, double)
+   */
+  public int correctBatch(double[] observations, int count) {
+    return correctBatch(observations, count, DEFAULT_GATE);
+  }
+
+  /** Returns the total number of observations rejected by {@link #correctBatch}. */
+  public long getRejectedObservationCount() {
+    return rejectedObservationCount;
+  }
+
+  /** Returns v^T (P + R)^-1 v, the squared Mahalanobis distance of an innovation. */
+  private double mahalanobisSquared(
+      double vx, double vy, double vt, double rx, double ry, double rt) {
+    double sxx = pxx + rx;
+    double sxy = pxy;
+    double sxt = pxt;
+    double syy = pyy + ry;
+    double syt = pyt;
+    double stt = ptt + rt;
+
+    // v^T adj(S) v / det(S), with the cofactors of the symmetric matrix
+    double cxx = syy * stt - syt * syt;
+    double cxy = sxt * syt - sxy * stt;
+    double cxt = sxy * syt - sxt * syy;
+    double cyy = sxx * stt - sxt * sxt;
+    double cyt = sxy * sxt - sxx * syt;
+    double ctt = sxx * syy - sxy * sxy;
+    double determinant = sxx * cxx + sxy * cxy + sxt * cxt;
+    double quadratic =
+        vx * vx * cxx
+            + vy * vy * cyy
+            + vt * vt * ctt
+            + 2 * (vx * vy * cxy + vx * vt * cxt + vy * vt * cyt);
+    return quadratic / determinant;
+  }
+
+  /** The Kalman update for a direct observation of the pose (H = I, R = diag(rx, ry, rt)). */
+  private void correctState(
+      double observedX, double observedY, double observedHeading, double rx, double ry, double rt) {
+    // innovation covariance S = P + R
+    double sxx = pxx + rx;
+    double sxy = pxy;
+    double sxt = pxt;
+    double syy = pyy + ry;
+    double syt = pyt;
+    double stt = ptt + rt;
+
+    // S^-1 from the cofactors of the symmetric matrix
+    double cxx = syy * stt - syt * syt;
+    double cxy = sxt * syt - sxy * stt;
+    double cxt = sxy * syt - sxt * syy;
+    double determinant = sxx * cxx + sxy * cxy + sxt * cxt;
+    if (Math.abs(determinant) < 1e-18) {
+      return; // both the estimate and the observation claim to be exact
+    }
+    double inverse = 1 / determinant;
+    double ixx = cxx * inverse;
+    double ixy = cxy * inverse;
+    double ixt = cxt * inverse;
+    double iyy = (sxx * stt - sxt * sxt) * inverse;
+    double iyt = (sxy * sxt - sxx * syt) * inverse;
+    double itt = (sxx * syy - sxy * sxy) * inverse;
+
+    // gain K = P S^-1
+    double kxx = pxx * ixx + pxy * ixy + pxt * ixt;
+    double kxy = pxx * ixy + pxy * iyy + pxt * iyt;
+    double kxt = pxx * ixt + pxy * iyt + pxt * itt;
+    double kyx = pxy * ixx + pyy * ixy + pyt * ixt;
+    double kyy = pxy * ixy + pyy * iyy + pyt * iyt;
+    double kyt = pxy * ixt + pyy * iyt + pyt * itt;
+    double ktx = pxt * ixx + pyt * ixy + ptt * ixt;
+    double kty = pxt * ixy + pyt * iyy + ptt * iyt;
+    double ktt = pxt * ixt + pyt * iyt + ptt * itt;
+
+    double innovationX = observedX - x;
+    double innovationY = observedY - y;
+    double innovationHeading = MathUtil.deltaAngle(theta, observedHeading);
+    x += kxx * innovationX + kxy * innovationY + kxt * innovationHeading;
+    y += kyx * innovationX + kyy * innovationY + kyt * innovationHeading;
+    theta += ktx * innovationX + kty * innovationY + ktt * innovationHeading;
+
+    // P = P - K P, keeping the upper triangle
+    double newPxx = pxx - (kxx * pxx + kxy * pxy + kxt * pxt);
+    double newPxy = pxy - (kxx * pxy + kxy * pyy + kxt * pyt);
+    double newPxt = pxt - (kxx * pxt + kxy * pyt + kxt * ptt);
+    double newPyy = pyy - (kyx * pxy + kyy * pyy + kyt * pyt);
+    double newPyt = pyt - (kyx * pxt + kyy * pyt + kyt * ptt);
+    double newPtt = ptt - (ktx * pxt + kty * pyt + ktt * ptt);
+    pxx = newPxx;
+    pxy = newPxy;
+    pxt = newPxt;
+    pyy = newPyy;
+    pyt = newPyt;
+    ptt = newPtt;
+  }
+
+  /**
+   * Sets how much uncertainty {@link #predict} adds to the estimate.
+   *
+   * @param translationStdDev standard deviation of the x and y drift over one second
+   * @param headingStdDev standard deviation of the heading drift over one second, in radians
+   */
+  public void setProcessNoise(double translationStdDev, double headingStdDev) {
+    this.translationNoise = translationStdDev * translationStdDev;
+    this.headingNoise = headingStdDev * headingStdDev;
+  }
 
-    double rotationEstimate =
-        (updatedRotationSinceVision * hw) + (kinematicsRotationEstimate * (1 - hw));
-    this.poseEstimate = new Pose2d(translationEstimate, rotationEstimate);
-    return this.poseEstimate;
+  /**
+   * Sets the covariance of the current estimate, with no correlation between x, y and heading.
+   *
+   * <p>Use large variances when the starting pose is not known well, so the first observations are
+   * trusted.
+   *
+   * @param varianceX variance of the x position
+   * @param varianceY variance of the y position
+   * @param varianceHeading variance of the heading
+   */
+  public void setCovariance(double varianceX, double varianceY, double varianceHeading) {
+    pxx = varianceX;
+    pxy = 0;
+    pxt = 0;
+    pyy = varianceY;
+    pyt = 0;
+    ptt = varianceHeading;
+  }
+
+  /**
+   * Copies the covariance of the estimate into an array, in row-major order.
+   *
+   * @param out array of at least 9 elements to copy into
+   */
+  public void getCovariance(double[] out) {
+    out[0] = pxx;
+    out[1] = pxy;
+    out[2] = pxt;
+    out[3] = pxy;
+    out[4] = pyy;
+    out[5] = pyt;
+    out[6] = pxt;
+    out[7] = pyt;
+    out[8] = ptt;
+  }
+
+  private void setVelocity(double velocityX, double velocityY, double velocityTheta) {
+    this.hasVelocity = true;
+    this.velocityX = velocityX;
+    this.velocityY = velocityY;
+    this.velocityTheta = velocityTheta;
+    this.timestampNanos = System.nanoTime();
+  }
+
+  /**
+   * Copies the pose estimate into a sample, with the field-centric velocity from the last {@link
+   * #update} or {@link #predict}.
+   *
+   * @param out the sample to fill in
+   */
+  @Override
+  public void getPoseSample(PoseSample out) {
+    out.set(x, y, theta, timestampNanos);
+    if (hasVelocity) {
+      out.setVelocity(velocityX, velocityY, velocityTheta);
+    }
   }
 
   /** Returns the current pose estimate */
   public Pose2d getPose() {
-    return new Pose2d(poseEstimate.x, poseEstimate.y, poseEstimate.heading);
+    return new Pose2d(x, y, theta);
   }
 
   /**
    * Sets the current position.
    *
-   * <p>Completely overrides the old position
+   * <p>Completely overrides the old position and forgets the pose history, but keeps the
+   * covariance.
    *
    * @param pose new pose to use
    */
   public void setPose(Pose2d pose) {
-    this.poseEstimate = pose;
+    this.x = pose.x;
+    this.y = pose.y;
+    this.theta = pose.heading;
+    this.timestampNanos = System.nanoTime();
+    poseHistory.clear();
   }
 
   /**
@@ -132,22 +514,3 @@ public class KalmanFilterLocalizer implements Localizer {
     this.heading = heading;
   }
 }
-
-/**
- * Modified translational pose but it has a timestamp.
- *
- * @see Pose2d
- */
-class KalmanPose2d extends Pose2d {
-  public double timestamp = 0;
-
-  public KalmanPose2d(double x, double y, double heading, double timestamp) {
-    super(x, y, heading);
-    this.timestamp = timestamp;
-  }
-
-  public KalmanPose2d(Pose2d pos, double timestamp) {
-    super(pos.x, pos.y, pos.heading);
-    this.timestamp = timestamp;
-  }
-}
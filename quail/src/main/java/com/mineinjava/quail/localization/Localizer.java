@@ -22,12 +22,24 @@ package com.mineinjava.quail.localization;
 
 import com.mineinjava.quail.util.geometry.Pose2d;
 
-/**
- * Interface for code that gets the robot's position and/or velocity TODO: make a getVelocity method
- */
+/** Interface for code that gets the robot's position and/or velocity */
 public interface Localizer {
 
   public Pose2d getPose();
 
   public void setPose(Pose2d pose);
+
+  /**
+   * Copies the latest pose, along with the measured velocity if there is one and when the pose was
+   * measured, into a sample.
+   *
+   * <p>Localizers that measure velocity should override this. The default copies {@link
+   * #getPose()}, with no velocity and the current time as the timestamp.
+   *
+   * @param out the sample to fill in, which callers can reuse every loop
+   */
+  public default void getPoseSample(PoseSample out) {
+    Pose2d pose = getPose();
+    out.set(pose.x, pose.y, pose.heading, System.nanoTime());
+  }
 }
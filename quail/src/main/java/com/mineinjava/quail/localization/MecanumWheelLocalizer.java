@@ -0,0 +1,69 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.localization;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Localizer that uses the drive encoders of a mecanum drive, optionally with a gyro.
+ *
+ * <p>Wheels are in the order front left, front right, back left, back right, with rollers in the
+ * usual X pattern seen from above. Wheel positions are the distance rolled by the wheel (encoder
+ * angle times wheel radius), positive when driving the robot forward. Mecanum wheels slip, so this
+ * is less accurate than dead wheels; using the gyro for the heading helps a lot. With a gyro, the
+ * heading comes from it alone and the wheels only give the x and y motion.
+ *
+ * @see DeadWheelLocalizer
+ */
+public abstract class MecanumWheelLocalizer extends DeadWheelLocalizer {
+
+  /**
+   * Creates the localizer without a gyro.
+   *
+   * @param trackWidth distance between the left and right wheels
+   * @param wheelBase distance between the front and back wheels
+   */
+  public MecanumWheelLocalizer(double trackWidth, double wheelBase) {
+    super(wheelRows(trackWidth, wheelBase));
+  }
+
+  /**
+   * Creates the localizer with a gyro.
+   *
+   * @param trackWidth distance between the left and right wheels
+   * @param wheelBase distance between the front and back wheels
+   * @param heading gives the robot's heading in radians, usually from a gyroscope or IMU
+   * @throws IllegalArgumentException if the heading is null
+   */
+  public MecanumWheelLocalizer(double trackWidth, double wheelBase, DoubleSupplier heading) {
+    super(wheelRows(trackWidth, wheelBase), heading);
+  }
+
+  private static double[][] wheelRows(double trackWidth, double wheelBase) {
+    double turn = (trackWidth + wheelBase) / 2;
+    return new double[][] {
+      {1, -1, -turn}, // front left
+      {1, 1, turn}, // front right
+      {1, 1, -turn}, // back left
+      {1, -1, turn} // back right
+    };
+  }
+}
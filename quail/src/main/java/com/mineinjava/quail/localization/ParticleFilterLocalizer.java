@@ -0,0 +1,424 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.localization;
+
+import com.mineinjava.quail.util.MathUtil;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Localizer that uses a particle filter.
+ *
+ * <p>The pose is tracked by a cloud of weighted guesses (particles). {@link #predict} moves every
+ * particle by the odometry, with some noise, and {@link #correct} weights each particle by how well
+ * it explains a measurement. Unlike a Kalman filter, the cloud can hold several separate guesses at
+ * once, so it can localize on a field with symmetric features without locking onto the wrong side:
+ * start it with {@link #setUniform} and keep correcting until the measurements rule out all but one
+ * of the guesses.
+ *
+ * <p>Particles are stored in parallel {@code double} arrays. With many particles, the predict and
+ * weight steps are spread over all cores. When the weights become too uneven, measured by the
+ * effective sample size, the particles are resampled in O(n) with systematic resampling. The number
+ * of particles is adjusted at the same time so that the effective sample size stays near a target,
+ * between a minimum and a maximum that bound the CPU cost.
+ *
+ * <p>The noise added to each particle is derived from the seed, the step and the particle's index,
+ * so a filter with a fixed seed gives the same result however its work is split between threads.
+ * Instances are not thread-safe.
+ */
+public class ParticleFilterLocalizer implements Localizer {
+  /** below this many particles, running on one thread is faster than splitting up the work. */
+  private static final int PARALLEL_THRESHOLD = 2048;
+
+  private final int minParticles;
+  private final int maxParticles;
+  private final long seed;
+  private final SplittableRandom random;
+
+  // particles, with a second set of arrays that resampling copies into
+  private double[] xs;
+  private double[] ys;
+  private double[] headings;
+  private double[] weights;
+  private double[] nextXs;
+  private double[] nextYs;
+  private double[] nextHeadings;
+  private int count;
+  private long step = 0;
+
+  private double translationNoise = 0.05;
+  private double headingNoise = 0.05;
+  private double resampleThreshold = 0.5;
+  private double targetEffectiveSize;
+  private double effectiveSampleSize;
+
+  /**
+   * Creates a particle filter with a fixed number of particles, all at the origin.
+   *
+   * @param particles the number of particles
+   * @param seed seed for the random noise
+   */
+  public ParticleFilterLocalizer(int particles, long seed) {
+    this(particles, particles, seed);
+  }
+
+  /**
+   * Creates a particle filter that adapts its number of particles, starting with the maximum, all
+   * at the origin.
+   *
+   * @param minParticles the fewest particles to use
+   * @param maxParticles the most particles to use
+   * @param seed seed for the random noise
+   */
+  public ParticleFilterLocalizer(int minParticles, int maxParticles, long seed) {
+    if (minParticles < 1) {
+      throw new IllegalArgumentException("minParticles must be positive");
+    }
+    if (maxParticles < minParticles) {
+      throw new IllegalArgumentException("maxParticles must be at least minParticles");
+    }
+    this.minParticles = minParticles;
+    this.maxParticles = maxParticles;
+    this.seed = seed;
+    this.random = new SplittableRandom(seed);
+    this.targetEffectiveSize = minParticles;
+    xs = new double[maxParticles];
+    ys = new double[maxParticles];
+    headings = new double[maxParticles];
+    weights = new double[maxParticles];
+    nextXs = new double[maxParticles];
+    nextYs = new double[maxParticles];
+    nextHeadings = new double[maxParticles];
+    setPose(new Pose2d());
+  }
+
+  /**
+   * Likelihood of a measurement given a particle's pose, for {@link #correct(MeasurementModel)}.
+   *
+   * <p>It is called from several threads at once, so it must not change any shared state.
+   */
+  @FunctionalInterface
+  public interface MeasurementModel {
+    /**
+     * Returns how likely the measurement is if the robot were at a pose. Only the ratios between
+     * particles matter, so it doesn't have to be normalized.
+     *
+     * @param x x position
+     * @param y y position
+     * @param heading heading in radians
+     * @return the likelihood, which must not be negative
+     */
+    double likelihood(double x, double y, double heading);
+  }
+
+  /**
+   * Sets how much noise {@link #predict} adds.
+   *
+   * @param translationStdDev standard deviation of the x and y error per unit of distance moved
+   * @param headingStdDev standard deviation of the heading error per radian turned
+   */
+  public void setMotionNoise(double translationStdDev, double headingStdDev) {
+    this.translationNoise = translationStdDev;
+    this.headingNoise = headingStdDev;
+  }
+
+  /**
+   * Sets how uneven the weights may get before resampling.
+   *
+   * @param threshold resample when the effective sample size drops below this fraction of the
+   *     number of particles, between 0 and 1 (0.5 by default)
+   */
+  public void setResampleThreshold(double threshold) {
+    this.resampleThreshold = MathUtil.clamp(threshold, 0, 1);
+  }
+
+  /**
+   * Sets the effective sample size that the number of particles is adjusted for.
+   *
+   * <p>The default is the minimum number of particles. A larger target spends more particles on
+   * measurements that only a few particles agree with.
+   *
+   * @param targetEffectiveSize the effective sample size to aim for
+   */
+  public void setTargetEffectiveSize(double targetEffectiveSize) {
+    this.targetEffectiveSize = targetEffectiveSize;
+  }
+
+  /**
+   * Spreads the maximum number of particles in a normal distribution around a pose.
+   *
+   * @param pose the center of the distribution
+   * @param translationStdDev standard deviation of the x and y positions
+   * @param headingStdDev standard deviation of the heading in radians
+   */
+  public void setPose(Pose2d pose, double translationStdDev, double headingStdDev) {
+    count = maxParticles;
+    for (int i = 0; i < count; i++) {
+      xs[i] = pose.x + random.nextGaussian() * translationStdDev;
+      ys[i] = pose.y + random.nextGaussian() * translationStdDev;
+      headings[i] = pose.heading + random.nextGaussian() * headingStdDev;
+    }
+    resetWeights();
+  }
+
+  /**
+   * Spreads the maximum number of particles evenly over a rectangle with any heading, for when the
+   * starting pose is not known at all.
+   *
+   * @param minX smallest x position
+   * @param minY smallest y position
+   * @param maxX largest x position
+   * @param maxY largest y position
+   */
+  public void setUniform(double minX, double minY, double maxX, double maxY) {
+    count = maxParticles;
+    for (int i = 0; i < count; i++) {
+      xs[i] = minX + random.nextDouble() * (maxX - minX);
+      ys[i] = minY + random.nextDouble() * (maxY - minY);
+      headings[i] = random.nextDouble() * 2 * Math.PI - Math.PI;
+    }
+    resetWeights();
+  }
+
+  /**
+   * Moves every particle by the robot's motion since the last prediction, plus noise.
+   *
+   * @param dx forward distance moved, in the robot's frame
+   * @param dy sideways (left) distance moved, in the robot's frame
+   * @param dtheta angle turned in radians, counterclockwise positive
+   */
+  public void predict(double dx, double dy, double dtheta) {
+    double translationStdDev = translationNoise * Math.hypot(dx, dy);
+    double headingStdDev = headingNoise * Math.abs(dtheta);
+    long currentStep = ++step;
+    forEachParticle(
+        i -> {
+          long key = mix(seed ^ mix(currentStep) ^ i);
+          double noisyDx = dx + gaussian(key, 0) * translationStdDev;
+          double noisyDy = dy + gaussian(key, 1) * translationStdDev;
+          double noisyDtheta = dtheta + gaussian(key, 2) * headingStdDev;
+          double midHeading = headings[i] + noisyDtheta / 2;
+          double cos = Math.cos(midHeading);
+          double sin = Math.sin(midHeading);
+          xs[i] += noisyDx * cos - noisyDy * sin;
+          ys[i] += noisyDx * sin + noisyDy * cos;
+          headings[i] += noisyDtheta;
+        });
+  }
+
+  /**
+   * Weights the particles by a measurement, and resamples them if the weights have become too
+   * uneven.
+   *
+   * @param model the likelihood of the measurement for a particle's pose
+   * @return false if no particle could explain the measurement, in which case it is ignored
+   */
+  public boolean correct(MeasurementModel model) {
+    double[] likelihoods = nextXs; // free until the next resample
+    forEachParticle(i -> likelihoods[i] = weights[i] * model.likelihood(xs[i], ys[i], headings[i]));
+
+    double total = 0;
+    for (int i = 0; i < count; i++) {
+      total += likelihoods[i];
+    }
+    if (!(total > 0) || Double.isInfinite(total)) {
+      return false;
+    }
+    double sumOfSquares = 0;
+    for (int i = 0; i < count; i++) {
+      double weight = likelihoods[i] / total;
+      weights[i] = weight;
+      sumOfSquares += weight * weight;
+    }
+    effectiveSampleSize = 1 / sumOfSquares;
+
+    if (effectiveSampleSize < resampleThreshold * count) {
+      resample();
+    }
+    return true;
+  }
+
+  /**
+   * Weights the particles by an observed pose, such as one from vision.
+   *
+   * @param observedPose the observed pose
+   * @param translationStdDev standard deviation of the observed x and y positions
+   * @param headingStdDev standard deviation of the observed heading in radians
+   * @return false if no particle could explain the observation, in which case it is ignored
+   */
+  public boolean correct(Pose2d observedPose, double translationStdDev, double headingStdDev) {
+    double translationScale = -0.5 / (translationStdDev * translationStdDev);
+    double headingScale = -0.5 / (headingStdDev * headingStdDev);
+    return correct(
+        (x, y, heading) -> {
+          double dx = x - observedPose.x;
+          double dy = y - observedPose.y;
+          double dh = MathUtil.deltaAngle(heading, observedPose.heading);
+          return Math.exp((dx * dx + dy * dy) * translationScale + dh * dh * headingScale);
+        });
+  }
+
+  /**
+   * Draws a new set of equally weighted particles with systematic resampling, choosing how many
+   * from the effective sample size.
+   */
+  private void resample() {
+    // with fewer effective samples than the target, more particles are needed, and the other way
+    // around, but the count at most doubles at once so a single bad measurement can't blow it up
+    int newCount = (int) Math.ceil(count * targetEffectiveSize / effectiveSampleSize);
+    newCount = (int) MathUtil.clamp(newCount, minParticles, Math.min(maxParticles, 2L * count));
+
+    double spacing = 1.0 / newCount;
+    double threshold = random.nextDouble() * spacing;
+    double cumulative = weights[0];
+    int source = 0;
+    for (int i = 0; i < newCount; i++) {
+      while (threshold > cumulative && source < count - 1) {
+        source++;
+        cumulative += weights[source];
+      }
+      nextXs[i] = xs[source];
+      nextYs[i] = ys[source];
+      nextHeadings[i] = headings[source];
+      threshold += spacing;
+    }
+
+    double[] swap = xs;
+    xs = nextXs;
+    nextXs = swap;
+    swap = ys;
+    ys = nextYs;
+    nextYs = swap;
+    swap = headings;
+    headings = nextHeadings;
+    nextHeadings = swap;
+    count = newCount;
+    resetWeights();
+  }
+
+  private void resetWeights() {
+    double weight = 1.0 / count;
+    for (int i = 0; i < count; i++) {
+      weights[i] = weight;
+    }
+    effectiveSampleSize = count;
+  }
+
+  private void forEachParticle(IntConsumer action) {
+    if (count >= PARALLEL_THRESHOLD) {
+      IntStream.range(0, count).parallel().forEach(action);
+    } else {
+      for (int i = 0; i < count; i++) {
+        action.accept(i);
+      }
+    }
+  }
+
+  /** SplitMix64's finalizer, which turns a counter into a well-mixed random value. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /** Returns a standard normal value that depends only on the key and the stream. */
+  private static double gaussian(long key, int stream) {
+    long bits = mix(key + (stream + 1) * 0x9e3779b97f4a7c15L);
+    // two uniform values from the high and low halves, u1 in (0, 1] so the log is finite
+    double u1 = ((bits >>> 32) + 1) * 0x1.0p-32;
+    double u2 = (bits & 0xffffffffL) * 0x1.0p-32;
+    return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+  }
+
+  /**
+   * Returns the weighted mean of the particles.
+   *
+   * <p>If the particles are split between several guesses, the mean is somewhere between them, so
+   * check {@link #getHeadingSpread} or the particles themselves before trusting it.
+   */
+  @Override
+  public Pose2d getPose() {
+    double x = 0;
+    double y = 0;
+    double cos = 0;
+    double sin = 0;
+    for (int i = 0; i < count; i++) {
+      double weight = weights[i];
+      x += xs[i] * weight;
+      y += ys[i] * weight;
+      cos += Math.cos(headings[i]) * weight;
+      sin += Math.sin(headings[i]) * weight;
+    }
+    return new Pose2d(x, y, Math.atan2(sin, cos));
+  }
+
+  /**
+   * Moves every particle to a pose and makes their weights equal.
+   *
+   * @param pose the robot's pose
+   */
+  @Override
+  public void setPose(Pose2d pose) {
+    setPose(pose, 0, 0);
+  }
+
+  /**
+   * Returns how spread out the particles' headings are, from 0 when they all agree to 1 when they
+   * point every which way. The same as one minus the length of the mean heading vector.
+   */
+  public double getHeadingSpread() {
+    double cos = 0;
+    double sin = 0;
+    for (int i = 0; i < count; i++) {
+      cos += Math.cos(headings[i]) * weights[i];
+      sin += Math.sin(headings[i]) * weights[i];
+    }
+    return 1 - Math.hypot(cos, sin);
+  }
+
+  /**
+   * Copies a particle into an array.
+   *
+   * @param index index of the particle, less than {@link #getParticleCount()}
+   * @param out array of at least 4 elements that receives the x, y, heading and weight
+   */
+  public void getParticle(int index, double[] out) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    out[0] = xs[index];
+    out[1] = ys[index];
+    out[2] = headings[index];
+    out[3] = weights[index];
+  }
+
+  /** Returns the number of particles in use. */
+  public int getParticleCount() {
+    return count;
+  }
+
+  /** Returns the effective sample size after the last correction: 1 / sum of squared weights. */
+  public double getEffectiveSampleSize() {
+    return effectiveSampleSize;
+  }
+}
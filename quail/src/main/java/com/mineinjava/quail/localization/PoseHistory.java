@@ -0,0 +1,246 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.localization;
+
+import com.mineinjava.quail.util.MathUtil;
+import com.mineinjava.quail.util.geometry.Pose2d;
+
+/**
+ * Fixed-capacity history of timestamped poses, for latency-compensated vision.
+ *
+ * <p>Record the odometry pose every loop with {@link #add}. When a vision measurement arrives late,
+ * {@link #sample} gives the pose the robot was at when the camera captured it (interpolating
+ * between recorded poses), and {@link #correct} fixes that historical pose and replays the odometry
+ * recorded since then on top of it, which gives the corrected current pose. Lookups are a binary
+ * search over the window.
+ *
+ * <p>Poses are kept in primitive arrays. When the history is full the oldest pose is overwritten.
+ * Nothing is allocated after construction except by the methods that return a {@link Pose2d}.
+ */
+public class PoseHistory {
+  private final double[] timestamps;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] headings;
+
+  private int start = 0;
+  private int size = 0;
+
+  /**
+   * Creates an empty history.
+   *
+   * @param capacity the number of poses kept, which should cover the largest vision latency
+   */
+  public PoseHistory(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    timestamps = new double[capacity];
+    xs = new double[capacity];
+    ys = new double[capacity];
+    headings = new double[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getCapacity() {
+    return timestamps.length;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    start = 0;
+    size = 0;
+  }
+
+  /** Returns the timestamp of the oldest pose, or NaN if the history is empty. */
+  public double getOldestTimestamp() {
+    return size == 0 ? Double.NaN : timestamps[start];
+  }
+
+  /** Returns the timestamp of the newest pose, or NaN if the history is empty. */
+  public double getNewestTimestamp() {
+    return size == 0 ? Double.NaN : timestamps[index(size - 1)];
+  }
+
+  /**
+   * Records a pose.
+   *
+   * <p>A pose with the same timestamp as the newest one replaces it.
+   *
+   * @param timestamp when the robot was at the pose, not before the newest pose
+   * @param x x position
+   * @param y y position
+   * @param heading heading in radians
+   * @throws IllegalArgumentException if the timestamp is before the newest pose
+   */
+  public void add(double timestamp, double x, double y, double heading) {
+    int slot;
+    if (size > 0 && timestamp <= timestamps[index(size - 1)]) {
+      if (timestamp < timestamps[index(size - 1)]) {
+        throw new IllegalArgumentException("Poses must be added in time order");
+      }
+      slot = index(size - 1);
+    } else if (size == timestamps.length) {
+      slot = start;
+      start = (start + 1) % timestamps.length;
+    } else {
+      slot = index(size);
+      size++;
+    }
+    timestamps[slot] = timestamp;
+    xs[slot] = x;
+    ys[slot] = y;
+    headings[slot] = heading;
+  }
+
+  /**
+   * Records a pose.
+   *
+   * @see #add(double, double, double, double)
+   */
+  public void add(double timestamp, Pose2d pose) {
+    add(timestamp, pose.x, pose.y, pose.heading);
+  }
+
+  /**
+   * Finds the pose at a time, interpolating between the recorded poses around it.
+   *
+   * <p>Times outside the recorded window are clamped to the oldest or newest pose.
+   *
+   * @param timestamp the time to look up
+   * @param out array of at least 3 elements that receives the x, y and heading
+   * @return false if the history is empty, in which case {@code out} is not changed
+   */
+  public boolean sample(double timestamp, double[] out) {
+    if (size == 0) {
+      return false;
+    }
+    int after = search(timestamp);
+    if (after == 0 || after == size || timestamps[index(after)] == timestamp) {
+      int slot = index(Math.min(after, size - 1));
+      out[0] = xs[slot];
+      out[1] = ys[slot];
+      out[2] = headings[slot];
+      return true;
+    }
+    int from = index(after - 1);
+    int to = index(after);
+    double t = (timestamp - timestamps[from]) / (timestamps[to] - timestamps[from]);
+    out[0] = MathUtil.lerp(xs[from], xs[to], t);
+    out[1] = MathUtil.lerp(ys[from], ys[to], t);
+    out[2] = headings[from] + MathUtil.deltaAngle(headings[from], headings[to]) * t;
+    return true;
+  }
+
+  /**
+   * Finds the pose at a time.
+   *
+   * @return the pose, or null if the history is empty
+   * @see #sample(double, double[])
+   */
+  public Pose2d sample(double timestamp) {
+    double[] pose = new double[3];
+    return sample(timestamp, pose) ? new Pose2d(pose[0], pose[1], pose[2]) : null;
+  }
+
+  /**
+   * Corrects the pose at a past time and replays the odometry recorded since then.
+   *
+   * <p>Every pose recorded after the time keeps its position and heading relative to the pose at
+   * that time, so the motion measured by odometry since then is preserved exactly and only where it
+   * started from changes. Poses before the time are not changed.
+   *
+   * @param timestamp when the robot was at the corrected pose, usually when a camera captured it
+   * @param x corrected x position
+   * @param y corrected y position
+   * @param heading corrected heading in radians
+   * @param out array of at least 3 elements that receives the corrected newest pose, or null
+   * @return false if the history is empty or the time is after the newest pose, in which case
+   *     nothing is changed
+   */
+  public boolean correct(double timestamp, double x, double y, double heading, double[] out) {
+    if (size == 0) {
+      return false;
+    }
+    int after = search(timestamp);
+    if (after == size) {
+      return false;
+    }
+    int first = index(after);
+    double historicalX = xs[first];
+    double historicalY = ys[first];
+    double historicalHeading = headings[first];
+    if (after > 0) {
+      int before = index(after - 1);
+      double t = (timestamp - timestamps[before]) / (timestamps[first] - timestamps[before]);
+      historicalX = MathUtil.lerp(xs[before], historicalX, t);
+      historicalY = MathUtil.lerp(ys[before], historicalY, t);
+      historicalHeading =
+          headings[before] + MathUtil.deltaAngle(headings[before], historicalHeading) * t;
+    }
+
+    // the rigid transform that takes the historical pose to the corrected one
+    double rotation = MathUtil.deltaAngle(historicalHeading, heading);
+    double cos = Math.cos(rotation);
+    double sin = Math.sin(rotation);
+    for (int i = after; i < size; i++) {
+      int slot = index(i);
+      double dx = xs[slot] - historicalX;
+      double dy = ys[slot] - historicalY;
+      xs[slot] = x + dx * cos - dy * sin;
+      ys[slot] = y + dx * sin + dy * cos;
+      headings[slot] += rotation;
+    }
+
+    if (out != null) {
+      int newest = index(size - 1);
+      out[0] = xs[newest];
+      out[1] = ys[newest];
+      out[2] = headings[newest];
+    }
+    return true;
+  }
+
+  /** Returns the logical index of the first pose at or after a time, or size if there is none. */
+  private int search(double timestamp) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (timestamps[index(middle)] < timestamp) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int index(int logicalIndex) {
+    return (start + logicalIndex) % timestamps.length;
+  }
+}
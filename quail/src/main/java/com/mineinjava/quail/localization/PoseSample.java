@@ -0,0 +1,118 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.localization;
+
+import com.mineinjava.quail.util.geometry.Pose2d;
+import com.mineinjava.quail.util.geometry.Vec2d;
+
+/**
+ * A pose and velocity measured by a {@link Localizer}, with the time they were measured.
+ *
+ * <p>Samples are mutable so that one instance can be reused every loop: {@link
+ * Localizer#getPoseSample(PoseSample)} fills in the fields without allocating.
+ *
+ * <p>The velocity is field-centric, in the localizer's distance units per second and radians per
+ * second. The timestamp is from {@link System#nanoTime()}, so it is monotonic and can be compared
+ * to the current time to find how old the sample is.
+ */
+public class PoseSample {
+  public double x = 0;
+  public double y = 0;
+  public double heading = 0;
+
+  /** whether the velocity fields hold a measurement; if not, they are zero. */
+  public boolean hasVelocity = false;
+
+  public double velocityX = 0;
+  public double velocityY = 0;
+  public double velocityHeading = 0;
+
+  /** the {@link System#nanoTime()} at which the pose was measured. */
+  public long timestampNanos = 0;
+
+  /**
+   * Sets the pose and timestamp and clears the velocity.
+   *
+   * @param x x position
+   * @param y y position
+   * @param heading heading in radians
+   * @param timestampNanos the {@link System#nanoTime()} at which the pose was measured
+   */
+  public void set(double x, double y, double heading, long timestampNanos) {
+    this.x = x;
+    this.y = y;
+    this.heading = heading;
+    this.timestampNanos = timestampNanos;
+    clearVelocity();
+  }
+
+  /**
+   * Sets the field-centric velocity.
+   *
+   * @param velocityX x velocity per second
+   * @param velocityY y velocity per second
+   * @param velocityHeading angular velocity in radians per second
+   */
+  public void setVelocity(double velocityX, double velocityY, double velocityHeading) {
+    this.hasVelocity = true;
+    this.velocityX = velocityX;
+    this.velocityY = velocityY;
+    this.velocityHeading = velocityHeading;
+  }
+
+  /** Marks the velocity as unknown. */
+  public void clearVelocity() {
+    this.hasVelocity = false;
+    this.velocityX = 0;
+    this.velocityY = 0;
+    this.velocityHeading = 0;
+  }
+
+  /**
+   * Copies another sample into this one.
+   *
+   * @param other the sample to copy
+   */
+  public void set(PoseSample other) {
+    this.x = other.x;
+    this.y = other.y;
+    this.heading = other.heading;
+    this.hasVelocity = other.hasVelocity;
+    this.velocityX = other.velocityX;
+    this.velocityY = other.velocityY;
+    this.velocityHeading = other.velocityHeading;
+    this.timestampNanos = other.timestampNanos;
+  }
+
+  /** Returns how many seconds old the sample is. */
+  public double getAgeSeconds() {
+    return (System.nanoTime() - timestampNanos) / 1e9;
+  }
+
+  public Pose2d getPose() {
+    return new Pose2d(x, y, heading);
+  }
+
+  /** Returns the field-centric velocity, which is zero if it isn't known. */
+  public Vec2d getVelocity() {
+    return new Vec2d(velocityX, velocityY);
+  }
+}
@@ -59,6 +59,16 @@ public class SwerveOdometry implements Localizer {
   public double theta = 0;
   public RobotMovement lastSpeedVector = new RobotMovement(0, 0, 0);
 
+  // when the pose last changed, and the field-centric velocity from the last two delta updates
+  private long timestampNanos = System.nanoTime();
+  private long lastDeltaNanos = 0;
+  private boolean hasLastDelta = false;
+  private boolean hasVelocity = false;
+  private double velocityX = 0;
+  private double velocityY = 0;
+  private double velocityTheta = 0;
+  private final double[] fieldDelta = new double[2];
+
   /**
    * Instantiates the SwerveOdometry object
    *
@@ -120,6 +130,9 @@ public class SwerveOdometry implements Localizer {
    *
    * <p>Multiply velocity by delta time to get delta position. All values must be field-centric.
    *
+   * <p>The velocity reported by {@link #getPoseSample} is this change divided by the time since the
+   * previous call.
+   *
    * @param dx
    * @param dy
    * @param dtheta
@@ -128,6 +141,48 @@ public class SwerveOdometry implements Localizer {
     x += dx;
     y += dy;
     theta += dtheta;
+
+    long now = System.nanoTime();
+    if (hasLastDelta && now != lastDeltaNanos) {
+      double dt = (now - lastDeltaNanos) / 1e9;
+      velocityX = dx / dt;
+      velocityY = dy / dt;
+      velocityTheta = dtheta / dt;
+      hasVelocity = true;
+    }
+    lastDeltaNanos = now;
+    hasLastDelta = true;
+    timestampNanos = now;
+  }
+
+  /**
+   * Updates the robot's position based on a robot-relative change in x, y and theta.
+   *
+   * <p>Unlike {@link #updateDeltaOdometry(double, double, double)}, which moves in a straight line,
+   * this integrates the motion exactly with the pose exponential: it assumes the robot moved along
+   * an arc, translating and rotating at constant rates. That removes the drift from translating
+   * while rotating, so the odometry can be updated less often. Doesn't allocate.
+   *
+   * @param dx forward distance moved, in the robot's frame
+   * @param dy sideways (left) distance moved, in the robot's frame
+   * @param dtheta angle turned in radians (from the gyro, if possible)
+   */
+  public void updateTwist(double dx, double dy, double dtheta) {
+    DeadWheelLocalizer.twistToFieldDelta(theta, dx, dy, dtheta, fieldDelta);
+    this.updateDeltaOdometry(fieldDelta[0], fieldDelta[1], dtheta);
+  }
+
+  /**
+   * Updates the robot's position based on the robot-relative velocity from {@link
+   * #calculateOdometry} or {@link #calculateFastOdometry}, integrated exactly over a time step.
+   *
+   * @param movement the robot's velocity and angular velocity, in the robot's frame
+   * @param dt time since the last update in seconds
+   * @see #updateTwist(double, double, double)
+   */
+  public void updateTwist(RobotMovement movement, double dt) {
+    this.updateTwist(
+        movement.translation.x * dt, movement.translation.y * dt, movement.rotation * dt);
   }
 
   /**
@@ -157,6 +212,7 @@ public class SwerveOdometry implements Localizer {
     x = mx;
     y = my;
     theta = mtheta;
+    timestampNanos = System.nanoTime();
   }
 
   /**
@@ -181,6 +237,7 @@ public class SwerveOdometry implements Localizer {
   public void updateOdometry(Vec2d pos) {
     this.x = pos.x;
     this.y = pos.y;
+    timestampNanos = System.nanoTime();
   }
 
   /**
@@ -212,6 +269,7 @@ public class SwerveOdometry implements Localizer {
    */
   public void setAngle(double angle) {
     this.theta = angle;
+    timestampNanos = System.nanoTime();
   }
 
   /**
@@ -226,6 +284,23 @@ public class SwerveOdometry implements Localizer {
     this.updateOdometry(pose.x, pose.y, pose.heading);
   }
 
+  /**
+   * Copies the pose into a sample, with the velocity measured by the last two calls to {@link
+   * #updateDeltaOdometry}.
+   *
+   * <p>Note that {@link #x}, {@link #y} and {@link #theta} are public, so the timestamp is only
+   * updated by the methods of this class.
+   *
+   * @param out the sample to fill in
+   */
+  @Override
+  public void getPoseSample(PoseSample out) {
+    out.set(x, y, theta, timestampNanos);
+    if (hasVelocity) {
+      out.setVelocity(velocityX, velocityY, velocityTheta);
+    }
+  }
+
   /**
    * Calculates the robot's velocity based on the module positions.
    *
@@ -287,6 +362,60 @@ public class SwerveOdometry implements Localizer {
     return this.calculateOdometry(new ArrayList<Vec2d>(Arrays.asList(modules)));
   }
 
+  /**
+   * Calculates the robot's velocity from the module angles and speeds, into an array the caller
+   * keeps. Doesn't allocate.
+   *
+   * <p>This is the least-squares inverse of {@link SwerveDrive#calculateModuleStates}: module i
+   * moves at {@code t + w J p_i}, with t the translation, w the rotation speed (counterclockwise
+   * positive), p_i the module position and J a 90 degree turn. Over all modules, the best fit is
+   * {@code w = sum((p_i - c) x (v_i - v)) / sum(|p_i - c|^2)}, with c the average position and v
+   * the average module velocity, and {@code t = v - w J c}. So the modules don't need to be placed
+   * symmetrically, and measurement errors are averaged out.
+   *
+   * <p>Like {@link #calculateOdometry(ArrayList)}, the result is robot-relative, and it is best to
+   * use the gyro for rotation.
+   *
+   * @param angles the angle of each module in radians
+   * @param speeds the speed of each module
+   * @param out array of at least 3 elements that receives the x and y velocity and the rotation
+   *     speed
+   */
+  public void calculateOdometry(double[] angles, double[] speeds, double[] out) {
+    int count = this.moduleVectors.size();
+    double centerX = 0;
+    double centerY = 0;
+    double velocityX = 0;
+    double velocityY = 0;
+    for (int i = 0; i < count; i++) {
+      Vec2d position = this.moduleVectors.get(i);
+      centerX += position.x;
+      centerY += position.y;
+      velocityX += speeds[i] * Math.cos(angles[i]);
+      velocityY += speeds[i] * Math.sin(angles[i]);
+    }
+    centerX /= count;
+    centerY /= count;
+    velocityX /= count;
+    velocityY /= count;
+
+    double cross = 0;
+    double spread = 0;
+    for (int i = 0; i < count; i++) {
+      Vec2d position = this.moduleVectors.get(i);
+      double px = position.x - centerX;
+      double py = position.y - centerY;
+      double vx = speeds[i] * Math.cos(angles[i]) - velocityX;
+      double vy = speeds[i] * Math.sin(angles[i]) - velocityY;
+      cross += px * vy - py * vx;
+      spread += px * px + py * py;
+    }
+    double rotation = spread == 0 ? 0 : cross / spread;
+    out[0] = velocityX + rotation * centerY;
+    out[1] = velocityY - rotation * centerX;
+    out[2] = rotation;
+  }
+
   /**
    * Calculates the robot's movement based on the module positions.
    *
@@ -0,0 +1,55 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.localization;
+
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.List;
+
+/**
+ * Localizer for three dead wheels and no gyro.
+ *
+ * <p>Usually two parallel wheels on either side of the robot measure forward motion and rotation,
+ * and a third perpendicular wheel measures sideways motion. Since the heading comes from the
+ * wheels, the IMU doesn't have to be read every loop.
+ *
+ * @see DeadWheelLocalizer
+ */
+public abstract class ThreeWheelLocalizer extends DeadWheelLocalizer {
+
+  /**
+   * Creates the localizer.
+   *
+   * @param wheelPoses the position of each of the three wheels relative to the robot's center, with
+   *     the heading it rolls along
+   * @throws IllegalArgumentException if there aren't three wheels, or they can't measure all three
+   *     degrees of freedom
+   */
+  public ThreeWheelLocalizer(List<Pose2d> wheelPoses) {
+    super(checkCount(wheelPoses));
+  }
+
+  private static List<Pose2d> checkCount(List<Pose2d> wheelPoses) {
+    if (wheelPoses.size() != 3) {
+      throw new IllegalArgumentException("A three wheel localizer needs three wheels");
+    }
+    return wheelPoses;
+  }
+}
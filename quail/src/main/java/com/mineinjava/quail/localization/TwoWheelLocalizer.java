@@ -20,123 +20,80 @@
 
 package com.mineinjava.quail.localization;
 
-import com.mineinjava.quail.util.MathUtil;
-import com.mineinjava.quail.util.geometry.Angle;
 import com.mineinjava.quail.util.geometry.Pose2d;
-import com.mineinjava.quail.util.geometry.Vec2d;
 import java.util.ArrayList;
 import java.util.List;
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-import org.apache.commons.math3.linear.DecompositionSolver;
-import org.apache.commons.math3.linear.LUDecomposition;
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
 
-/** Localizer implementation for a two-wheel + gyro setup commonly seen in FTC */
-public abstract class TwoWheelLocalizer implements Localizer {
+/**
+ * Localizer implementation for a two-wheel + gyro setup commonly seen in FTC
+ *
+ * <p>Subclasses should override the {@code double[]} accessors ({@link
+ * #getWheelPositions(double[])} and {@link #getVelocities(double[])}), which makes the update
+ * allocation-free. The {@code List} accessors are still supported for existing subclasses.
+ *
+ * @see DeadWheelLocalizer
+ */
+public abstract class TwoWheelLocalizer extends DeadWheelLocalizer {
 
   List<Pose2d> wheelPoses;
-  DecompositionSolver forwardSolver;
 
-  private Pose2d poseEstimate = new Pose2d(0, 0, 0);
-  private Pose2d poseVelocity;
-  private List<Double> lastWheelPositions = new ArrayList<>();
-  private double lastHeading;
+  /** set while the default list accessor delegates to the array one, to catch the cycle. */
+  private boolean delegatingWheelPositions = false;
 
+  /**
+   * Creates the localizer.
+   *
+   * @param wheelPoses the position of each tracking wheel relative to the robot's center, with the
+   *     heading it measures along
+   * @throws IllegalArgumentException if the wheels are parallel, so they can't measure both x and y
+   */
   public TwoWheelLocalizer(List<Pose2d> wheelPoses) {
+    super(wheelRows(wheelPoses.subList(0, 2)), true, null);
     this.wheelPoses = wheelPoses;
-
-    Array2DRowRealMatrix inverseMatrix = new Array2DRowRealMatrix(3, 3);
-    for (int i = 0; i <= 1; i++) {
-      Vec2d orientationVector = wheelPoses.get(i).headingVec();
-      Vec2d positionVector = wheelPoses.get(i).vec();
-
-      inverseMatrix.setEntry(i, 0, orientationVector.x);
-      inverseMatrix.setEntry(i, 1, orientationVector.y);
-      inverseMatrix.setEntry(
-          i, 2, positionVector.x * orientationVector.y - positionVector.y * orientationVector.x);
-    }
-    inverseMatrix.setEntry(2, 2, 1.0);
-
-    forwardSolver = new LUDecomposition(inverseMatrix).getSolver();
-
-    /*
-    if (forwardSolver.isNonSingular()) {
-        throw new IllegalArgumentException("The specified configuration cannot support full localization");
-    }
-    */
   }
 
   /**
-   * Returns the robot's pose
+   * Returns the positions of the tracking wheels in the desired distance units (not encoder
+   * counts!)
+   *
+   * <p>Subclasses must override either this or {@link #getWheelPositions(double[])}.
    *
-   * @return the robot's pose
+   * @throws IllegalStateException if neither is overridden
    */
-  private Pose2d calculatePoseDelta(List<Double> wheelDeltas, double headingDelta) {
-    RealMatrix inputMatrix =
-        MatrixUtils.createRealMatrix(new double[][] {toDoubleArray(wheelDeltas, headingDelta)})
-            .transpose();
-    RealMatrix rawPoseDelta = forwardSolver.solve(inputMatrix);
-
-    return new Pose2d(
-        rawPoseDelta.getEntry(0, 0), rawPoseDelta.getEntry(1, 0), rawPoseDelta.getEntry(2, 0));
-  }
-
-  /** Updates the robot's position on the field using the deadwheel positions. */
-  public void update() {
-    List<Double> wheelPositions = getWheelPositions();
-    double heading = getHeading();
-
-    if (!lastWheelPositions.isEmpty()) {
-      List<Double> wheelDeltas = new ArrayList<>();
-      for (int i = 0; i < wheelPositions.size(); i++) {
-        wheelDeltas.add(wheelPositions.get(i) - lastWheelPositions.get(i));
-      }
-
-      double headingDelta = Angle.normDelta(heading - lastHeading);
-      Pose2d robotPoseDelta = calculatePoseDelta(wheelDeltas, headingDelta);
-      poseEstimate = relativeOdometryUpdate(poseEstimate, robotPoseDelta);
+  public List<Double> getWheelPositions() {
+    if (delegatingWheelPositions) {
+      throw new IllegalStateException(
+          getClass().getName()
+              + " must override getWheelPositions() or getWheelPositions(double[])");
     }
-
-    List<Double> wheelVelocities = getWheelVelocities();
-    Double headingVelocity = getHeadingVelocity();
-
-    if (wheelVelocities != null && headingVelocity != null) {
-      poseVelocity = calculatePoseDelta(wheelVelocities, headingVelocity);
+    double[] positions = new double[2];
+    delegatingWheelPositions = true;
+    try {
+      getWheelPositions(positions);
+    } finally {
+      delegatingWheelPositions = false;
     }
-
-    lastWheelPositions = wheelPositions;
-    lastHeading = heading;
+    List<Double> list = new ArrayList<>(2);
+    list.add(positions[0]);
+    list.add(positions[1]);
+    return list;
   }
 
   /**
-   * Returns the robot's pose.
+   * Copies the positions of the tracking wheels, in the desired distance units (not encoder
+   * counts!), into an array.
    *
-   * @return the robot's pose (Pose2d)
-   */
-  @Override
-  public Pose2d getPose() {
-    return poseEstimate;
-  }
-
-  /**
-   * Sets the robot's pose.
-   *
-   * <p>Use this method to override with Vision data or for initial pose
+   * <p>Override this instead of {@link #getWheelPositions()} to avoid allocating every update.
    *
-   * @param pose the robot's pose
+   * @param out array of at least 2 elements that receives the positions
    */
   @Override
-  public void setPose(Pose2d pose) {
-    poseEstimate = pose;
+  public void getWheelPositions(double[] out) {
+    List<Double> positions = getWheelPositions();
+    out[0] = positions.get(0);
+    out[1] = positions.get(1);
   }
 
-  /**
-   * Returns the positions of the tracking wheels in the desired distance units (not encoder
-   * counts!)
-   */
-  public abstract List<Double> getWheelPositions();
-
   /**
    * Returns the velocities of the tracking wheels in the desired distance units (not encoder
    * counts!)
@@ -148,51 +105,36 @@ public abstract class TwoWheelLocalizer implements Localizer {
   /** Returns the heading of the robot (usually from a gyroscope or IMU). */
   public abstract double getHeading();
 
+  @Override
+  double readHeading() {
+    return getHeading();
+  }
+
   /** Returns the heading velocity of the robot (usually from a gyroscope or IMU). */
   public Double getHeadingVelocity() {
     return null; // You can return a Double value here if needed
   }
 
   /**
-   * Returns the robot's releative pose.
+   * Copies the velocities of the two tracking wheels followed by the heading velocity into an
+   * array.
+   *
+   * <p>Override this instead of {@link #getWheelVelocities()} and {@link #getHeadingVelocity()} to
+   * avoid allocating every update.
    *
-   * @param fieldPose the robot's pose on the field
-   * @param robotPoseDelta the robot's pose delta
-   * @return the robot's relative pose
+   * @param out array of at least 3 elements that receives the velocities
+   * @return false if the velocities aren't available
    */
-  public static Pose2d relativeOdometryUpdate(Pose2d fieldPose, Pose2d robotPoseDelta) {
-    double dtheta = robotPoseDelta.heading;
-    double sineTerm, cosTerm;
-
-    if (MathUtil.epsilonEquals(dtheta, 0.0)) {
-      sineTerm = 1.0 - dtheta * dtheta / 6.0;
-      cosTerm = dtheta / 2.0;
-    } else {
-      sineTerm = Math.sin(dtheta) / dtheta;
-      cosTerm = (1 - Math.cos(dtheta)) / dtheta;
-    }
-
-    double xDelta = sineTerm * robotPoseDelta.x - cosTerm * robotPoseDelta.y;
-    double yDelta = cosTerm * robotPoseDelta.x + sineTerm * robotPoseDelta.y;
-
-    Vec2d fieldPositionDelta = new Vec2d(xDelta, yDelta);
-
-    Pose2d fieldPoseDelta =
-        new Pose2d(fieldPositionDelta.rotate(fieldPose.heading, true), robotPoseDelta.heading);
-
-    double newX = fieldPose.x + fieldPoseDelta.x;
-    double newY = fieldPose.y + fieldPoseDelta.y;
-    double newHeading = Angle.norm(fieldPose.heading + fieldPoseDelta.heading);
-
-    return new Pose2d(newX, newY, newHeading);
-  }
-
-  private double[] toDoubleArray(List<Double> list, double value) {
-    double[] array = new double[list.size() + 1];
-    for (int i = 0; i < list.size(); i++) {
-      array[i] = list.get(i);
+  @Override
+  public boolean getVelocities(double[] out) {
+    List<Double> wheelVelocities = getWheelVelocities();
+    Double headingVelocity = getHeadingVelocity();
+    if (wheelVelocities == null || headingVelocity == null) {
+      return false;
     }
-    array[list.size()] = value;
-    return array;
+    out[0] = wheelVelocities.get(0);
+    out[1] = wheelVelocities.get(1);
+    out[2] = headingVelocity;
+    return true;
   }
 }
@@ -0,0 +1,386 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.ArrayList;
+
+/**
+ * Anytime grid planner using ARA* (Anytime Repairing A*).
+ *
+ * <p>The planner first runs weighted A* with a large heuristic weight, which finds a path quickly,
+ * then lowers the weight and repairs the search until it has the shortest 8-connected path. The
+ * work is done in {@link #step(long)} calls that each stop after a time budget, so planning can be
+ * spread over several loops of the robot's control thread:
+ *
+ * <pre>{@code
+ * planner.start(grid, localizer.getPose(), goal);
+ * // every loop
+ * if (planner.step(2_000_000)) {
+ *   pathFollower.setPath(planner.getBestPath());
+ * }
+ * }</pre>
+ *
+ * <p>Each path found is at most {@link #getBestPathWeight()} times longer than the shortest one,
+ * and is shortened to straight segments between cells that can see each other. Instances are not
+ * thread-safe.
+ */
+public class AnytimePlanner implements GridPlanner {
+  private static final double SQRT_2 = Math.sqrt(2);
+
+  /** how many nodes are expanded between checks of the clock. */
+  private static final int CLOCK_INTERVAL = 16;
+
+  private final double initialWeight;
+  private final double weightStep;
+  private final IndexedMinHeap open = new IndexedMinHeap();
+
+  private double[] costs = new double[0];
+  private int[] parents = new int[0];
+  private int[] seen = new int[0];
+  private int[] closed = new int[0];
+  private int[] inconsistent = new int[0];
+  private int[] inconsistentList = new int[0];
+  private int[] buffer = new int[0];
+  private int search = 0;
+  private int iteration = 0;
+  private int inconsistentCount = 0;
+
+  // progress of moving the nodes to a lower weight, see startReopen()
+  private boolean reopening = false;
+  private boolean reopenDraining = false;
+  private int reopenCount = 0;
+  private int reopenIndex = 0;
+
+  private OccupancyGrid grid;
+  private Pose2d start;
+  private Pose2d goal;
+  private int goalColumn;
+  private int goalRow;
+  private int goalNode;
+  private double weight;
+  private boolean finished = true;
+  private Path bestPath = null;
+  private double bestPathWeight = Double.POSITIVE_INFINITY;
+  private int nodesExpanded = 0;
+
+  /** Creates an anytime planner that starts with a weight of 3 and lowers it by 0.5 at a time. */
+  public AnytimePlanner() {
+    this(3, 0.5);
+  }
+
+  /**
+   * Creates an anytime planner.
+   *
+   * @param initialWeight the heuristic weight of the first search, at least 1
+   * @param weightStep how much the weight is lowered after each path is found
+   */
+  public AnytimePlanner(double initialWeight, double weightStep) {
+    if (initialWeight < 1) {
+      throw new IllegalArgumentException("initialWeight must be at least 1");
+    }
+    if (weightStep <= 0) {
+      throw new IllegalArgumentException("weightStep must be positive");
+    }
+    this.initialWeight = initialWeight;
+    this.weightStep = weightStep;
+  }
+
+  /**
+   * Starts planning a new path, throwing away the previous search and best path.
+   *
+   * <p>No nodes are expanded until {@link #step(long)} is called. The grid must not be changed
+   * while the search is running.
+   *
+   * @param grid the grid to plan through
+   * @param start the start pose
+   * @param goal the goal pose
+   */
+  public void start(OccupancyGrid grid, Pose2d start, Pose2d goal) {
+    this.grid = grid;
+    this.start = start;
+    this.goal = goal;
+    bestPath = null;
+    bestPathWeight = Double.POSITIVE_INFINITY;
+    nodesExpanded = 0;
+    weight = initialWeight;
+    reopening = false;
+
+    int width = grid.getWidth();
+    int startColumn = grid.getColumn(start.x);
+    int startRow = grid.getRow(start.y);
+    goalColumn = grid.getColumn(goal.x);
+    goalRow = grid.getRow(goal.y);
+    if (grid.isOccupied(startColumn, startRow) || grid.isOccupied(goalColumn, goalRow)) {
+      finished = true;
+      return;
+    }
+    finished = false;
+
+    prepare(width * grid.getHeight());
+    int startNode = startRow * width + startColumn;
+    goalNode = goalRow * width + goalColumn;
+    costs[startNode] = 0;
+    parents[startNode] = startNode;
+    seen[startNode] = search;
+    open.push(startNode, weight * heuristic(startColumn, startRow));
+  }
+
+  /**
+   * Continues the search for about {@code budgetNanos} nanoseconds.
+   *
+   * <p>The clock is only checked every few expansions, so a step may run slightly over budget.
+   * Moving the open and inconsistent nodes to a lower weight counts against the budget too, one
+   * node at a time, so a large open list can take several steps to re-key.
+   *
+   * @param budgetNanos how long the step may take
+   * @return whether a better path was found during this step
+   */
+  public boolean step(long budgetNanos) {
+    if (finished) {
+      return false;
+    }
+    long deadline = System.nanoTime() + budgetNanos;
+    boolean improved = false;
+    int width = grid.getWidth();
+    int sinceClock = 0;
+
+    while (!finished) {
+      if (reopening) {
+        if (++sinceClock == CLOCK_INTERVAL) {
+          sinceClock = 0;
+          if (System.nanoTime() - deadline >= 0) {
+            break;
+          }
+        }
+        reopenStep();
+        continue;
+      }
+
+      // the current weight is done once nothing in the open list can lead to a shorter path
+      if (open.isEmpty() || goalCost() <= open.peekKey()) {
+        if (seen[goalNode] != search) {
+          finished = true; // the goal can't be reached
+          break;
+        }
+        if (weight < bestPathWeight) {
+          bestPath = buildPath();
+          bestPathWeight = weight;
+          improved = true;
+        }
+        if (weight <= 1) {
+          finished = true;
+          break;
+        }
+        weight = Math.max(1, weight - weightStep);
+        startReopen();
+        continue;
+      }
+
+      if (++sinceClock == CLOCK_INTERVAL) {
+        sinceClock = 0;
+        if (System.nanoTime() - deadline >= 0) {
+          break;
+        }
+      }
+
+      int node = open.pop();
+      closed[node] = iteration;
+      nodesExpanded++;
+      int column = node % width;
+      int row = node / width;
+      for (int dy = -1; dy <= 1; dy++) {
+        for (int dx = -1; dx <= 1; dx++) {
+          if (dx == 0 && dy == 0) {
+            continue;
+          }
+          int neighborColumn = column + dx;
+          int neighborRow = row + dy;
+          if (grid.isOccupied(neighborColumn, neighborRow)) {
+            continue;
+          }
+          // don't cut the corners of obstacles when moving diagonally
+          if (dx != 0
+              && dy != 0
+              && (grid.isOccupied(column + dx, row) || grid.isOccupied(column, row + dy))) {
+            continue;
+          }
+          int neighbor = neighborRow * width + neighborColumn;
+          double cost = costs[node] + (dx != 0 && dy != 0 ? SQRT_2 : 1);
+          if (seen[neighbor] == search && cost >= costs[neighbor]) {
+            continue;
+          }
+          seen[neighbor] = search;
+          costs[neighbor] = cost;
+          parents[neighbor] = node;
+          if (closed[neighbor] != iteration) {
+            open.push(neighbor, cost + weight * heuristic(neighborColumn, neighborRow));
+          } else if (inconsistent[neighbor] != iteration) {
+            // closed nodes aren't expanded again until the next weight
+            inconsistent[neighbor] = iteration;
+            inconsistentList[inconsistentCount++] = neighbor;
+          }
+        }
+      }
+    }
+    return improved;
+  }
+
+  /**
+   * Plans a path to completion.
+   *
+   * <p>This is the same as {@link #start} followed by {@link #step(long)} with an unlimited budget,
+   * so the result is the shortest 8-connected path, shortened to straight segments.
+   */
+  @Override
+  public Path plan(OccupancyGrid grid, Pose2d start, Pose2d goal) {
+    start(grid, start, goal);
+    step(Long.MAX_VALUE);
+    return bestPath;
+  }
+
+  /** Returns the best path found so far, or null if none has been found yet. */
+  public Path getBestPath() {
+    return bestPath;
+  }
+
+  /**
+   * Returns the bound on the best path: it is at most this many times longer than the shortest
+   * path, or infinity if no path has been found yet.
+   */
+  public double getBestPathWeight() {
+    return bestPathWeight;
+  }
+
+  /** Returns the heuristic weight of the search that is currently running. */
+  public double getWeight() {
+    return weight;
+  }
+
+  /** Whether the search is done, either with the shortest path or because there is no path. */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /** Returns the number of nodes expanded since the last call to {@link #start}. */
+  @Override
+  public int getNodesExpanded() {
+    return nodesExpanded;
+  }
+
+  /** Sizes the search arrays for the grid and starts a new search. */
+  private void prepare(int nodeCount) {
+    if (costs.length < nodeCount) {
+      costs = new double[nodeCount];
+      parents = new int[nodeCount];
+      seen = new int[nodeCount];
+      closed = new int[nodeCount];
+      inconsistent = new int[nodeCount];
+      inconsistentList = new int[nodeCount];
+      buffer = new int[nodeCount];
+      search = 0;
+      iteration = 0;
+    }
+    search++;
+    iteration++;
+    inconsistentCount = 0;
+    open.reset(nodeCount);
+  }
+
+  private double goalCost() {
+    return seen[goalNode] == search ? costs[goalNode] : Double.POSITIVE_INFINITY;
+  }
+
+  /** Octile distance to the goal, which never overestimates on an 8-connected grid. */
+  private double heuristic(int column, int row) {
+    int dx = Math.abs(goalColumn - column);
+    int dy = Math.abs(goalRow - row);
+    return dx + dy + (SQRT_2 - 2) * Math.min(dx, dy);
+  }
+
+  /**
+   * Starts the search for a lower weight: the inconsistent nodes join the open list, every open
+   * node is keyed with the new weight, and nothing is closed any more. The nodes are moved by
+   * {@link #reopenStep()}, so the work can be spread over steps.
+   */
+  private void startReopen() {
+    reopening = true;
+    reopenDraining = true;
+    reopenCount = 0;
+    reopenIndex = 0;
+    iteration++;
+  }
+
+  /**
+   * Moves one node: first the open and inconsistent nodes are collected, then they are pushed back
+   * with their new keys.
+   */
+  private void reopenStep() {
+    if (reopenDraining) {
+      if (!open.isEmpty()) {
+        buffer[reopenCount++] = open.pop();
+      } else if (inconsistentCount > 0) {
+        buffer[reopenCount++] = inconsistentList[--inconsistentCount];
+      } else {
+        reopenDraining = false;
+      }
+      return;
+    }
+    if (reopenIndex < reopenCount) {
+      int width = grid.getWidth();
+      int node = buffer[reopenIndex++];
+      open.push(node, costs[node] + weight * heuristic(node % width, node / width));
+    } else {
+      reopening = false;
+    }
+  }
+
+  /** Follows the parents back from the goal, keeping only the cells needed for line of sight. */
+  private Path buildPath() {
+    int width = grid.getWidth();
+    int node = goalNode;
+    int count = 0;
+    buffer[count++] = node;
+    while (parents[node] != node) {
+      node = parents[node];
+      buffer[count++] = node;
+    }
+
+    ArrayList<Pose2d> points = new ArrayList<>();
+    points.add(start);
+    int anchor = buffer[count - 1];
+    int previous = anchor;
+    for (int i = count - 2; i >= 0; i--) {
+      node = buffer[i];
+      if (!grid.hasLineOfSight(anchor % width, anchor / width, node % width, node / width)) {
+        points.add(
+            new Pose2d(
+                grid.getCellCenterX(previous % width),
+                grid.getCellCenterY(previous / width),
+                goal.heading));
+        anchor = previous;
+      }
+      previous = node;
+    }
+    points.add(goal);
+    return new Path(points);
+  }
+}
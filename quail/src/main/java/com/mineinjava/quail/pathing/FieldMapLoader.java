@@ -0,0 +1,354 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Loads an {@link OccupancyGrid} from an image of the field, such as {@code
+ * pathPlanner/centerstage.png}.
+ *
+ * <p>The image is stretched over a {@code fieldWidth} by {@code fieldHeight} area, with the top of
+ * the image at the largest y value. By default the field is centered on (0, 0). A pixel is an
+ * obstacle if it is darker than the threshold (or lighter, see {@link #setObstaclesDark(boolean)})
+ * and not transparent, and by default a cell is occupied if any of its pixels is an obstacle.
+ *
+ * <p>The image is decoded in horizontal strips of about a million pixels, and each strip is
+ * processed one row at a time, so a large image never has to fit in memory at once. Some formats
+ * such as PNG decode from the start of the image for every strip, which is why the strips aren't
+ * smaller.
+ *
+ * <p>Loading a large image takes a while, so {@link #load(File, File)} can cache the grid in a
+ * binary file that loads almost instantly.
+ */
+public class FieldMapLoader {
+  private static final int CACHE_MAGIC = 0x51464D4C; // "QFML"
+  private static final int STRIP_PIXELS = 1 << 20;
+
+  private final double fieldWidth;
+  private final double fieldHeight;
+  private final double cellSize;
+  private double originX;
+  private double originY;
+  private int threshold = 128;
+  private boolean obstaclesDark = true;
+  private double occupiedFraction = 0;
+
+  /**
+   * Creates a loader.
+   *
+   * @param fieldWidth the width (x) of the area covered by the image (your units)
+   * @param fieldHeight the height (y) of the area covered by the image (your units)
+   * @param cellSize the side length of a grid cell (your units)
+   */
+  public FieldMapLoader(double fieldWidth, double fieldHeight, double cellSize) {
+    if (fieldWidth <= 0 || fieldHeight <= 0) {
+      throw new IllegalArgumentException("Field dimensions must be positive.");
+    }
+    if (cellSize <= 0) {
+      throw new IllegalArgumentException("Cell size must be positive.");
+    }
+    this.fieldWidth = fieldWidth;
+    this.fieldHeight = fieldHeight;
+    this.cellSize = cellSize;
+    this.originX = -fieldWidth / 2;
+    this.originY = -fieldHeight / 2;
+  }
+
+  /**
+   * Sets the field position of the lower-left corner of the image.
+   *
+   * @param originX x coordinate of the lower-left corner (your units)
+   * @param originY y coordinate of the lower-left corner (your units)
+   */
+  public void setOrigin(double originX, double originY) {
+    this.originX = originX;
+    this.originY = originY;
+  }
+
+  /**
+   * Sets the brightness threshold between free space and obstacles.
+   *
+   * @param threshold brightness from 0 (black) to 255 (white)
+   */
+  public void setThreshold(int threshold) {
+    this.threshold = threshold;
+  }
+
+  /**
+   * Sets whether obstacles are the dark or the light parts of the image.
+   *
+   * @param obstaclesDark true if pixels darker than the threshold are obstacles (the default)
+   */
+  public void setObstaclesDark(boolean obstaclesDark) {
+    this.obstaclesDark = obstaclesDark;
+  }
+
+  /**
+   * Sets how much of a cell has to be covered by obstacle pixels for it to be occupied.
+   *
+   * <p>The default of 0 marks a cell as occupied if any of its pixels is an obstacle, which is the
+   * safe choice for clean obstacle maps. Photos or renders of the field usually need a higher value
+   * such as 0.5.
+   *
+   * @param occupiedFraction fraction of the cell's pixels, from 0 to 1
+   */
+  public void setOccupiedFraction(double occupiedFraction) {
+    this.occupiedFraction = occupiedFraction;
+  }
+
+  /**
+   * Loads a grid from an image file.
+   *
+   * @param image the image file
+   * @return the occupancy grid
+   * @throws IOException if the image cannot be read
+   */
+  public OccupancyGrid load(File image) throws IOException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(image))) {
+      return load(in);
+    }
+  }
+
+  /**
+   * Loads a grid from an image file, using a cached grid if possible.
+   *
+   * <p>The cache is used if it is newer than the image and was made with the same dimensions, cell
+   * size, threshold, obstacle brightness and occupied fraction as this loader. Otherwise the image
+   * is loaded and the cache is (re)written.
+   *
+   * @param image the image file
+   * @param cache the binary grid file
+   * @return the occupancy grid
+   * @throws IOException if the image cannot be read or the cache cannot be written
+   */
+  public OccupancyGrid load(File image, File cache) throws IOException {
+    if (cache.isFile() && cache.lastModified() >= image.lastModified()) {
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(cache)))) {
+        if (in.readInt() == CACHE_MAGIC
+            && in.readInt() == threshold
+            && in.readBoolean() == obstaclesDark
+            && in.readDouble() == occupiedFraction) {
+          OccupancyGrid grid = OccupancyGrid.read(in);
+          if (matches(grid)) {
+            return grid;
+          }
+        }
+      } catch (IOException e) {
+        // fall through and rebuild the cache
+      }
+    }
+
+    OccupancyGrid grid = load(image);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cache)))) {
+      out.writeInt(CACHE_MAGIC);
+      out.writeInt(threshold);
+      out.writeBoolean(obstaclesDark);
+      out.writeDouble(occupiedFraction);
+      grid.write(out);
+    }
+    return grid;
+  }
+
+  /**
+   * Loads a grid from a stream containing an image in any format supported by {@link ImageIO}.
+   *
+   * @param stream the image data, it is not closed
+   * @return the occupancy grid
+   * @throws IOException if the image cannot be read
+   */
+  public OccupancyGrid load(InputStream stream) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(stream)) {
+      Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+      if (!readers.hasNext()) {
+        throw new IOException("No image reader for this format");
+      }
+      ImageReader reader = readers.next();
+      try {
+        // not seek-forward-only, since each strip is read as a separate region of image 0
+        reader.setInput(in, false, true);
+        int imageWidth = reader.getWidth(0);
+        int imageHeight = reader.getHeight(0);
+        int stripRows = Math.max(1, STRIP_PIXELS / imageWidth);
+        ImageReadParam param = reader.getDefaultReadParam();
+        Thresholder thresholder = null;
+        for (int y = 0; y < imageHeight; y += stripRows) {
+          param.setSourceRegion(
+              new Rectangle(0, y, imageWidth, Math.min(stripRows, imageHeight - y)));
+          BufferedImage strip = reader.read(0, param);
+          if (thresholder == null) {
+            thresholder = new Thresholder(strip.getRaster(), strip.getColorModel(), imageHeight);
+          }
+          thresholder.addRows(strip.getRaster());
+        }
+        return thresholder.grid;
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /** Thresholds an image into a grid, one row of pixels at a time, as its strips are decoded. */
+  private class Thresholder {
+    final OccupancyGrid grid;
+    final int imageWidth;
+    final int imageHeight;
+    final int bands;
+    final int columns;
+    final int rows;
+    final int shift;
+    final boolean hasAlpha;
+    final boolean isColor;
+    final boolean[] paletteObstacles;
+    final int[] pixelColumns;
+    final int[] columnPixels;
+
+    /** obstacle pixels in each cell of the grid row that is currently being read */
+    final int[] obstaclePixels;
+
+    final int[] samples;
+    int rowPixels = 0;
+    int y = 0;
+
+    Thresholder(Raster firstStrip, ColorModel colorModel, int imageHeight) {
+      this.imageWidth = firstStrip.getWidth();
+      this.imageHeight = imageHeight;
+      this.bands = firstStrip.getNumBands();
+      this.columns = Math.max(1, (int) Math.ceil(fieldWidth / cellSize - 1e-9));
+      this.rows = Math.max(1, (int) Math.ceil(fieldHeight / cellSize - 1e-9));
+      this.grid = new OccupancyGrid(columns, rows, cellSize, originX, originY);
+
+      // samples are scaled to 8 bits so the threshold doesn't depend on the image's bit depth
+      this.shift = Math.max(0, firstStrip.getSampleModel().getSampleSize(0) - 8);
+      this.hasAlpha = bands == 2 || bands == 4;
+      this.isColor = bands >= 3;
+
+      // palette images store an index per pixel, so look up whether each palette entry is an
+      // obstacle
+      if (colorModel instanceof IndexColorModel) {
+        IndexColorModel palette = (IndexColorModel) colorModel;
+        paletteObstacles = new boolean[palette.getMapSize()];
+        for (int i = 0; i < paletteObstacles.length; i++) {
+          int brightness =
+              (299 * palette.getRed(i) + 587 * palette.getGreen(i) + 114 * palette.getBlue(i))
+                  / 1000;
+          paletteObstacles[i] =
+              palette.getAlpha(i) >= 128 && (brightness < threshold) == obstaclesDark;
+        }
+      } else {
+        paletteObstacles = null;
+      }
+
+      // which column each pixel falls into, so the inner loop doesn't divide
+      pixelColumns = new int[imageWidth];
+      columnPixels = new int[columns];
+      for (int x = 0; x < imageWidth; x++) {
+        pixelColumns[x] =
+            Math.min(columns - 1, (int) ((x + 0.5) * fieldWidth / imageWidth / cellSize));
+        columnPixels[pixelColumns[x]]++;
+      }
+      obstaclePixels = new int[columns];
+      samples = new int[imageWidth * bands];
+    }
+
+    /** Thresholds the rows of the next strip of the image. */
+    void addRows(Raster strip) {
+      for (int stripRow = 0; stripRow < strip.getHeight(); stripRow++, y++) {
+        int row = gridRow(y, imageHeight, rows);
+        strip.getPixels(strip.getMinX(), strip.getMinY() + stripRow, imageWidth, 1, samples);
+        rowPixels++;
+
+        for (int x = 0; x < imageWidth; x++) {
+          int offset = x * bands;
+          boolean obstacle;
+          if (paletteObstacles != null) {
+            int index = samples[offset];
+            obstacle = index < paletteObstacles.length && paletteObstacles[index];
+          } else if (hasAlpha && (samples[offset + bands - 1] >> shift) < 128) {
+            obstacle = false; // transparent pixels are free
+          } else {
+            int brightness;
+            if (isColor) {
+              brightness =
+                  (299 * samples[offset] + 587 * samples[offset + 1] + 114 * samples[offset + 2])
+                      / 1000;
+            } else {
+              brightness = samples[offset];
+            }
+            obstacle = ((brightness >> shift) < threshold) == obstaclesDark;
+          }
+          if (obstacle) {
+            obstaclePixels[pixelColumns[x]]++;
+          }
+        }
+
+        // once the last image row of a grid row has been read, decide which of its cells are
+        // occupied
+        if (y == imageHeight - 1 || gridRow(y + 1, imageHeight, rows) != row) {
+          for (int column = 0; column < columns; column++) {
+            int pixels = columnPixels[column] * rowPixels;
+            if (obstaclePixels[column] > 0 && obstaclePixels[column] >= occupiedFraction * pixels) {
+              grid.setOccupied(column, row, true);
+            }
+            obstaclePixels[column] = 0;
+          }
+          rowPixels = 0;
+        }
+      }
+    }
+  }
+
+  /** Returns the grid row that an image row falls into (image rows go down, grid rows go up). */
+  private int gridRow(int imageRow, int imageHeight, int rows) {
+    return rows
+        - 1
+        - Math.min(rows - 1, (int) ((imageRow + 0.5) * fieldHeight / imageHeight / cellSize));
+  }
+
+  /** Returns true if the grid has the dimensions this loader would produce. */
+  private boolean matches(OccupancyGrid grid) {
+    return grid.getCellSize() == cellSize
+        && grid.getOriginX() == originX
+        && grid.getOriginY() == originY
+        && grid.getWidth() == Math.max(1, (int) Math.ceil(fieldWidth / cellSize - 1e-9))
+        && grid.getHeight() == Math.max(1, (int) Math.ceil(fieldHeight / cellSize - 1e-9));
+  }
+}
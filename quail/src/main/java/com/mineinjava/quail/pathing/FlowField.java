@@ -0,0 +1,312 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import com.mineinjava.quail.util.geometry.Pose2d;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Cost-to-go field rooted at a single goal.
+ *
+ * <p>The field is built once with Dijkstra's algorithm outward from the goal over an 8-connected
+ * {@link OccupancyGrid}, storing the distance to the goal for every cell. After that, a path from
+ * any start is found by walking downhill through the field, which costs time proportional to the
+ * length of the path rather than the size of the map. This makes it a good fit for goals that are
+ * used over and over, like a loading station: one field can be shared by every robot and every
+ * start, and can be saved to disk so it doesn't have to be rebuilt each match.
+ *
+ * <p>A built field is immutable and may be queried from multiple threads.
+ */
+public class FlowField {
+  private static final int MAGIC = 0x51464C44; // "QFLD"
+  private static final int VERSION = 1;
+  private static final float SQRT_2 = (float) Math.sqrt(2);
+
+  private final OccupancyGrid grid;
+  private final Pose2d goal;
+
+  /** distance to the goal of every cell, or infinity if the goal can't be reached. */
+  private final float[] costs;
+
+  private int nodesExpanded = 0;
+
+  private FlowField(OccupancyGrid grid, Pose2d goal, float[] costs) {
+    this.grid = grid;
+    this.goal = goal;
+    this.costs = costs;
+  }
+
+  /**
+   * Builds the field for a goal.
+   *
+   * <p>The grid is not copied, so it must not be changed while the field is in use.
+   *
+   * @param grid the grid to plan through
+   * @param goal the goal every path leads to, its heading is used for the whole path
+   * @return the field, in which every cell is unreachable if the goal is blocked
+   */
+  public static FlowField build(OccupancyGrid grid, Pose2d goal) {
+    int width = grid.getWidth();
+    int height = grid.getHeight();
+    float[] costs = new float[width * height];
+    Arrays.fill(costs, Float.POSITIVE_INFINITY);
+    FlowField field = new FlowField(grid, goal, costs);
+
+    int goalColumn = grid.getColumn(goal.x);
+    int goalRow = grid.getRow(goal.y);
+    if (grid.isOccupied(goalColumn, goalRow)) {
+      return field;
+    }
+
+    IndexedMinHeap open = new IndexedMinHeap();
+    open.reset(width * height);
+    int goalNode = goalRow * width + goalColumn;
+    costs[goalNode] = 0;
+    open.push(goalNode, 0);
+    while (!open.isEmpty()) {
+      int node = open.pop();
+      field.nodesExpanded++;
+      int column = node % width;
+      int row = node / width;
+      float cost = costs[node];
+      for (int dy = -1; dy <= 1; dy++) {
+        for (int dx = -1; dx <= 1; dx++) {
+          if ((dx == 0 && dy == 0) || !canStep(grid, column, row, dx, dy)) {
+            continue;
+          }
+          int neighbor = (row + dy) * width + column + dx;
+          float neighborCost = cost + (dx != 0 && dy != 0 ? SQRT_2 : 1);
+          if (neighborCost < costs[neighbor]) {
+            costs[neighbor] = neighborCost;
+            open.push(neighbor, neighborCost);
+          }
+        }
+      }
+    }
+
+    float cellSize = (float) grid.getCellSize();
+    for (int i = 0; i < costs.length; i++) {
+      costs[i] *= cellSize;
+    }
+    return field;
+  }
+
+  /**
+   * Builds the field on the common fork-join pool.
+   *
+   * @see #build(OccupancyGrid, Pose2d)
+   */
+  public static CompletableFuture<FlowField> buildAsync(OccupancyGrid grid, Pose2d goal) {
+    return CompletableFuture.supplyAsync(() -> build(grid, goal));
+  }
+
+  /**
+   * Builds the field on the given executor, so it can be done off the robot's main loop.
+   *
+   * @see #build(OccupancyGrid, Pose2d)
+   */
+  public static CompletableFuture<FlowField> buildAsync(
+      OccupancyGrid grid, Pose2d goal, Executor executor) {
+    return CompletableFuture.supplyAsync(() -> build(grid, goal), executor);
+  }
+
+  public OccupancyGrid getGrid() {
+    return grid;
+  }
+
+  public Pose2d getGoal() {
+    return goal;
+  }
+
+  /** Returns the number of cells that were expanded while building the field. */
+  public int getNodesExpanded() {
+    return nodesExpanded;
+  }
+
+  /**
+   * Returns the distance from a cell to the goal, travelling through cell centers.
+   *
+   * @return the distance, or infinity if the goal can't be reached from the cell
+   */
+  public double getCost(int column, int row) {
+    if (!grid.inBounds(column, row)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return costs[row * grid.getWidth() + column];
+  }
+
+  /**
+   * Returns the distance from the cell containing a point to the goal.
+   *
+   * @return the distance, or infinity if the goal can't be reached from the point
+   */
+  public double getCost(double x, double y) {
+    return getCost(grid.getColumn(x), grid.getRow(y));
+  }
+
+  /**
+   * Returns the direction of the next step towards the goal from a point.
+   *
+   * @return a unit vector towards the center of the next cell, or a zero vector if the point is in
+   *     the goal cell or can't reach the goal
+   */
+  public Vec2d getDirection(double x, double y) {
+    int column = grid.getColumn(x);
+    int row = grid.getRow(y);
+    int next = downhill(column, row);
+    if (next < 0) {
+      return new Vec2d(0, 0);
+    }
+    int width = grid.getWidth();
+    return new Vec2d(
+            grid.getCellCenterX(next % width) - grid.getCellCenterX(column),
+            grid.getCellCenterY(next / width) - grid.getCellCenterY(row))
+        .normalize();
+  }
+
+  /**
+   * Finds a path from a start pose to the goal by descending the field.
+   *
+   * <p>Downhill cells that the last waypoint can see are dropped, so the path is made of straight
+   * segments like the one from {@link ThetaStarPlanner} instead of grid moves. The returned path
+   * starts at {@code start} and ends at the goal; points in between use the goal's heading.
+   *
+   * @param start the start pose
+   * @return the path, or null if the goal can't be reached from the start
+   */
+  public Path getPath(Pose2d start) {
+    int width = grid.getWidth();
+    int column = grid.getColumn(start.x);
+    int row = grid.getRow(start.y);
+    if (grid.isOccupied(column, row) || Double.isInfinite(getCost(column, row))) {
+      return null;
+    }
+
+    ArrayList<Pose2d> points = new ArrayList<>();
+    points.add(start);
+    int anchor = row * width + column;
+    int previous = anchor;
+    for (int node = downhill(column, row); node >= 0; node = downhill(node % width, node / width)) {
+      if (!grid.hasLineOfSight(anchor % width, anchor / width, node % width, node / width)) {
+        points.add(
+            new Pose2d(
+                grid.getCellCenterX(previous % width),
+                grid.getCellCenterY(previous / width),
+                goal.heading));
+        anchor = previous;
+      }
+      previous = node;
+    }
+    points.add(goal);
+    return new Path(points);
+  }
+
+  /**
+   * Returns the neighbor with the lowest cost, or -1 if no neighbor is lower than the cell.
+   *
+   * <p>Costs only go down, so repeatedly stepping downhill always ends at the goal.
+   */
+  private int downhill(int column, int row) {
+    if (!grid.inBounds(column, row)) {
+      return -1;
+    }
+    int width = grid.getWidth();
+    int best = -1;
+    float bestCost = costs[row * width + column];
+    for (int dy = -1; dy <= 1; dy++) {
+      for (int dx = -1; dx <= 1; dx++) {
+        if ((dx == 0 && dy == 0) || !canStep(grid, column, row, dx, dy)) {
+          continue;
+        }
+        int neighbor = (row + dy) * width + column + dx;
+        if (costs[neighbor] < bestCost) {
+          bestCost = costs[neighbor];
+          best = neighbor;
+        }
+      }
+    }
+    return best;
+  }
+
+  /** Whether a move to a neighboring cell is free and doesn't cut the corner of an obstacle. */
+  private static boolean canStep(OccupancyGrid grid, int column, int row, int dx, int dy) {
+    if (grid.isOccupied(column + dx, row + dy)) {
+      return false;
+    }
+    return dx == 0
+        || dy == 0
+        || !(grid.isOccupied(column + dx, row) || grid.isOccupied(column, row + dy));
+  }
+
+  /**
+   * Writes the field, including its grid, to a stream.
+   *
+   * @param stream the stream to write to, it is not closed
+   * @throws IOException if the stream cannot be written
+   */
+  public void write(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeDouble(goal.x);
+    out.writeDouble(goal.y);
+    out.writeDouble(goal.heading);
+    grid.write(out);
+    for (float cost : costs) {
+      out.writeFloat(cost);
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads a field written by {@link #write(OutputStream)}.
+   *
+   * @param stream the stream to read from, it is not closed
+   * @return the field
+   * @throws IOException if the stream cannot be read or does not contain a field
+   */
+  public static FlowField read(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Stream does not contain a flow field");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported flow field version " + version);
+    }
+    Pose2d goal = new Pose2d(in.readDouble(), in.readDouble(), in.readDouble());
+    OccupancyGrid grid = OccupancyGrid.read(in);
+    float[] costs = new float[grid.getWidth() * grid.getHeight()];
+    for (int i = 0; i < costs.length; i++) {
+      costs[i] = in.readFloat();
+    }
+    return new FlowField(grid, goal, costs);
+  }
+}
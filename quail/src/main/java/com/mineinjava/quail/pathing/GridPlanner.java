@@ -0,0 +1,43 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import com.mineinjava.quail.util.geometry.Pose2d;
+
+/** Interface for planners that find paths through an {@link OccupancyGrid}. */
+public interface GridPlanner {
+
+  /**
+   * Finds a path between two poses.
+   *
+   * <p>The returned path starts at {@code start} and ends at {@code goal}; points in between use
+   * the goal's heading.
+   *
+   * @param grid the grid to plan through
+   * @param start the start pose
+   * @param goal the goal pose
+   * @return the path, or null if the start or goal is blocked or no path exists
+   */
+  public Path plan(OccupancyGrid grid, Pose2d start, Pose2d goal);
+
+  /** Returns the number of nodes expanded by the last call to {@link #plan}. */
+  public int getNodesExpanded();
+}
@@ -0,0 +1,171 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import com.mineinjava.quail.RobotMovement;
+import com.mineinjava.quail.localization.Localizer;
+import com.mineinjava.quail.localization.PoseSample;
+import com.mineinjava.quail.util.MathUtil;
+import com.mineinjava.quail.util.MiniPID;
+import com.mineinjava.quail.util.geometry.Vec2d;
+
+/**
+ * Follows a {@link Trajectory} with a holonomic (swerve) drive.
+ *
+ * <p>Unlike {@link PathFollower}, which steers towards the next waypoint with feedback only, this
+ * controller knows where the robot should be at every moment and how fast it should be moving
+ * there. The reference velocity is commanded directly (feedforward), which does most of the work,
+ * and a PID controller per axis only corrects the small error between the reference pose and the
+ * measured pose. So the robot doesn't lag behind the reference at speed.
+ *
+ * <p>The PID controllers are run with the time-aware {@link MiniPID#getOutput(double, double,
+ * double)}, so their gains are per second: a P gain of 2 on x commands 2 units per second of extra
+ * velocity for each unit of x error. The D terms act on the error.
+ *
+ * <p>A typical loop looks like:
+ *
+ * <pre>{@code
+ * controller.start(trajectory, now);
+ * // every loop
+ * RobotMovement movement = controller.calculate(now);
+ * swerveDrive.move(movement, gyroOffset);
+ * }</pre>
+ */
+public class HolonomicTrajectoryController {
+  private final Localizer localizer;
+  private final MiniPID xController;
+  private final MiniPID yController;
+  private final MiniPID headingController;
+
+  private final PoseSample poseSample = new PoseSample();
+  private final double[] reference = new double[Trajectory.STATE_SIZE];
+
+  private Trajectory trajectory;
+  private double startTime;
+  private double lastTime = Double.NaN;
+
+  private double translationTolerance = 0.05;
+  private double headingTolerance = 0.05;
+  private double errorX = 0;
+  private double errorY = 0;
+  private double errorHeading = 0;
+
+  /**
+   * Creates a trajectory controller.
+   *
+   * @param localizer gives the robot's measured pose
+   * @param xController corrects the field-centric x error, outputs a velocity
+   * @param yController corrects the field-centric y error, outputs a velocity
+   * @param headingController corrects the heading error, outputs an angular velocity
+   */
+  public HolonomicTrajectoryController(
+      Localizer localizer, MiniPID xController, MiniPID yController, MiniPID headingController) {
+    this.localizer = localizer;
+    this.xController = xController;
+    this.yController = yController;
+    this.headingController = headingController;
+  }
+
+  /**
+   * Starts following a trajectory.
+   *
+   * @param trajectory the trajectory to follow
+   * @param timestamp the current time in seconds, which becomes the trajectory's time 0
+   */
+  public void start(Trajectory trajectory, double timestamp) {
+    this.trajectory = trajectory;
+    this.startTime = timestamp;
+    this.lastTime = Double.NaN;
+    xController.reset();
+    yController.reset();
+    headingController.reset();
+  }
+
+  /**
+   * Calculates the movement that follows the trajectory.
+   *
+   * <p>This returns a field-centric movement, like {@link PathFollower}, ready to pass to {@code
+   * SwerveDrive.move}. After the end of the trajectory, the controller keeps correcting towards the
+   * final pose.
+   *
+   * @param timestamp the current time in seconds, on the same clock as {@link #start}
+   * @return the velocity and angular velocity to command
+   * @throws IllegalStateException if no trajectory has been started
+   */
+  public RobotMovement calculate(double timestamp) {
+    if (trajectory == null) {
+      throw new IllegalStateException("No trajectory has been started");
+    }
+    double dt = Double.isNaN(lastTime) ? 0 : timestamp - lastTime;
+    lastTime = timestamp;
+
+    trajectory.sample(timestamp - startTime, reference);
+    localizer.getPoseSample(poseSample);
+    errorX = reference[0] - poseSample.x;
+    errorY = reference[1] - poseSample.y;
+    errorHeading = MathUtil.deltaAngle(poseSample.heading, reference[2]);
+
+    // the controllers see the negated error as the measurement and 0 as the setpoint, so their D
+    // terms act on the error rather than braking against the reference motion
+    double velocityX = reference[3] + xController.getOutput(-errorX, 0, dt);
+    double velocityY = reference[4] + yController.getOutput(-errorY, 0, dt);
+    double angularVelocity = reference[5] + headingController.getOutput(-errorHeading, 0, dt);
+    return new RobotMovement(angularVelocity, new Vec2d(velocityX, velocityY));
+  }
+
+  /**
+   * Sets how close to the final pose the robot must be for the trajectory to be finished.
+   *
+   * @param translationTolerance the largest distance from the final position
+   * @param headingTolerance the largest heading error in radians
+   */
+  public void setTolerance(double translationTolerance, double headingTolerance) {
+    this.translationTolerance = translationTolerance;
+    this.headingTolerance = headingTolerance;
+  }
+
+  /**
+   * Returns true when the trajectory's time is over and, at the last {@link #calculate}, the robot
+   * was within the tolerance of the final pose.
+   *
+   * @param timestamp the current time in seconds
+   */
+  public boolean isFinished(double timestamp) {
+    return trajectory != null
+        && timestamp - startTime >= trajectory.getDuration()
+        && Math.hypot(errorX, errorY) <= translationTolerance
+        && Math.abs(errorHeading) <= headingTolerance;
+  }
+
+  /** Returns the distance between the reference and measured positions at the last calculation. */
+  public double getTranslationError() {
+    return Math.hypot(errorX, errorY);
+  }
+
+  /** Returns the heading error in radians at the last calculation. */
+  public double getHeadingError() {
+    return errorHeading;
+  }
+
+  public Trajectory getTrajectory() {
+    return trajectory;
+  }
+}
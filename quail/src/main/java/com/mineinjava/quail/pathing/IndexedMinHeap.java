@@ -0,0 +1,150 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of integer node ids keyed by a double, with decrease-key.
+ *
+ * <p>Used as the open list of the grid planners. Everything is stored in primitive arrays that are
+ * reused between searches, so a search doesn't allocate once the heap has grown to its working
+ * size.
+ */
+class IndexedMinHeap {
+  private int[] nodes = new int[1024];
+  private double[] keys = new double[1024];
+
+  /** index of each node in the heap, or -1 if it isn't in the heap. */
+  private int[] positions = new int[0];
+
+  private int size = 0;
+
+  /** Makes room for node ids in {@code [0, nodeCount)} and empties the heap. */
+  void reset(int nodeCount) {
+    if (positions.length < nodeCount) {
+      positions = new int[nodeCount];
+      Arrays.fill(positions, -1);
+    } else {
+      for (int i = 0; i < size; i++) {
+        positions[nodes[i]] = -1;
+      }
+    }
+    size = 0;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean contains(int node) {
+    return positions[node] >= 0;
+  }
+
+  /** Returns the smallest key in the heap. The heap must not be empty. */
+  double peekKey() {
+    return keys[0];
+  }
+
+  /** Adds a node, or changes its key if it is already in the heap. */
+  void push(int node, double key) {
+    int index = positions[node];
+    if (index < 0) {
+      if (size == nodes.length) {
+        nodes = Arrays.copyOf(nodes, size * 2);
+        keys = Arrays.copyOf(keys, size * 2);
+      }
+      index = size++;
+      nodes[index] = node;
+      keys[index] = key;
+      positions[node] = index;
+      siftUp(index);
+    } else if (key < keys[index]) {
+      keys[index] = key;
+      siftUp(index);
+    } else {
+      keys[index] = key;
+      siftDown(index);
+    }
+  }
+
+  /** Removes and returns the node with the smallest key. The heap must not be empty. */
+  int pop() {
+    int top = nodes[0];
+    positions[top] = -1;
+    size--;
+    if (size > 0) {
+      nodes[0] = nodes[size];
+      keys[0] = keys[size];
+      positions[nodes[0]] = 0;
+      siftDown(0);
+    }
+    return top;
+  }
+
+  private void siftUp(int index) {
+    int node = nodes[index];
+    double key = keys[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (keys[parent] <= key) {
+        break;
+      }
+      move(parent, index);
+      index = parent;
+    }
+    place(node, key, index);
+  }
+
+  private void siftDown(int index) {
+    int node = nodes[index];
+    double key = keys[index];
+    int half = size >>> 1;
+    while (index < half) {
+      int child = 2 * index + 1;
+      if (child + 1 < size && keys[child + 1] < keys[child]) {
+        child++;
+      }
+      if (key <= keys[child]) {
+        break;
+      }
+      move(child, index);
+      index = child;
+    }
+    place(node, key, index);
+  }
+
+  private void move(int from, int to) {
+    nodes[to] = nodes[from];
+    keys[to] = keys[from];
+    positions[nodes[to]] = to;
+  }
+
+  private void place(int node, double key, int index) {
+    nodes[index] = node;
+    keys[index] = key;
+    positions[node] = index;
+  }
+}
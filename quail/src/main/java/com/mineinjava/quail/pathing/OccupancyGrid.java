@@ -0,0 +1,270 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A bit-packed occupancy grid of the field.
+ *
+ * <p>Each cell is a square of {@code cellSize} (your units) and is either free or occupied. Cells
+ * are stored one bit each, row-major, so a 144x144 field at 0.25 units per cell only takes about
+ * 40KB. Column 0, row 0 is the cell whose lower-left corner is at the grid origin; columns grow
+ * with x and rows grow with y.
+ *
+ * <p>Cells outside of the grid are treated as occupied.
+ */
+public class OccupancyGrid {
+  private static final int MAGIC = 0x514F4752; // "QOGR"
+  private static final int VERSION = 1;
+
+  private final int width;
+  private final int height;
+  private final double cellSize;
+  private final double originX;
+  private final double originY;
+  private final long[] bits;
+
+  /**
+   * Creates an empty (completely free) grid.
+   *
+   * @param width number of columns
+   * @param height number of rows
+   * @param cellSize the side length of a cell (your units)
+   * @param originX x coordinate of the lower-left corner of the grid (your units)
+   * @param originY y coordinate of the lower-left corner of the grid (your units)
+   */
+  public OccupancyGrid(int width, int height, double cellSize, double originX, double originY) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Grid must have at least one row and column.");
+    }
+    if (cellSize <= 0) {
+      throw new IllegalArgumentException("Cell size must be positive.");
+    }
+    this.width = width;
+    this.height = height;
+    this.cellSize = cellSize;
+    this.originX = originX;
+    this.originY = originY;
+    this.bits = new long[(int) (((long) width * height + 63) >>> 6)];
+  }
+
+  /**
+   * Creates an empty (completely free) grid with its lower-left corner at (0, 0).
+   *
+   * @param width number of columns
+   * @param height number of rows
+   * @param cellSize the side length of a cell (your units)
+   */
+  public OccupancyGrid(int width, int height, double cellSize) {
+    this(width, height, cellSize, 0, 0);
+  }
+
+  /** Returns the number of columns. */
+  public int getWidth() {
+    return width;
+  }
+
+  /** Returns the number of rows. */
+  public int getHeight() {
+    return height;
+  }
+
+  /** Returns the side length of a cell (your units). */
+  public double getCellSize() {
+    return cellSize;
+  }
+
+  /** Returns the x coordinate of the lower-left corner of the grid. */
+  public double getOriginX() {
+    return originX;
+  }
+
+  /** Returns the y coordinate of the lower-left corner of the grid. */
+  public double getOriginY() {
+    return originY;
+  }
+
+  /** Returns true if the cell is inside the grid. */
+  public boolean inBounds(int column, int row) {
+    return column >= 0 && row >= 0 && column < width && row < height;
+  }
+
+  /**
+   * Checks if a cell is occupied.
+   *
+   * @return true if the cell is occupied or outside of the grid
+   */
+  public boolean isOccupied(int column, int row) {
+    if (!inBounds(column, row)) {
+      return true;
+    }
+    int index = row * width + column;
+    return (bits[index >>> 6] & (1L << index)) != 0;
+  }
+
+  /**
+   * Marks a cell as occupied or free.
+   *
+   * @throws IndexOutOfBoundsException if the cell is outside of the grid
+   */
+  public void setOccupied(int column, int row, boolean occupied) {
+    if (!inBounds(column, row)) {
+      throw new IndexOutOfBoundsException(
+          "Cell (" + column + ", " + row + ") is outside of the grid.");
+    }
+    int index = row * width + column;
+    if (occupied) {
+      bits[index >>> 6] |= 1L << index;
+    } else {
+      bits[index >>> 6] &= ~(1L << index);
+    }
+  }
+
+  /**
+   * Checks if the point (in your units) is in an occupied cell.
+   *
+   * @return true if the point is occupied or outside of the grid
+   */
+  public boolean isOccupied(double x, double y) {
+    return isOccupied(getColumn(x), getRow(y));
+  }
+
+  /** Returns the column that contains the x coordinate. May be outside of the grid. */
+  public int getColumn(double x) {
+    return (int) Math.floor((x - originX) / cellSize);
+  }
+
+  /** Returns the row that contains the y coordinate. May be outside of the grid. */
+  public int getRow(double y) {
+    return (int) Math.floor((y - originY) / cellSize);
+  }
+
+  /** Returns the x coordinate of the center of a column. */
+  public double getCellCenterX(int column) {
+    return originX + (column + 0.5) * cellSize;
+  }
+
+  /** Returns the y coordinate of the center of a row. */
+  public double getCellCenterY(int row) {
+    return originY + (row + 0.5) * cellSize;
+  }
+
+  /**
+   * Checks if a straight line between the centers of two cells only passes through free cells.
+   *
+   * <p>Every cell that the line touches is checked (a supercover line). When the line passes
+   * exactly through the corner of a cell, both cells beside the corner must be free, so the line
+   * never squeezes diagonally between two obstacles.
+   *
+   * @return true if every cell touched by the line, including both ends, is free
+   */
+  public boolean hasLineOfSight(int column0, int row0, int column1, int row1) {
+    int dx = Math.abs(column1 - column0);
+    int dy = Math.abs(row1 - row0);
+    int stepX = column1 > column0 ? 1 : -1;
+    int stepY = row1 > row0 ? 1 : -1;
+    int column = column0;
+    int row = row0;
+    int error = dx - dy;
+    dx *= 2;
+    dy *= 2;
+
+    for (int n = 1 + (dx + dy) / 2; n > 0; n--) {
+      if (isOccupied(column, row)) {
+        return false;
+      }
+      if (error > 0) {
+        column += stepX;
+        error -= dy;
+      } else if (error < 0) {
+        row += stepY;
+        error += dx;
+      } else if (n > 1) {
+        // the line goes through a corner, so it touches the cells on both sides of it
+        if (isOccupied(column + stepX, row) || isOccupied(column, row + stepY)) {
+          return false;
+        }
+        column += stepX;
+        row += stepY;
+        error += dx - dy;
+        n--;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the grid to a stream.
+   *
+   * <p>The grid is stored as a short header followed by the packed cell bits. The stream is not
+   * closed.
+   *
+   * @param stream the stream to write to
+   * @throws IOException if the stream cannot be written to
+   */
+  public void write(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(width);
+    out.writeInt(height);
+    out.writeDouble(cellSize);
+    out.writeDouble(originX);
+    out.writeDouble(originY);
+    for (long word : bits) {
+      out.writeLong(word);
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads a grid written by {@link #write(OutputStream)}.
+   *
+   * @param stream the stream to read from, it is not closed
+   * @return the grid
+   * @throws IOException if the stream cannot be read or does not contain a grid
+   */
+  public static OccupancyGrid read(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Stream does not contain an occupancy grid");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported occupancy grid version " + version);
+    }
+    int width = in.readInt();
+    int height = in.readInt();
+    double cellSize = in.readDouble();
+    double originX = in.readDouble();
+    double originY = in.readDouble();
+    OccupancyGrid grid = new OccupancyGrid(width, height, cellSize, originX, originY);
+    for (int i = 0; i < grid.bits.length; i++) {
+      grid.bits[i] = in.readLong();
+    }
+    return grid;
+  }
+}
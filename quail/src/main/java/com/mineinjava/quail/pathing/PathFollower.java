@@ -22,6 +22,7 @@ package com.mineinjava.quail.pathing;
 
 import com.mineinjava.quail.RobotMovement;
 import com.mineinjava.quail.localization.Localizer;
+import com.mineinjava.quail.localization.PoseSample;
 import com.mineinjava.quail.util.MathUtil;
 import com.mineinjava.quail.util.MiniPID;
 import com.mineinjava.quail.util.geometry.Pose2d;
@@ -52,6 +53,10 @@ public class PathFollower {
 
   private double loopTime;
 
+  private final PoseSample poseSample = new PoseSample();
+  private double maxLatencyCompensation = 0.1;
+  private boolean rampFromMeasuredVelocity = false;
+
   public PathFollower(
       Localizer localizer,
       Path path,
@@ -146,9 +151,19 @@ public class PathFollower {
           "localizer is null, ensure that you have instantiated the localizer object");
     }
 
-    this.currentPose = this.localizer.getPose(); // get the current pose of the robot
+    // get the current pose of the robot, moved forward by the time since it was measured
+    this.localizer.getPoseSample(this.poseSample);
+    this.currentPose = this.poseSample.getPose();
+    if (this.poseSample.hasVelocity) {
+      double age = MathUtil.clamp(this.poseSample.getAgeSeconds(), 0, this.maxLatencyCompensation);
+      this.currentPose =
+          new Pose2d(
+              this.poseSample.x + this.poseSample.velocityX * age,
+              this.poseSample.y + this.poseSample.velocityY * age,
+              this.poseSample.heading + this.poseSample.velocityHeading * age);
+    }
 
-    if (this.isFinished()) {
+    if (this.isFinished(this.currentPose)) {
       return new RobotMovement(0, new Vec2d(0, 0)); // the path is over
     }
 
@@ -206,11 +221,14 @@ public class PathFollower {
       idealMovementVector = idealMovementVector.normalize().scale(this.minVelocity);
     }
 
-    // Vec2d oldVelocity = this.lastRobotPose.vectorTo(currentPose).scale(1/this.loopTime);
+    // limit the acceleration from the last commanded velocity, or from the measured one if enabled
     if (this.lastMovementVector == null) {
       this.lastMovementVector = new Vec2d(0, 0);
     }
-    Vec2d oldVelocity = this.lastMovementVector;
+    Vec2d oldVelocity =
+        this.rampFromMeasuredVelocity && this.poseSample.hasVelocity
+            ? this.poseSample.getVelocity()
+            : this.lastMovementVector;
     Vec2d accelerationVector = idealMovementVector.subtract(oldVelocity).scale(1 / this.loopTime);
 
     if (accelerationVector.getLength() > this.maxAcceleration) {
@@ -233,20 +251,21 @@ public class PathFollower {
 
   /** returns true if the robot is finished following the path. */
   public Boolean isFinished() {
-    this.currentPose = this.localizer.getPose(); // ensure latest pose is updated
+    return isFinished(this.localizer.getPose()); // use the latest pose
+  }
 
+  private boolean isFinished(Pose2d currentPose) {
     // Check if the path is finished
     if (this.path.isFinished()) {
       // Check if the heading difference is within the allowed precision for the last point
       double headingDifference =
-          Math.abs(
-              this.path.points.get(this.path.points.size() - 1).heading - this.currentPose.heading);
+          Math.abs(this.path.points.get(this.path.points.size() - 1).heading - currentPose.heading);
       return headingDifference <= this.headingPrecision;
     }
 
     // Check if the heading difference is within the allowed precision for the current point
     double headingDifference =
-        Math.abs(this.path.points.get(this.path.lastPointIndex).heading - this.currentPose.heading);
+        Math.abs(this.path.points.get(this.path.lastPointIndex).heading - currentPose.heading);
     if (headingDifference >= this.headingPrecision) {
       return false;
     }
@@ -413,6 +432,37 @@ public class PathFollower {
     return this.loopTime;
   }
 
+  /**
+   * Sets the longest time that the measured pose is extrapolated forward by.
+   *
+   * <p>When the localizer measures velocity, the pose is moved forward by the velocity times the
+   * age of the measurement, so the follower acts on where the robot is now rather than where it
+   * was. The age is limited so a stale measurement can't throw the pose far off.
+   *
+   * <p>This only moves the pose. The acceleration limit still ramps from the last commanded
+   * velocity, unless {@link #setRampFromMeasuredVelocity} is enabled.
+   *
+   * @param maxLatencyCompensation the longest extrapolation in seconds, 0 to disable it
+   */
+  public void setMaxLatencyCompensation(double maxLatencyCompensation) {
+    this.maxLatencyCompensation = maxLatencyCompensation;
+  }
+
+  /**
+   * Sets whether the acceleration limit ramps from the measured velocity instead of the last
+   * commanded velocity.
+   *
+   * <p>Ramping from the measured velocity keeps the command close to what the robot is actually
+   * doing, for example after it was pushed or stalled, but it depends on the localizer measuring
+   * velocity well. It is off by default. Localizers that don't measure velocity always ramp from
+   * the last command.
+   *
+   * @param rampFromMeasuredVelocity true to ramp from the measured velocity
+   */
+  public void setRampFromMeasuredVelocity(boolean rampFromMeasuredVelocity) {
+    this.rampFromMeasuredVelocity = rampFromMeasuredVelocity;
+  }
+
   /**
    * Sets the translation constraints of the path follower.
    *
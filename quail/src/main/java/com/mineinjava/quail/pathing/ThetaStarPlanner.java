@@ -0,0 +1,181 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Any-angle grid planner using Theta*.
+ *
+ * <p>Java port of {@code pathPlanner/theta_star.py}. Theta* is A* on an 8-connected grid, except
+ * that a node may take its grandparent as its parent when the two can see each other, so paths are
+ * made of long straight segments instead of grid moves.
+ *
+ * <p>The search state lives in primitive arrays that are reused between calls, so repeated plans on
+ * grids of the same size don't allocate beyond the returned path. Instances are not thread-safe.
+ */
+public class ThetaStarPlanner implements GridPlanner {
+  private static final double SQRT_2 = Math.sqrt(2);
+
+  private final double heuristicWeight;
+  private final IndexedMinHeap open = new IndexedMinHeap();
+
+  private double[] costs = new double[0];
+  private int[] parents = new int[0];
+
+  /** the search that last touched each node, so the arrays don't have to be cleared. */
+  private int[] seen = new int[0];
+
+  private int[] closed = new int[0];
+  private int search = 0;
+  private int nodesExpanded = 0;
+
+  /** Creates a Theta* planner that returns shortest any-angle paths. */
+  public ThetaStarPlanner() {
+    this(1);
+  }
+
+  /**
+   * Creates a Theta* planner with a weighted heuristic.
+   *
+   * @param heuristicWeight weights above 1 expand fewer nodes but may return longer paths
+   */
+  public ThetaStarPlanner(double heuristicWeight) {
+    this.heuristicWeight = heuristicWeight;
+  }
+
+  @Override
+  public Path plan(OccupancyGrid grid, Pose2d start, Pose2d goal) {
+    nodesExpanded = 0;
+    int width = grid.getWidth();
+    int startColumn = grid.getColumn(start.x);
+    int startRow = grid.getRow(start.y);
+    int goalColumn = grid.getColumn(goal.x);
+    int goalRow = grid.getRow(goal.y);
+    if (grid.isOccupied(startColumn, startRow) || grid.isOccupied(goalColumn, goalRow)) {
+      return null;
+    }
+
+    prepare(width * grid.getHeight());
+    int startNode = startRow * width + startColumn;
+    int goalNode = goalRow * width + goalColumn;
+    costs[startNode] = 0;
+    parents[startNode] = startNode;
+    seen[startNode] = search;
+    open.push(
+        startNode, heuristicWeight * Math.hypot(goalColumn - startColumn, goalRow - startRow));
+
+    while (!open.isEmpty()) {
+      int node = open.pop();
+      if (node == goalNode) {
+        return buildPath(grid, start, goal, startNode, goalNode);
+      }
+      closed[node] = search;
+      nodesExpanded++;
+
+      int column = node % width;
+      int row = node / width;
+      int parent = parents[node];
+      int parentColumn = parent % width;
+      int parentRow = parent / width;
+
+      for (int dy = -1; dy <= 1; dy++) {
+        for (int dx = -1; dx <= 1; dx++) {
+          if (dx == 0 && dy == 0) {
+            continue;
+          }
+          int neighborColumn = column + dx;
+          int neighborRow = row + dy;
+          if (grid.isOccupied(neighborColumn, neighborRow)) {
+            continue;
+          }
+          // don't cut the corners of obstacles when moving diagonally
+          if (dx != 0
+              && dy != 0
+              && (grid.isOccupied(column + dx, row) || grid.isOccupied(column, row + dy))) {
+            continue;
+          }
+          int neighbor = neighborRow * width + neighborColumn;
+          if (closed[neighbor] == search) {
+            continue;
+          }
+
+          double cost;
+          int newParent;
+          if (parent != node
+              && grid.hasLineOfSight(parentColumn, parentRow, neighborColumn, neighborRow)) {
+            cost =
+                costs[parent] + Math.hypot(neighborColumn - parentColumn, neighborRow - parentRow);
+            newParent = parent;
+          } else {
+            cost = costs[node] + (dx != 0 && dy != 0 ? SQRT_2 : 1);
+            newParent = node;
+          }
+
+          if (seen[neighbor] != search || cost < costs[neighbor]) {
+            seen[neighbor] = search;
+            costs[neighbor] = cost;
+            parents[neighbor] = newParent;
+            double heuristic = Math.hypot(goalColumn - neighborColumn, goalRow - neighborRow);
+            open.push(neighbor, cost + heuristicWeight * heuristic);
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int getNodesExpanded() {
+    return nodesExpanded;
+  }
+
+  /** Sizes the search arrays for the grid and starts a new search. */
+  private void prepare(int nodeCount) {
+    if (costs.length < nodeCount) {
+      costs = new double[nodeCount];
+      parents = new int[nodeCount];
+      seen = new int[nodeCount];
+      closed = new int[nodeCount];
+      search = 0;
+    }
+    search++;
+    open.reset(nodeCount);
+  }
+
+  /** Follows the parents back from the goal to build the path. */
+  private Path buildPath(
+      OccupancyGrid grid, Pose2d start, Pose2d goal, int startNode, int goalNode) {
+    int width = grid.getWidth();
+    ArrayList<Pose2d> points = new ArrayList<>();
+    points.add(goal);
+    for (int node = parents[goalNode]; node != startNode; node = parents[node]) {
+      points.add(
+          new Pose2d(
+              grid.getCellCenterX(node % width), grid.getCellCenterY(node / width), goal.heading));
+    }
+    points.add(start);
+    Collections.reverse(points);
+    return new Path(points);
+  }
+}
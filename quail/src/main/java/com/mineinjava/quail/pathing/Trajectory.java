@@ -0,0 +1,264 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import com.mineinjava.quail.util.MathUtil;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.Arrays;
+
+/**
+ * A reference for the robot to follow: where it should be, and how fast it should be moving, at
+ * each point in time.
+ *
+ * <p>The trajectory is stored as samples of the pose and field-centric velocity at increasing
+ * times, and {@link #sample(double, double[])} interpolates between them. Samples can be added one
+ * by one, for example from an external trajectory generator, or generated from a {@link Path} with
+ * {@link #fromPath}.
+ *
+ * @see HolonomicTrajectoryController
+ */
+public class Trajectory {
+  /** number of values {@link #sample(double, double[])} writes. */
+  public static final int STATE_SIZE = 6;
+
+  private double[] times = new double[16];
+  private double[] xs = new double[16];
+  private double[] ys = new double[16];
+  private double[] headings = new double[16];
+  private double[] velocityXs = new double[16];
+  private double[] velocityYs = new double[16];
+  private double[] angularVelocities = new double[16];
+  private int size = 0;
+
+  /**
+   * Adds a sample to the end of the trajectory.
+   *
+   * @param time time since the start of the trajectory in seconds, after the previous sample
+   * @param x x position
+   * @param y y position
+   * @param heading heading in radians
+   * @param velocityX field-centric x velocity per second
+   * @param velocityY field-centric y velocity per second
+   * @param angularVelocity angular velocity in radians per second
+   * @throws IllegalArgumentException if the time is not after the previous sample
+   */
+  public void add(
+      double time,
+      double x,
+      double y,
+      double heading,
+      double velocityX,
+      double velocityY,
+      double angularVelocity) {
+    if (size > 0 && !(time > times[size - 1])) {
+      throw new IllegalArgumentException("Samples must be added in time order");
+    }
+    if (size == times.length) {
+      int capacity = size * 2;
+      times = Arrays.copyOf(times, capacity);
+      xs = Arrays.copyOf(xs, capacity);
+      ys = Arrays.copyOf(ys, capacity);
+      headings = Arrays.copyOf(headings, capacity);
+      velocityXs = Arrays.copyOf(velocityXs, capacity);
+      velocityYs = Arrays.copyOf(velocityYs, capacity);
+      angularVelocities = Arrays.copyOf(angularVelocities, capacity);
+    }
+    times[size] = time;
+    xs[size] = x;
+    ys[size] = y;
+    headings[size] = heading;
+    velocityXs[size] = velocityX;
+    velocityYs[size] = velocityY;
+    angularVelocities[size] = angularVelocity;
+    size++;
+  }
+
+  /** Returns the number of samples. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the time of the last sample, or 0 if there are none. */
+  public double getDuration() {
+    return size == 0 ? 0 : times[size - 1];
+  }
+
+  /**
+   * Finds the reference state at a time, interpolating between the samples around it.
+   *
+   * <p>Times before the first sample give the first sample. Times after the last sample give its
+   * pose with zero velocity, so the robot holds the final pose.
+   *
+   * @param time time since the start of the trajectory in seconds
+   * @param out array of at least {@link #STATE_SIZE} elements that receives the x, y, heading, x
+   *     velocity, y velocity and angular velocity
+   * @throws IllegalStateException if the trajectory is empty
+   */
+  public void sample(double time, double[] out) {
+    if (size == 0) {
+      throw new IllegalStateException("The trajectory is empty");
+    }
+    if (time >= times[size - 1]) {
+      copy(size - 1, out);
+      out[3] = 0;
+      out[4] = 0;
+      out[5] = 0;
+      return;
+    }
+    if (time <= times[0]) {
+      copy(0, out);
+      return;
+    }
+    int low = 0;
+    int high = size - 1;
+    while (high - low > 1) {
+      int middle = (low + high) >>> 1;
+      if (times[middle] <= time) {
+        low = middle;
+      } else {
+        high = middle;
+      }
+    }
+    double t = (time - times[low]) / (times[high] - times[low]);
+    out[0] = MathUtil.lerp(xs[low], xs[high], t);
+    out[1] = MathUtil.lerp(ys[low], ys[high], t);
+    out[2] = headings[low] + MathUtil.deltaAngle(headings[low], headings[high]) * t;
+    out[3] = MathUtil.lerp(velocityXs[low], velocityXs[high], t);
+    out[4] = MathUtil.lerp(velocityYs[low], velocityYs[high], t);
+    out[5] = MathUtil.lerp(angularVelocities[low], angularVelocities[high], t);
+  }
+
+  /**
+   * Finds the reference pose at a time.
+   *
+   * @see #sample(double, double[])
+   */
+  public Pose2d samplePose(double time) {
+    double[] state = new double[STATE_SIZE];
+    sample(time, state);
+    return new Pose2d(state[0], state[1], state[2]);
+  }
+
+  private void copy(int index, double[] out) {
+    out[0] = xs[index];
+    out[1] = ys[index];
+    out[2] = headings[index];
+    out[3] = velocityXs[index];
+    out[4] = velocityYs[index];
+    out[5] = angularVelocities[index];
+  }
+
+  /**
+   * Generates a trajectory along the straight segments of a path.
+   *
+   * <p>The robot speeds up, cruises and slows down along the whole path (a trapezoidal profile) as
+   * fast as the constraints allow, stopping only at the end. The heading turns from each point's
+   * heading to the next one's in proportion to the distance travelled along the segment.
+   *
+   * @param path the path to follow
+   * @param constraints the maximum speed and acceleration
+   * @param dt time between samples in seconds
+   * @return the trajectory, starting at time 0
+   * @throws IllegalArgumentException if the path has fewer than two points or no length, such as a
+   *     turn in place, which the speed and acceleration constraints can't time
+   */
+  public static Trajectory fromPath(Path path, ConstraintsPair constraints, double dt) {
+    if (path.points.size() < 2) {
+      throw new IllegalArgumentException("The path needs at least two points");
+    }
+    double maxVelocity = constraints.getMaxVelocity();
+    double maxAcceleration = constraints.getMaxAcceleration();
+    if (!(maxVelocity > 0 && maxAcceleration > 0 && dt > 0)) {
+      throw new IllegalArgumentException("The constraints and dt must be positive");
+    }
+
+    // cumulative distance at the start of each segment
+    int segments = path.points.size() - 1;
+    double[] distances = new double[segments + 1];
+    for (int i = 0; i < segments; i++) {
+      Pose2d from = path.points.get(i);
+      Pose2d to = path.points.get(i + 1);
+      distances[i + 1] = distances[i] + Math.hypot(to.x - from.x, to.y - from.y);
+    }
+    double length = distances[segments];
+    if (!(length > 0)) {
+      throw new IllegalArgumentException(
+          "The path has no length, so only its heading could change; turn in place instead");
+    }
+
+    // trapezoidal profile, or triangular if the path is too short to reach the maximum speed
+    double accelerationTime = maxVelocity / maxAcceleration;
+    double accelerationDistance = maxVelocity * accelerationTime / 2;
+    if (2 * accelerationDistance > length) {
+      accelerationTime = Math.sqrt(length / maxAcceleration);
+      accelerationDistance = length / 2;
+      maxVelocity = maxAcceleration * accelerationTime;
+    }
+    double cruiseTime = (length - 2 * accelerationDistance) / maxVelocity;
+    double duration = 2 * accelerationTime + cruiseTime;
+
+    Trajectory trajectory = new Trajectory();
+    int steps = Math.max(1, (int) Math.ceil(duration / dt));
+    int segment = 0;
+    double lastHeading = 0;
+    for (int step = 0; step <= steps; step++) {
+      double time = Math.min(step * dt, duration);
+      double distance;
+      double speed;
+      if (time < accelerationTime) {
+        speed = maxAcceleration * time;
+        distance = speed * time / 2;
+      } else if (time < accelerationTime + cruiseTime) {
+        speed = maxVelocity;
+        distance = accelerationDistance + maxVelocity * (time - accelerationTime);
+      } else {
+        double remaining = duration - time;
+        speed = maxAcceleration * remaining;
+        distance = length - speed * remaining / 2;
+      }
+
+      while (segment < segments - 1 && distance > distances[segment + 1]) {
+        segment++;
+      }
+      Pose2d from = path.points.get(segment);
+      Pose2d to = path.points.get(segment + 1);
+      double segmentLength = distances[segment + 1] - distances[segment];
+      double t = segmentLength == 0 ? 1 : (distance - distances[segment]) / segmentLength;
+      t = MathUtil.clamp(t, 0, 1);
+      double directionX = segmentLength == 0 ? 0 : (to.x - from.x) / segmentLength;
+      double directionY = segmentLength == 0 ? 0 : (to.y - from.y) / segmentLength;
+      double heading = from.heading + MathUtil.deltaAngle(from.heading, to.heading) * t;
+      double angularVelocity =
+          step == 0 ? 0 : MathUtil.deltaAngle(lastHeading, heading) / (time - (step - 1) * dt);
+      lastHeading = heading;
+
+      trajectory.add(
+          time,
+          MathUtil.lerp(from.x, to.x, t),
+          MathUtil.lerp(from.y, to.y, t),
+          heading,
+          directionX * speed,
+          directionY * speed,
+          angularVelocity);
+    }
+    return trajectory;
+  }
+}
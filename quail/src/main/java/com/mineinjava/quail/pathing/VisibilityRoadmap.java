@@ -0,0 +1,386 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.pathing;
+
+import com.mineinjava.quail.util.geometry.Polygon;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A precomputed visibility graph of a static field.
+ *
+ * <p>The roadmap is built offline from a list of polygon obstacles, which are inflated by the
+ * robot's radius. Every vertex of the inflated obstacles becomes a node of the graph, two nodes are
+ * connected if the robot can drive in a straight line between them, and the shortest path between
+ * every pair of nodes is precomputed.
+ *
+ * <p>At runtime, {@link #query(Pose2d, Pose2d)} connects the start and goal to the nodes they can
+ * see and looks up the stored solution, so no search is needed. Roadmaps can be saved to and loaded
+ * from a compact binary file with {@link #save(OutputStream)} and {@link #load(InputStream)}.
+ *
+ * <p>Shortest paths on a visibility graph are optimal for a point robot among the inflated
+ * obstacles, so the returned paths hug obstacle corners at a distance of roughly the robot radius.
+ */
+public class VisibilityRoadmap {
+  private static final int MAGIC = 0x5152564D; // "QRVM"
+  private static final int VERSION = 1;
+  private static final int NO_VERTEX = -1;
+
+  /** the most vertices whose n * n tables fit in an array; also fits the 16-bit file format */
+  private static final int MAX_VERTICES = 46340;
+
+  private final List<Polygon> obstacles;
+  private final double robotRadius;
+  private final int vertexCount;
+  private final double[] vertexX;
+  private final double[] vertexY;
+
+  /** shortest distance between every pair of vertices, row-major. */
+  private final float[] distances;
+
+  /** the vertex after i on the shortest path from i to j, row-major. */
+  private final int[] nextVertex;
+
+  private VisibilityRoadmap(
+      List<Polygon> obstacles,
+      double robotRadius,
+      double[] vertexX,
+      double[] vertexY,
+      float[] distances,
+      int[] nextVertex) {
+    this.obstacles = obstacles;
+    this.robotRadius = robotRadius;
+    this.vertexCount = vertexX.length;
+    this.vertexX = vertexX;
+    this.vertexY = vertexY;
+    this.distances = distances;
+    this.nextVertex = nextVertex;
+  }
+
+  /**
+   * Builds a roadmap from a list of obstacles.
+   *
+   * <p>This runs an all-pairs shortest path search (O(n^3) in the number of obstacle vertices) and
+   * is meant to be run offline or once at startup, not in the control loop.
+   *
+   * @param obstacles the obstacles on the field (not inflated)
+   * @param robotRadius the radius of the robot (your units), obstacles are inflated by this much
+   * @return the roadmap
+   * @throws IllegalArgumentException if the robot radius is negative or there are more than 46340
+   *     vertices
+   */
+  public static VisibilityRoadmap build(List<Polygon> obstacles, double robotRadius) {
+    if (robotRadius < 0) {
+      throw new IllegalArgumentException("Robot radius must not be negative.");
+    }
+    List<Polygon> inflated = new ArrayList<>();
+    for (Polygon obstacle : obstacles) {
+      inflated.add(obstacle.inflate(robotRadius));
+    }
+
+    // collect the vertices that the robot can actually reach
+    int total = 0;
+    for (Polygon polygon : inflated) {
+      total += polygon.size();
+    }
+    double[] xs = new double[total];
+    double[] ys = new double[total];
+    int[] owner = new int[total]; // polygon that each vertex belongs to
+    int[] ownerIndex = new int[total]; // index of the vertex within its polygon
+    int n = 0;
+    for (int p = 0; p < inflated.size(); p++) {
+      Polygon polygon = inflated.get(p);
+      for (int v = 0; v < polygon.size(); v++) {
+        double x = polygon.getX(v);
+        double y = polygon.getY(v);
+        if (!insideAny(inflated, x, y, p)) {
+          xs[n] = x;
+          ys[n] = y;
+          owner[n] = p;
+          ownerIndex[n] = v;
+          n++;
+        }
+      }
+    }
+    if (n > MAX_VERTICES) {
+      throw new IllegalArgumentException(
+          "Roadmaps are limited to " + MAX_VERTICES + " vertices, got " + n);
+    }
+    xs = Arrays.copyOf(xs, n);
+    ys = Arrays.copyOf(ys, n);
+
+    float[] distances = new float[n * n];
+    int[] next = new int[n * n];
+    Arrays.fill(distances, Float.POSITIVE_INFINITY);
+    Arrays.fill(next, NO_VERTEX);
+
+    // visibility edges
+    for (int i = 0; i < n; i++) {
+      distances[i * n + i] = 0;
+      next[i * n + i] = i;
+      for (int j = i + 1; j < n; j++) {
+        int skip = NO_VERTEX;
+        if (owner[i] == owner[j]) {
+          // edges of an obstacle run along its boundary, so that obstacle can't block them
+          int size = inflated.get(owner[i]).size();
+          int delta = Math.abs(ownerIndex[i] - ownerIndex[j]);
+          if (delta == 1 || delta == size - 1) {
+            skip = owner[i];
+          }
+        }
+        if (isVisible(inflated, xs[i], ys[i], xs[j], ys[j], skip)) {
+          float distance = (float) Math.hypot(xs[j] - xs[i], ys[j] - ys[i]);
+          distances[i * n + j] = distance;
+          distances[j * n + i] = distance;
+          next[i * n + j] = j;
+          next[j * n + i] = i;
+        }
+      }
+    }
+
+    // Floyd-Warshall all pairs shortest paths
+    for (int k = 0; k < n; k++) {
+      for (int i = 0; i < n; i++) {
+        float ik = distances[i * n + k];
+        if (ik == Float.POSITIVE_INFINITY) {
+          continue;
+        }
+        for (int j = 0; j < n; j++) {
+          float candidate = ik + distances[k * n + j];
+          if (candidate < distances[i * n + j]) {
+            distances[i * n + j] = candidate;
+            next[i * n + j] = next[i * n + k];
+          }
+        }
+      }
+    }
+
+    return new VisibilityRoadmap(inflated, robotRadius, xs, ys, distances, next);
+  }
+
+  /**
+   * Finds the shortest path between two poses.
+   *
+   * <p>The returned path starts at {@code start} and ends at {@code goal}. Every point after the
+   * start uses the goal's heading.
+   *
+   * @param start the start pose
+   * @param goal the goal pose
+   * @return the shortest path, or null if the goal cannot be reached
+   */
+  public Path query(Pose2d start, Pose2d goal) {
+    ArrayList<Pose2d> points = new ArrayList<>();
+    points.add(start);
+
+    if (isVisible(obstacles, start.x, start.y, goal.x, goal.y, NO_VERTEX)) {
+      points.add(goal);
+      return new Path(points);
+    }
+
+    // distances from the start and goal to every vertex they can see
+    double[] startDistances = new double[vertexCount];
+    double[] goalDistances = new double[vertexCount];
+    for (int i = 0; i < vertexCount; i++) {
+      startDistances[i] = visibleDistance(start, i);
+      goalDistances[i] = visibleDistance(goal, i);
+    }
+
+    double bestLength = Double.POSITIVE_INFINITY;
+    int bestFirst = NO_VERTEX;
+    int bestLast = NO_VERTEX;
+    for (int i = 0; i < vertexCount; i++) {
+      if (startDistances[i] == Double.POSITIVE_INFINITY) {
+        continue;
+      }
+      for (int j = 0; j < vertexCount; j++) {
+        double length = startDistances[i] + distances[i * vertexCount + j] + goalDistances[j];
+        if (length < bestLength) {
+          bestLength = length;
+          bestFirst = i;
+          bestLast = j;
+        }
+      }
+    }
+    if (bestFirst == NO_VERTEX) {
+      return null;
+    }
+
+    int current = bestFirst;
+    points.add(new Pose2d(vertexX[current], vertexY[current], goal.heading));
+    while (current != bestLast) {
+      current = nextVertex[current * vertexCount + bestLast];
+      points.add(new Pose2d(vertexX[current], vertexY[current], goal.heading));
+    }
+    points.add(goal);
+    return new Path(points);
+  }
+
+  /** Returns the number of vertices in the roadmap. */
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /** Returns the radius that the obstacles were inflated by. */
+  public double getRobotRadius() {
+    return robotRadius;
+  }
+
+  /** Returns the inflated obstacles used by the roadmap. */
+  public List<Polygon> getObstacles() {
+    return obstacles;
+  }
+
+  /**
+   * Returns the length of the shortest path between two roadmap vertices.
+   *
+   * @return the length, or {@link Double#POSITIVE_INFINITY} if they are not connected
+   */
+  public double getDistance(int from, int to) {
+    return distances[from * vertexCount + to];
+  }
+
+  /**
+   * Writes the roadmap to a stream.
+   *
+   * <p>The format stores the inflated obstacles, the vertices, the distance table as 32 bit floats
+   * and the successor table as 16 bit indices. The stream is not closed.
+   *
+   * @param stream the stream to write to
+   * @throws IOException if the stream cannot be written to
+   */
+  public void save(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(stream);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeDouble(robotRadius);
+
+    out.writeInt(obstacles.size());
+    for (Polygon obstacle : obstacles) {
+      out.writeInt(obstacle.size());
+      for (int i = 0; i < obstacle.size(); i++) {
+        out.writeDouble(obstacle.getX(i));
+        out.writeDouble(obstacle.getY(i));
+      }
+    }
+
+    out.writeInt(vertexCount);
+    for (int i = 0; i < vertexCount; i++) {
+      out.writeDouble(vertexX[i]);
+      out.writeDouble(vertexY[i]);
+    }
+    for (float distance : distances) {
+      out.writeFloat(distance);
+    }
+    for (int next : nextVertex) {
+      out.writeShort(next); // NO_VERTEX is stored as 0xFFFF
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads a roadmap written by {@link #save(OutputStream)}.
+   *
+   * @param stream the stream to read from, it is not closed
+   * @return the roadmap
+   * @throws IOException if the stream cannot be read or does not contain a roadmap
+   */
+  public static VisibilityRoadmap load(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Stream does not contain a visibility roadmap");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported visibility roadmap version " + version);
+    }
+    double robotRadius = in.readDouble();
+
+    int obstacleCount = in.readInt();
+    List<Polygon> obstacles = new ArrayList<>(obstacleCount);
+    for (int p = 0; p < obstacleCount; p++) {
+      int size = in.readInt();
+      double[] xs = new double[size];
+      double[] ys = new double[size];
+      for (int i = 0; i < size; i++) {
+        xs[i] = in.readDouble();
+        ys[i] = in.readDouble();
+      }
+      obstacles.add(new Polygon(xs, ys));
+    }
+
+    int n = in.readInt();
+    if (n < 0 || n > MAX_VERTICES) {
+      throw new IOException("Invalid roadmap vertex count " + n);
+    }
+    double[] vertexX = new double[n];
+    double[] vertexY = new double[n];
+    for (int i = 0; i < n; i++) {
+      vertexX[i] = in.readDouble();
+      vertexY[i] = in.readDouble();
+    }
+    float[] distances = new float[n * n];
+    for (int i = 0; i < distances.length; i++) {
+      distances[i] = in.readFloat();
+    }
+    int[] nextVertex = new int[n * n];
+    for (int i = 0; i < nextVertex.length; i++) {
+      int next = in.readUnsignedShort();
+      nextVertex[i] = next == 0xFFFF ? NO_VERTEX : next;
+    }
+    return new VisibilityRoadmap(obstacles, robotRadius, vertexX, vertexY, distances, nextVertex);
+  }
+
+  /** Returns the distance from a pose to a vertex, or infinity if the vertex can't be seen. */
+  private double visibleDistance(Pose2d pose, int vertex) {
+    if (!isVisible(obstacles, pose.x, pose.y, vertexX[vertex], vertexY[vertex], NO_VERTEX)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return Math.hypot(vertexX[vertex] - pose.x, vertexY[vertex] - pose.y);
+  }
+
+  /** Returns true if no obstacle (other than the skipped one) blocks the segment. */
+  private static boolean isVisible(
+      List<Polygon> obstacles, double x0, double y0, double x1, double y1, int skip) {
+    for (int p = 0; p < obstacles.size(); p++) {
+      if (p != skip && obstacles.get(p).blocksSegment(x0, y0, x1, y1)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns true if the point is inside any of the obstacles other than the skipped one. */
+  private static boolean insideAny(List<Polygon> obstacles, double x, double y, int skip) {
+    for (int p = 0; p < obstacles.size(); p++) {
+      if (p != skip && obstacles.get(p).contains(x, y)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
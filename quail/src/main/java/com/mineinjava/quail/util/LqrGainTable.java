@@ -0,0 +1,228 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.util;
+
+import java.util.function.DoubleFunction;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * LQR gains for a linear model that changes with speed, precomputed on a grid of speeds.
+ *
+ * <p>Many tracking models only stay linear around one operating point. For example, the lateral
+ * error of a robot driving along a path grows with its speed. This class solves the LQR problem at
+ * evenly spaced speeds when it is created, and {@link #calculate} interpolates between the two
+ * nearest gains at runtime. Nothing is solved or allocated during the control loop.
+ *
+ * <p>The model is discrete: {@code x[k+1] = A x[k] + B u[k]}, with the state cost {@code Q} and the
+ * input cost {@code R}. The gain {@code K} minimises the sum of {@code x'Qx + u'Ru} when {@code u =
+ * -Kx}.
+ */
+public class LqrGainTable {
+  private static final int MAX_ITERATIONS = 100;
+  private static final double TOLERANCE = 1e-12;
+
+  private final int states;
+  private final int inputs;
+  private final double minVelocity;
+  private final double step;
+  private final int points;
+
+  /** the gains at each grid point, each a row-major inputs x states matrix */
+  private final double[][] gains;
+
+  /**
+   * Precomputes the gains.
+   *
+   * @param model gives the discrete A and B matrices of the model at a speed
+   * @param q state cost, a symmetric positive semi-definite states x states matrix
+   * @param r input cost, a symmetric positive definite inputs x inputs matrix
+   * @param minVelocity the lowest speed of the grid
+   * @param maxVelocity the highest speed of the grid
+   * @param points the number of grid points, at least 2
+   * @throws IllegalArgumentException if the grid or the matrix sizes are invalid, or the model
+   *     can't be stabilized at one of the speeds
+   */
+  public LqrGainTable(
+      DoubleFunction<RealMatrix[]> model,
+      RealMatrix q,
+      RealMatrix r,
+      double minVelocity,
+      double maxVelocity,
+      int points) {
+    if (points < 2 || !(maxVelocity > minVelocity)) {
+      throw new IllegalArgumentException("The grid needs at least two increasing speeds");
+    }
+    this.states = q.getRowDimension();
+    this.inputs = r.getRowDimension();
+    this.minVelocity = minVelocity;
+    this.step = (maxVelocity - minVelocity) / (points - 1);
+    this.points = points;
+    this.gains = new double[points][];
+
+    for (int k = 0; k < points; k++) {
+      RealMatrix[] ab = model.apply(minVelocity + k * step);
+      RealMatrix gain = gain(ab[0], ab[1], q, r);
+      double[] flat = new double[inputs * states];
+      for (int row = 0; row < inputs; row++) {
+        for (int column = 0; column < states; column++) {
+          flat[row * states + column] = gain.getEntry(row, column);
+        }
+      }
+      gains[k] = flat;
+    }
+  }
+
+  /** Returns the number of states. */
+  public int getStateCount() {
+    return states;
+  }
+
+  /** Returns the number of inputs. */
+  public int getInputCount() {
+    return inputs;
+  }
+
+  /**
+   * Interpolates the gain matrix at a speed. Speeds outside the grid use the gain at its nearest
+   * end.
+   *
+   * @param velocity the speed
+   * @param out array of at least inputs x states elements that receives the gain, row-major
+   */
+  public void getGain(double velocity, double[] out) {
+    double position = MathUtil.clamp((velocity - minVelocity) / step, 0, points - 1);
+    int low = Math.min((int) position, points - 2);
+    double t = position - low;
+    double[] a = gains[low];
+    double[] b = gains[low + 1];
+    for (int i = 0; i < a.length; i++) {
+      out[i] = a[i] + (b[i] - a[i]) * t;
+    }
+  }
+
+  /**
+   * Calculates the input that corrects an error, {@code u = K e}. Doesn't allocate.
+   *
+   * <p>The error is the reference state minus the measured state, so this is the usual {@code u =
+   * -Kx} with {@code x} the state relative to the reference.
+   *
+   * @param velocity the speed to schedule the gain on
+   * @param error the error of each state
+   * @param out array of at least inputs elements that receives the input
+   */
+  public void calculate(double velocity, double[] error, double[] out) {
+    double position = MathUtil.clamp((velocity - minVelocity) / step, 0, points - 1);
+    int low = Math.min((int) position, points - 2);
+    double t = position - low;
+    double[] a = gains[low];
+    double[] b = gains[low + 1];
+    for (int row = 0; row < inputs; row++) {
+      double sum = 0;
+      int offset = row * states;
+      for (int column = 0; column < states; column++) {
+        double gain = a[offset + column] + (b[offset + column] - a[offset + column]) * t;
+        sum += gain * error[column];
+      }
+      out[row] = sum;
+    }
+  }
+
+  /**
+   * Calculates the LQR gain {@code K = (R + B'PB)^-1 B'PA}, where {@code P} solves the discrete
+   * algebraic Riccati equation.
+   *
+   * @see #solveDare(RealMatrix, RealMatrix, RealMatrix, RealMatrix)
+   */
+  public static RealMatrix gain(RealMatrix a, RealMatrix b, RealMatrix q, RealMatrix r) {
+    RealMatrix p = solveDare(a, b, q, r);
+    RealMatrix bTransposeP = b.transpose().multiply(p);
+    return new LUDecomposition(r.add(bTransposeP.multiply(b)))
+        .getSolver()
+        .solve(bTransposeP.multiply(a));
+  }
+
+  /**
+   * Solves the discrete algebraic Riccati equation {@code P = A'PA - A'PB (R + B'PB)^-1 B'PA + Q}
+   * for its stabilizing solution.
+   *
+   * <p>Uses the structure-preserving doubling algorithm, which converges quadratically, so even
+   * models sampled much faster than their dynamics take only a few dozen iterations.
+   *
+   * @param a the states x states system matrix
+   * @param b the states x inputs input matrix
+   * @param q the states x states state cost
+   * @param r the inputs x inputs input cost
+   * @return P
+   * @throws IllegalArgumentException if the sizes don't match or there is no stabilizing solution
+   */
+  public static RealMatrix solveDare(RealMatrix a, RealMatrix b, RealMatrix q, RealMatrix r) {
+    int n = a.getRowDimension();
+    int m = b.getColumnDimension();
+    if (a.getColumnDimension() != n
+        || b.getRowDimension() != n
+        || q.getRowDimension() != n
+        || q.getColumnDimension() != n
+        || r.getRowDimension() != m
+        || r.getColumnDimension() != m) {
+      throw new IllegalArgumentException("Matrix sizes don't match");
+    }
+    RealMatrix identity = MatrixUtils.createRealIdentityMatrix(n);
+    RealMatrix ak = a;
+    RealMatrix gk;
+    try {
+      gk = b.multiply(new LUDecomposition(r).getSolver().solve(b.transpose()));
+    } catch (SingularMatrixException e) {
+      throw new IllegalArgumentException("R must be positive definite", e);
+    }
+    RealMatrix hk = q;
+
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      DecompositionSolver solver = new LUDecomposition(identity.add(gk.multiply(hk))).getSolver();
+      RealMatrix w;
+      RealMatrix v;
+      try {
+        // (I + GH)^-1 A and (I + GH)^-1 G
+        w = solver.solve(ak);
+        v = solver.solve(gk);
+      } catch (SingularMatrixException e) {
+        break;
+      }
+      RealMatrix next = hk.add(ak.transpose().multiply(hk).multiply(w));
+      gk = gk.add(ak.multiply(v).multiply(ak.transpose()));
+      ak = ak.multiply(w);
+
+      double change = next.subtract(hk).getNorm();
+      hk = next;
+      if (!Double.isFinite(change)) {
+        break;
+      }
+      if (change <= TOLERANCE * Math.max(1, hk.getNorm())) {
+        // symmetrize away rounding error
+        return hk.add(hk.transpose()).scalarMultiply(0.5);
+      }
+    }
+    throw new IllegalArgumentException("The model has no stabilizing LQR solution");
+  }
+}
@@ -81,6 +81,13 @@ public class MiniPID {
 
   private double setpointRange = 0;
 
+  // state of the time-aware getOutput
+  private double derivativeFilterTime = 0;
+  private boolean trapezoidal = false;
+  private double lastError = 0;
+  private double filteredDerivative = 0;
+  private double lastTimestamp = Double.NaN;
+
   // **********************************
   // Constructor functions
   // **********************************
@@ -344,6 +351,58 @@ public class MiniPID {
    * @return calculated output value for driving the system
    */
   public double getOutput(double actual, double setpoint) {
+    return calculate(actual, setpoint, false, 0);
+  }
+
+  /**
+   * Calculate the output value for the current PID cycle, taking the time since the last cycle into
+   * account.
+   *
+   * <p>In this mode the gains are per second rather than per cycle: the I term integrates the error
+   * over time, the D term uses the rate of change of the sensor value, and the output ramp rate is
+   * a limit per second. So a tuning stays valid when the loop rate changes, and a late cycle (from
+   * garbage collection, for example) doesn't change the effective gains. See {@link
+   * #setDerivativeFilter(double)} and {@link #setTrapezoidalIntegration(boolean)} for the options
+   * that only apply to this mode.
+   *
+   * <p>Don't mix this with {@link #getOutput(double, double)} on the same controller, since the I
+   * term is accumulated in different units.
+   *
+   * @param actual The monitored value, typically as a sensor input.
+   * @param setpoint The target value for the system
+   * @param dt time since the last cycle in seconds
+   * @return calculated output value for driving the system
+   */
+  public double getOutput(double actual, double setpoint, double dt) {
+    return calculate(actual, setpoint, true, Math.max(0, dt));
+  }
+
+  /**
+   * Calculate the output value for the current PID cycle, taking the time since the last cycle into
+   * account.
+   *
+   * <p>The same as {@link #getOutput(double, double, double)}, with the time since the last cycle
+   * found from the timestamps. The first cycle after creating or resetting the controller has no I
+   * or D contribution.
+   *
+   * @param actual The monitored value, typically as a sensor input.
+   * @param setpoint The target value for the system
+   * @param timestamp the current time in seconds, from a monotonic clock
+   * @return calculated output value for driving the system
+   */
+  public double getOutputAt(double actual, double setpoint, double timestamp) {
+    double dt = Double.isNaN(lastTimestamp) ? 0 : timestamp - lastTimestamp;
+    lastTimestamp = timestamp;
+    return getOutput(actual, setpoint, dt);
+  }
+
+  /**
+   * The PID calculation, either per cycle or, if timed, over {@code dt} seconds.
+   *
+   * <p>The per-cycle calculation is the original MiniPID one, and is unaffected by the options of
+   * the timed one.
+   */
+  private double calculate(double actual, double setpoint, boolean timed, double dt) {
     double output;
     double Poutput;
     double Ioutput;
@@ -372,13 +431,27 @@ public class MiniPID {
     if (firstRun) {
       lastActual = actual;
       lastOutput = Poutput + Foutput;
+      lastError = error;
+      filteredDerivative = 0;
       firstRun = false;
     }
 
     // Calculate D Term
     // Note, this is negative. This actually "slows" the system if it's doing
     // the correct thing, and small values helps prevent output spikes and overshoot
-    Doutput = -D * (actual - lastActual);
+    if (timed) {
+      double derivative = dt > 0 ? (actual - lastActual) / dt : 0;
+      if (derivativeFilterTime > 0) {
+        // first-order low-pass, so the D term doesn't amplify sensor noise
+        derivative =
+            filteredDerivative
+                + (derivative - filteredDerivative) * dt / (derivativeFilterTime + dt);
+      }
+      filteredDerivative = derivative;
+      Doutput = -D * derivative;
+    } else {
+      Doutput = -D * (actual - lastActual);
+    }
     lastActual = actual;
 
     // The Iterm is more complex. There's several things to factor in to make it easier to deal
@@ -391,30 +464,39 @@ public class MiniPID {
       Ioutput = constrain(Ioutput, -maxIOutput, maxIOutput);
     }
 
+    // What this cycle adds to the error sum: the error itself, or its integral over the time step
+    double errorIncrement = error;
+    double rampLimit = outputRampRate;
+    if (timed) {
+      errorIncrement = (trapezoidal ? (error + lastError) / 2 : error) * dt;
+      rampLimit = outputRampRate * dt;
+    }
+    lastError = error;
+
     // And, finally, we can just add the terms up
     output = Foutput + Poutput + Ioutput + Doutput;
 
     // Figure out what we're doing with the error.
     if (minOutput != maxOutput && !bounded(output, minOutput, maxOutput)) {
-      errorSum = error;
+      errorSum = errorIncrement;
       // reset the error sum to a sane level
       // Setting to current error ensures a smooth transition when the P term
       // decreases enough for the I term to start acting upon the controller
       // From that point the I term will build up as would be expected
     } else if (outputRampRate != 0
-        && !bounded(output, lastOutput - outputRampRate, lastOutput + outputRampRate)) {
-      errorSum = error;
+        && !bounded(output, lastOutput - rampLimit, lastOutput + rampLimit)) {
+      errorSum = errorIncrement;
     } else if (maxIOutput != 0) {
-      errorSum = constrain(errorSum + error, -maxError, maxError);
+      errorSum = constrain(errorSum + errorIncrement, -maxError, maxError);
       // In addition to output limiting directly, we also want to prevent I term
       // buildup, so restrict the error directly
     } else {
-      errorSum += error;
+      errorSum += errorIncrement;
     }
 
     // Restrict output to our specified output and ramp limits
     if (outputRampRate != 0) {
-      output = constrain(output, lastOutput - outputRampRate, lastOutput + outputRampRate);
+      output = constrain(output, lastOutput - rampLimit, lastOutput + rampLimit);
     }
     if (minOutput != maxOutput) {
       output = constrain(output, minOutput, maxOutput);
@@ -476,6 +558,7 @@ public class MiniPID {
   public void reset() {
     firstRun = true;
     errorSum = 0;
+    lastTimestamp = Double.NaN;
   }
 
   /**
@@ -487,12 +570,42 @@ public class MiniPID {
    * <p>Can be very useful for fast-reacting control loops, such as ones with large P or D values
    * and feed-forward systems.
    *
+   * <p>With the time-aware {@link #getOutput(double, double, double)}, the rate is per second.
+   *
    * @param rate, with units being the same as the output
    */
   public void setOutputRampRate(double rate) {
     outputRampRate = rate;
   }
 
+  /**
+   * Set a low-pass filter on the derivative term of the time-aware {@link #getOutput(double,
+   * double, double)}.
+   *
+   * <p>The derivative of a noisy sensor is much noisier than the sensor itself. The filter smooths
+   * it with a first-order low-pass, which responds to a step over about the given time constant.
+   * Unlike {@link #setOutputFilter(double)}, it is specified in seconds, so it doesn't change with
+   * the loop rate.
+   *
+   * @param timeConstant the filter's time constant in seconds, 0 to disable it
+   */
+  public void setDerivativeFilter(double timeConstant) {
+    derivativeFilterTime = Math.max(0, timeConstant);
+  }
+
+  /**
+   * Set whether the time-aware {@link #getOutput(double, double, double)} integrates the error with
+   * the trapezoidal rule.
+   *
+   * <p>The trapezoidal rule averages the errors at the start and end of each time step, which is
+   * more accurate than using only the latest error when the error is changing quickly.
+   *
+   * @param trapezoidal true to use the trapezoidal rule, false to use the latest error
+   */
+  public void setTrapezoidalIntegration(boolean trapezoidal) {
+    this.trapezoidal = trapezoidal;
+  }
+
   /**
    * Set a limit on how far the setpoint can be from the current position.
    *
@@ -0,0 +1,405 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of PID controllers, such as one per swerve module motor, that are all updated at once.
+ *
+ * <p>Each controller behaves exactly like a {@link MiniPID} with the same configuration, but the
+ * gains and state of all of them are kept in one array per field instead of one object per
+ * controller. {@link #getOutputs} then updates every controller in a single loop over those arrays,
+ * which keeps the data together in the cache.
+ *
+ * <p>Controllers are addressed by their index, from 0 to {@link #size()} - 1. The configuration
+ * methods have the same meaning as the {@link MiniPID} methods of the same name.
+ */
+public class PidBank {
+  private final int size;
+
+  private final double[] deadband;
+  private final double[] p;
+  private final double[] i;
+  private final double[] d;
+  private final double[] f;
+  private final double[] maxIOutput;
+  private final double[] maxError;
+  private final double[] errorSum;
+  private final double[] maxOutput;
+  private final double[] minOutput;
+  private final double[] setpoint;
+  private final double[] lastActual;
+  private final boolean[] firstRun;
+  private final boolean[] reversed;
+  private final double[] outputRampRate;
+  private final double[] lastOutput;
+  private final double[] outputFilter;
+  private final double[] setpointRange;
+
+  // one-element arrays so a single controller can be updated by the same loop as all of them
+  private final double[] singleActual = new double[1];
+  private final double[] singleSetpoint = new double[1];
+  private final double[] singleOutput = new double[1];
+
+  /**
+   * Creates a bank of controllers that all have the same gains.
+   *
+   * @param size the number of controllers
+   * @param p proportional gain
+   * @param i integral gain
+   * @param d derivative gain
+   * @param f feed-forward gain
+   */
+  public PidBank(int size, double p, double i, double d, double f) {
+    this(size);
+    for (int k = 0; k < size; k++) {
+      setPID(k, p, i, d, f);
+    }
+  }
+
+  /**
+   * Creates a bank of controllers with all gains zero.
+   *
+   * @param size the number of controllers
+   */
+  public PidBank(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("size must not be negative");
+    }
+    this.size = size;
+    deadband = new double[size];
+    p = new double[size];
+    i = new double[size];
+    d = new double[size];
+    f = new double[size];
+    maxIOutput = new double[size];
+    maxError = new double[size];
+    errorSum = new double[size];
+    maxOutput = new double[size];
+    minOutput = new double[size];
+    setpoint = new double[size];
+    lastActual = new double[size];
+    firstRun = new boolean[size];
+    reversed = new boolean[size];
+    outputRampRate = new double[size];
+    lastOutput = new double[size];
+    outputFilter = new double[size];
+    setpointRange = new double[size];
+    Arrays.fill(firstRun, true);
+  }
+
+  /** Returns the number of controllers. */
+  public int size() {
+    return size;
+  }
+
+  // **********************************
+  // Configuration functions
+  // **********************************
+
+  /**
+   * Configures the gains of a controller.
+   *
+   * @param index the controller
+   * @param p proportional gain
+   * @param i integral gain
+   * @param d derivative gain
+   * @param f feed-forward gain
+   * @see MiniPID#setPID(double, double, double, double)
+   */
+  public void setPID(int index, double p, double i, double d, double f) {
+    this.p[index] = p;
+    this.d[index] = d;
+    this.f[index] = f;
+    setI(index, i);
+  }
+
+  /**
+   * @see MiniPID#setP(double)
+   */
+  public void setP(int index, double p) {
+    this.p[index] = p;
+    checkSigns(index);
+  }
+
+  /**
+   * @see MiniPID#setI(double)
+   */
+  public void setI(int index, double i) {
+    if (this.i[index] != 0) {
+      errorSum[index] = errorSum[index] * this.i[index] / i;
+    }
+    if (maxIOutput[index] != 0) {
+      maxError[index] = maxIOutput[index] / i;
+    }
+    this.i[index] = i;
+    checkSigns(index);
+  }
+
+  /**
+   * @see MiniPID#setD(double)
+   */
+  public void setD(int index, double d) {
+    this.d[index] = d;
+    checkSigns(index);
+  }
+
+  /**
+   * @see MiniPID#setF(double)
+   */
+  public void setF(int index, double f) {
+    this.f[index] = f;
+    checkSigns(index);
+  }
+
+  /**
+   * @see MiniPID#setDeadband(double)
+   */
+  public void setDeadband(int index, double deadband) {
+    this.deadband[index] = deadband;
+  }
+
+  /**
+   * @see MiniPID#setMaxIOutput(double)
+   */
+  public void setMaxIOutput(int index, double maximum) {
+    maxIOutput[index] = maximum;
+    if (i[index] != 0) {
+      maxError[index] = maximum / i[index];
+    }
+  }
+
+  /**
+   * @see MiniPID#setOutputLimits(double)
+   */
+  public void setOutputLimits(int index, double output) {
+    setOutputLimits(index, -output, output);
+  }
+
+  /**
+   * @see MiniPID#setOutputLimits(double, double)
+   */
+  public void setOutputLimits(int index, double minimum, double maximum) {
+    if (maximum < minimum) {
+      return;
+    }
+    maxOutput[index] = maximum;
+    minOutput[index] = minimum;
+    if (maxIOutput[index] == 0 || maxIOutput[index] > (maximum - minimum)) {
+      setMaxIOutput(index, maximum - minimum);
+    }
+  }
+
+  /**
+   * @see MiniPID#setDirection(boolean)
+   */
+  public void setDirection(int index, boolean reversed) {
+    this.reversed[index] = reversed;
+  }
+
+  /**
+   * @see MiniPID#setOutputRampRate(double)
+   */
+  public void setOutputRampRate(int index, double rate) {
+    outputRampRate[index] = rate;
+  }
+
+  /**
+   * @see MiniPID#setSetpointRange(double)
+   */
+  public void setSetpointRange(int index, double range) {
+    setpointRange[index] = range;
+  }
+
+  /**
+   * @see MiniPID#setOutputFilter(double)
+   */
+  public void setOutputFilter(int index, double strength) {
+    if (strength == 0 || bounded(strength, 0, 1)) {
+      outputFilter[index] = strength;
+    }
+  }
+
+  /**
+   * @see MiniPID#setSetpoint(double)
+   */
+  public void setSetpoint(int index, double setpoint) {
+    this.setpoint[index] = setpoint;
+  }
+
+  // **********************************
+  // Primary operating functions
+  // **********************************
+
+  /**
+   * Calculates the output of every controller for the current cycle.
+   *
+   * <p>Doesn't allocate. The arrays may be longer than the number of controllers, and {@code out}
+   * may be the same array as one of the inputs.
+   *
+   * @param actuals the monitored value of each controller, typically a sensor input
+   * @param setpoints the target value of each controller
+   * @param out array that receives the output of each controller
+   */
+  public void getOutputs(double[] actuals, double[] setpoints, double[] out) {
+    calculate(0, size, actuals, setpoints, out, 0);
+  }
+
+  /**
+   * Calculates the output of one controller for the current cycle.
+   *
+   * @param index the controller
+   * @param actual the monitored value, typically a sensor input
+   * @param setpoint the target value
+   * @return the output
+   * @see MiniPID#getOutput(double, double)
+   */
+  public double getOutput(int index, double actual, double setpoint) {
+    singleActual[0] = actual;
+    singleSetpoint[0] = setpoint;
+    calculate(index, index + 1, singleActual, singleSetpoint, singleOutput, index);
+    return singleOutput[0];
+  }
+
+  /**
+   * The body of {@link MiniPID#getOutput(double, double)}, on the arrays, for controllers {@code
+   * from} to {@code to} - 1. Controller k reads and writes element k - {@code offset} of the
+   * actual, setpoint and output arrays.
+   *
+   * <p>The whole update is written out in the loop, rather than calling a method per controller,
+   * because the JIT won't inline a method this large and the loop would lose most of its speed.
+   */
+  private void calculate(
+      int from, int to, double[] actuals, double[] setpoints, double[] out, int offset) {
+    for (int k = from; k < to; k++) {
+      double actual = actuals[k - offset];
+      double setpoint = setpoints[k - offset];
+      this.setpoint[k] = setpoint;
+
+      // Ramp the setpoint used for calculations if user has opted to do so
+      double range = setpointRange[k];
+      if (range != 0) {
+        setpoint = constrain(setpoint, actual - range, actual + range);
+      }
+
+      double error = setpoint - actual;
+      double fOutput = f[k] * setpoint;
+      double pOutput = p[k] * error;
+
+      if (firstRun[k]) {
+        lastActual[k] = actual;
+        lastOutput[k] = pOutput + fOutput;
+        firstRun[k] = false;
+      }
+
+      double dOutput = -d[k] * (actual - lastActual[k]);
+      lastActual[k] = actual;
+
+      double iOutput = i[k] * errorSum[k];
+      double maxI = maxIOutput[k];
+      if (maxI != 0) {
+        iOutput = constrain(iOutput, -maxI, maxI);
+      }
+
+      double output = fOutput + pOutput + iOutput + dOutput;
+
+      // windup prevention, see MiniPID
+      double min = minOutput[k];
+      double max = maxOutput[k];
+      double ramp = outputRampRate[k];
+      double last = lastOutput[k];
+      if (min != max && !bounded(output, min, max)) {
+        errorSum[k] = error;
+      } else if (ramp != 0 && !bounded(output, last - ramp, last + ramp)) {
+        errorSum[k] = error;
+      } else if (maxI != 0) {
+        errorSum[k] = constrain(errorSum[k] + error, -maxError[k], maxError[k]);
+      } else {
+        errorSum[k] += error;
+      }
+
+      if (ramp != 0) {
+        output = constrain(output, last - ramp, last + ramp);
+      }
+      if (min != max) {
+        output = constrain(output, min, max);
+      }
+      double filter = outputFilter[k];
+      if (filter != 0) {
+        output = last * filter + output * (1 - filter);
+      }
+      if (Math.abs(error) < deadband[k]) {
+        output = 0;
+      }
+      lastOutput[k] = output;
+      out[k - offset] = output;
+    }
+  }
+
+  /**
+   * Resets one controller, erasing its I term buildup and removing D gain on the next cycle.
+   *
+   * @param index the controller
+   * @see MiniPID#reset()
+   */
+  public void reset(int index) {
+    firstRun[index] = true;
+    errorSum[index] = 0;
+  }
+
+  /** Resets every controller. */
+  public void reset() {
+    for (int k = 0; k < size; k++) {
+      reset(k);
+    }
+  }
+
+  // **************************************
+  // Helper functions
+  // **************************************
+
+  private static double constrain(double value, double min, double max) {
+    if (value > max) {
+      return max;
+    }
+    return Math.max(value, min);
+  }
+
+  private static boolean bounded(double value, double min, double max) {
+    return (min < value) && (value < max);
+  }
+
+  /** All gains of a controller need the same sign, which depends on its direction. */
+  private void checkSigns(int k) {
+    if (reversed[k]) {
+      if (p[k] > 0) p[k] *= -1;
+      if (i[k] > 0) i[k] *= -1;
+      if (d[k] > 0) d[k] *= -1;
+      if (f[k] > 0) f[k] *= -1;
+    } else {
+      if (p[k] < 0) p[k] *= -1;
+      if (i[k] < 0) i[k] *= -1;
+      if (d[k] < 0) d[k] *= -1;
+      if (f[k] < 0) f[k] *= -1;
+    }
+  }
+}
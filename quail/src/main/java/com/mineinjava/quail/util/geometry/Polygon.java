@@ -0,0 +1,251 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package com.mineinjava.quail.util.geometry;
+
+import java.util.List;
+
+/**
+ * Represents a simple (non self-intersecting) polygon, usually a field obstacle.
+ *
+ * <p>Vertices are stored as primitive coordinate arrays so that the intersection tests used by the
+ * planners do not allocate. Vertices may be given in either winding order.
+ */
+public class Polygon {
+  private static final double EPSILON = 1e-9;
+
+  private final double[] xs;
+  private final double[] ys;
+
+  /**
+   * Creates a polygon from the x and y coordinates of its vertices.
+   *
+   * @param xs x coordinates of the vertices, in order
+   * @param ys y coordinates of the vertices, in order
+   * @throws IllegalArgumentException if fewer than 3 vertices are given or the arrays differ in
+   *     length
+   */
+  public Polygon(double[] xs, double[] ys) {
+    if (xs.length != ys.length) {
+      throw new IllegalArgumentException("xs and ys must have the same length.");
+    }
+    if (xs.length < 3) {
+      throw new IllegalArgumentException("Polygon must have at least 3 vertices.");
+    }
+    this.xs = xs.clone();
+    this.ys = ys.clone();
+  }
+
+  /**
+   * Creates a polygon from a list of vertices.
+   *
+   * @param vertices the vertices of the polygon, in order
+   */
+  public Polygon(List<Vec2d> vertices) {
+    this(toXs(vertices), toYs(vertices));
+  }
+
+  /**
+   * Creates an axis-aligned rectangle.
+   *
+   * @param minX the smallest x coordinate
+   * @param minY the smallest y coordinate
+   * @param maxX the largest x coordinate
+   * @param maxY the largest y coordinate
+   * @return the rectangle, wound counterclockwise
+   */
+  public static Polygon rectangle(double minX, double minY, double maxX, double maxY) {
+    return new Polygon(
+        new double[] {minX, maxX, maxX, minX}, new double[] {minY, minY, maxY, maxY});
+  }
+
+  /** Returns the number of vertices. */
+  public int size() {
+    return xs.length;
+  }
+
+  /** Returns the x coordinate of the vertex at the specified index. */
+  public double getX(int index) {
+    return xs[index];
+  }
+
+  /** Returns the y coordinate of the vertex at the specified index. */
+  public double getY(int index) {
+    return ys[index];
+  }
+
+  /** Returns the vertex at the specified index. */
+  public Vec2d getVertex(int index) {
+    return new Vec2d(xs[index], ys[index]);
+  }
+
+  /**
+   * Returns the signed area of the polygon.
+   *
+   * @return the area, positive if the vertices are wound counterclockwise
+   */
+  public double signedArea() {
+    double area = 0;
+    for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+      area += xs[j] * ys[i] - xs[i] * ys[j];
+    }
+    return area / 2;
+  }
+
+  /**
+   * Grows the polygon outwards by the specified distance.
+   *
+   * <p>Every edge is pushed out by {@code radius} and each vertex is moved to the intersection of
+   * its two offset edges (a mitered offset). The result always contains every point within {@code
+   * radius} of a convex polygon, which makes it suitable for inflating obstacles by the robot's
+   * radius. Strongly concave polygons should be split into convex pieces first.
+   *
+   * @param radius the distance to grow the polygon by (your units)
+   * @return a new, inflated polygon
+   */
+  public Polygon inflate(double radius) {
+    int n = xs.length;
+    double[] newXs = new double[n];
+    double[] newYs = new double[n];
+    // outward normals are on the right of each edge for ccw polygons and on the left for cw ones
+    double side = signedArea() >= 0 ? 1 : -1;
+
+    for (int i = 0; i < n; i++) {
+      int prev = (i + n - 1) % n;
+      int next = (i + 1) % n;
+
+      // unit outward normals of the incoming and outgoing edges
+      double inX = xs[i] - xs[prev];
+      double inY = ys[i] - ys[prev];
+      double inLength = Math.hypot(inX, inY);
+      double n1x = side * inY / inLength;
+      double n1y = -side * inX / inLength;
+
+      double outX = xs[next] - xs[i];
+      double outY = ys[next] - ys[i];
+      double outLength = Math.hypot(outX, outY);
+      double n2x = side * outY / outLength;
+      double n2y = -side * outX / outLength;
+
+      // the miter direction is the bisector of the normals, scaled so both edges move by radius
+      double bisectorX = n1x + n2x;
+      double bisectorY = n1y + n2y;
+      double cosine = 1 + n1x * n2x + n1y * n2y;
+      if (cosine < 1e-9) {
+        // edges fold back onto each other, fall back to the incoming normal
+        newXs[i] = xs[i] + n1x * radius;
+        newYs[i] = ys[i] + n1y * radius;
+      } else {
+        newXs[i] = xs[i] + bisectorX * radius / cosine;
+        newYs[i] = ys[i] + bisectorY * radius / cosine;
+      }
+    }
+    return new Polygon(newXs, newYs);
+  }
+
+  /**
+   * Checks if a point is strictly inside the polygon.
+   *
+   * <p>Uses the even-odd (ray crossing) rule. Points exactly on an edge may be reported either way.
+   *
+   * @param x x coordinate of the point
+   * @param y y coordinate of the point
+   * @return true if the point is inside the polygon
+   */
+  public boolean contains(double x, double y) {
+    boolean inside = false;
+    for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+      if ((ys[i] > y) != (ys[j] > y)
+          && x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i]) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * Checks if the segment between two points passes through the interior of the polygon.
+   *
+   * <p>Segments that only touch the boundary (for example, an edge of the polygon itself, or a
+   * segment grazing a vertex) are not considered blocked.
+   *
+   * @return true if the segment crosses the polygon
+   */
+  public boolean blocksSegment(double x0, double y0, double x1, double y1) {
+    double dx = x1 - x0;
+    double dy = y1 - y0;
+    double lengthSquared = dx * dx + dy * dy;
+    // range of the segment (as a fraction of its length) where it touches the polygon's vertices
+    double tMin = 1;
+    double tMax = 0;
+    for (int i = 0, j = xs.length - 1; i < xs.length; j = i++) {
+      if (segmentsCross(x0, y0, x1, y1, xs[j], ys[j], xs[i], ys[i])) {
+        return true;
+      }
+      if (lengthSquared > 0 && Math.abs(orientation(x0, y0, x1, y1, xs[i], ys[i])) < EPSILON) {
+        double t = ((xs[i] - x0) * dx + (ys[i] - y0) * dy) / lengthSquared;
+        if (t > 0 && t < 1) {
+          tMin = Math.min(tMin, t);
+          tMax = Math.max(tMax, t);
+        }
+      }
+    }
+    // a segment through vertices (such as a diagonal) crosses no edge but can still be inside
+    if (tMin > tMax) {
+      return contains(x0 + dx / 2, y0 + dy / 2);
+    }
+    return contains(x0 + dx * tMin / 2, y0 + dy * tMin / 2)
+        || (tMax > tMin && contains(x0 + dx * (tMin + tMax) / 2, y0 + dy * (tMin + tMax) / 2))
+        || contains(x0 + dx * (1 + tMax) / 2, y0 + dy * (1 + tMax) / 2);
+  }
+
+  /** Returns true if segment a-b and segment c-d properly cross (touching does not count). */
+  private static boolean segmentsCross(
+      double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+    double d1 = orientation(cx, cy, dx, dy, ax, ay);
+    double d2 = orientation(cx, cy, dx, dy, bx, by);
+    double d3 = orientation(ax, ay, bx, by, cx, cy);
+    double d4 = orientation(ax, ay, bx, by, dx, dy);
+    return ((d1 > EPSILON && d2 < -EPSILON) || (d1 < -EPSILON && d2 > EPSILON))
+        && ((d3 > EPSILON && d4 < -EPSILON) || (d3 < -EPSILON && d4 > EPSILON));
+  }
+
+  /** Twice the signed area of triangle a-b-c, positive if counterclockwise. */
+  private static double orientation(
+      double ax, double ay, double bx, double by, double cx, double cy) {
+    return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+  }
+
+  private static double[] toXs(List<Vec2d> vertices) {
+    double[] xs = new double[vertices.size()];
+    for (int i = 0; i < xs.length; i++) {
+      xs[i] = vertices.get(i).x;
+    }
+    return xs;
+  }
+
+  private static double[] toYs(List<Vec2d> vertices) {
+    double[] ys = new double[vertices.size()];
+    for (int i = 0; i < ys.length; i++) {
+      ys[i] = vertices.get(i).y;
+    }
+    return ys;
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.DifferentialSwerveModuleBase;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class DifferentialSwerveModuleBaseTest {
+
+  @Test
+  void forwardUndoesInverse() {
+    DifferentialSwerveModuleBase module = new DifferentialSwerveModuleBase(new Vec2d(1, 1), 3, 5);
+    double[] motors = module.calculateMotorSpeeds(2, -7);
+    double[] speeds = new double[2];
+    module.calculateModuleSpeeds(motors[0], motors[1], speeds, 0);
+    assertEquals(2, speeds[0], 1e-12);
+    assertEquals(-7, speeds[1], 1e-12);
+  }
+
+  @Test
+  void angleMatchesRotationSpeed() {
+    DifferentialSwerveModuleBase module = new DifferentialSwerveModuleBase(new Vec2d(1, 1), 3, 5);
+    // running the motors for one second turns the pod by its rotation speed
+    double[] motors = module.calculateMotorSpeeds(0.4, 2);
+    assertEquals(0.4, module.calculatePodAngle(motors[0], motors[1]), 1e-12);
+  }
+
+  @Test
+  void batchMatchesSingleModules() {
+    List<DifferentialSwerveModuleBase> modules =
+        Arrays.asList(
+            new DifferentialSwerveModuleBase(new Vec2d(1, 1), 3, 5),
+            new DifferentialSwerveModuleBase(new Vec2d(-1, 1), 2, 4),
+            new DifferentialSwerveModuleBase(new Vec2d(0, -1), 1.5, 6));
+    double[] rotationSpeeds = {0.5, -1, 2};
+    double[] wheelSpeeds = {3, 0, -2};
+    double[] motorSpeeds = new double[6];
+    DifferentialSwerveModuleBase.calculateMotorSpeeds(
+        modules, rotationSpeeds, wheelSpeeds, motorSpeeds);
+    for (int i = 0; i < 3; i++) {
+      double[] single = modules.get(i).calculateMotorSpeeds(rotationSpeeds[i], wheelSpeeds[i]);
+      assertEquals(single[0], motorSpeeds[2 * i], 0);
+      assertEquals(single[1], motorSpeeds[2 * i + 1], 0);
+    }
+
+    double[] rotationBack = new double[3];
+    double[] wheelBack = new double[3];
+    DifferentialSwerveModuleBase.calculateModuleSpeeds(
+        modules, motorSpeeds, rotationBack, wheelBack);
+    assertArrayEquals(rotationSpeeds, rotationBack, 1e-12);
+    assertArrayEquals(wheelSpeeds, wheelBack, 1e-12);
+  }
+}
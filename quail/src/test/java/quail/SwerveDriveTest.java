@@ -0,0 +1,371 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.AsyncModuleOutput;
+import com.mineinjava.quail.DesaturationMode;
+import com.mineinjava.quail.ModuleOutputBatch;
+import com.mineinjava.quail.RobotMovement;
+import com.mineinjava.quail.SwerveDrive;
+import com.mineinjava.quail.util.MathUtil;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import quail.SwerveModuleBaseTest.RecordingModule;
+
+public class SwerveDriveTest {
+
+  private static SwerveDrive<RecordingModule> drive() {
+    List<RecordingModule> modules =
+        Arrays.asList(
+            new RecordingModule(new Vec2d(1, 1)),
+            new RecordingModule(new Vec2d(-1, 1)),
+            new RecordingModule(new Vec2d(-1, -1)),
+            new RecordingModule(new Vec2d(1, -1)));
+    return new SwerveDrive<>(modules, 2);
+  }
+
+  @Test
+  void batchMatchesPerModuleWrites() {
+    SwerveDrive<RecordingModule> direct = drive();
+    SwerveDrive<RecordingModule> batched = drive();
+    double[][] committed = new double[2][];
+    batched.setOutputBatch(
+        (angles, speeds, count) -> {
+          committed[0] = Arrays.copyOf(angles, count);
+          committed[1] = Arrays.copyOf(speeds, count);
+        });
+
+    RobotMovement[] movements = {
+      new RobotMovement(0.5, new Vec2d(1, 0.3)),
+      new RobotMovement(-1, new Vec2d(-0.8, 0.2)),
+      new RobotMovement(0, new Vec2d(0, -1))
+    };
+    for (RobotMovement movement : movements) {
+      direct.move(movement, 0.2);
+      batched.move(movement, 0.2);
+      for (int i = 0; i < 4; i++) {
+        assertEquals(direct.swerveModules.get(i).angle, committed[0][i], 1e-12);
+        assertEquals(direct.swerveModules.get(i).speed, committed[1][i], 1e-12);
+        // nothing is written to the modules themselves
+        assertEquals(0, batched.swerveModules.get(i).angleWrites);
+      }
+    }
+  }
+
+  @Test
+  void asyncOutputWritesLatestCommit() throws InterruptedException {
+    double[] written = new double[4];
+    CountDownLatch latch = new CountDownLatch(1);
+    AsyncModuleOutput output =
+        new AsyncModuleOutput(
+            (angles, speeds, count) -> {
+              System.arraycopy(speeds, 0, written, 0, count);
+              if (speeds[0] == 3) {
+                latch.countDown();
+              }
+            });
+    try (output) {
+      assertThrows(IllegalStateException.class, () -> output.commit(written, written, 4));
+      output.start();
+      for (int k = 1; k <= 3; k++) {
+        double[] speeds = {k, k, k, k};
+        output.commit(new double[4], speeds, 4);
+      }
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+      assertEquals(3, written[3]);
+    }
+    // every commit was either written or replaced by a newer one
+    assertEquals(3, output.getWriteCount() + output.getDroppedCount());
+  }
+
+  @Test
+  void asyncOutputDropsPendingOnStop() throws InterruptedException {
+    List<Double> written = new CopyOnWriteArrayList<>();
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch restarted = new CountDownLatch(1);
+    AsyncModuleOutput output =
+        new AsyncModuleOutput(
+            (angles, speeds, count) -> {
+              written.add(speeds[0]);
+              writing.countDown();
+              if (speeds[0] == 3) {
+                restarted.countDown();
+              }
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    output.start();
+    output.commit(new double[1], new double[] {1}, 1);
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+    // pending while the writer is busy, then stopped before it is written
+    output.commit(new double[1], new double[] {2}, 1);
+    Thread stopper = new Thread(output::stop);
+    stopper.start();
+    while (output.isRunning()) {
+      Thread.onSpinWait();
+    }
+    release.countDown();
+    stopper.join();
+
+    output.start();
+    Thread.sleep(50);
+    output.commit(new double[1], new double[] {3}, 1);
+    assertTrue(restarted.await(5, TimeUnit.SECONDS));
+    output.close();
+    assertEquals(Arrays.asList(1.0, 3.0), written);
+  }
+
+  @Test
+  void asyncOutputKeepsCommitOverload() throws InterruptedException {
+    CountDownLatch withoutRates = new CountDownLatch(1);
+    CountDownLatch withRates = new CountDownLatch(1);
+    AsyncModuleOutput output =
+        new AsyncModuleOutput(
+            new ModuleOutputBatch() {
+              @Override
+              public void commit(double[] angles, double[] speeds, int count) {
+                withoutRates.countDown();
+              }
+
+              @Override
+              public void commit(
+                  double[] angles, double[] angularVelocities, double[] speeds, int count) {
+                assertNotNull(angularVelocities);
+                withRates.countDown();
+              }
+            });
+    try (output) {
+      output.start();
+      output.commit(new double[4], new double[4], 4);
+      assertTrue(withoutRates.await(5, TimeUnit.SECONDS));
+      assertEquals(1, withRates.getCount());
+      output.commit(new double[4], new double[4], new double[4], 4);
+      assertTrue(withRates.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  private static double fastestModule(SwerveDrive<RecordingModule> drive, RobotMovement movement) {
+    double fastest = 0;
+    for (Vec2d vector : drive.calculateMoveAngles(movement.translation, movement.rotation, 0.3)) {
+      fastest = Math.max(fastest, vector.getLength());
+    }
+    return fastest;
+  }
+
+  @Test
+  void rotationPriorityKeepsRotation() {
+    SwerveDrive<RecordingModule> drive = drive();
+    RobotMovement movement = new RobotMovement(1, new Vec2d(2, 1));
+    RobotMovement result = drive.desaturate(movement, 0.3, 2, DesaturationMode.ROTATION_PRIORITY);
+    assertEquals(1, result.rotation, 1e-12);
+    assertEquals(movement.translation.getAngle(), result.translation.getAngle(), 1e-12);
+    assertTrue(result.translation.getLength() < movement.translation.getLength());
+    // the fastest module is exactly at the limit
+    assertEquals(2, fastestModule(drive, result), 1e-9);
+
+    // uniform scaling slows the rotation down too
+    RobotMovement uniform = drive.desaturate(movement, 0.3, 2, DesaturationMode.UNIFORM);
+    assertTrue(uniform.rotation < 1);
+    assertEquals(2, fastestModule(drive, uniform), 1e-9);
+
+    // a rotation faster than the modules allows leaves no translation
+    RobotMovement spin =
+        drive.desaturate(
+            new RobotMovement(3, new Vec2d(1, 0)), 0, 2, DesaturationMode.ROTATION_PRIORITY);
+    assertEquals(2 / Math.sqrt(2), spin.rotation, 1e-12);
+    assertEquals(2, fastestModule(drive, spin), 1e-9);
+  }
+
+  @Test
+  void translationPriorityKeepsTranslation() {
+    SwerveDrive<RecordingModule> drive = drive();
+    RobotMovement movement = new RobotMovement(-1.5, new Vec2d(1.2, -0.4));
+    RobotMovement result =
+        drive.desaturate(movement, 0.3, 2, DesaturationMode.TRANSLATION_PRIORITY);
+    assertEquals(movement.translation.x, result.translation.x, 1e-12);
+    assertEquals(movement.translation.y, result.translation.y, 1e-12);
+    assertTrue(result.rotation < 0 && result.rotation > -1.5);
+    assertEquals(2, fastestModule(drive, result), 1e-9);
+
+    // possible movements are left alone
+    RobotMovement slow = new RobotMovement(0.2, new Vec2d(0.5, 0));
+    assertSame(slow, drive.desaturate(slow, 0.3, 2, DesaturationMode.TRANSLATION_PRIORITY));
+  }
+
+  @Test
+  void moveUsesDesaturationMode() {
+    SwerveDrive<RecordingModule> drive = drive();
+    drive.setDesaturationMode(DesaturationMode.ROTATION_PRIORITY);
+    drive.move(new RobotMovement(1.2, new Vec2d(3, 0)), 0);
+    double fastest = 0;
+    for (RecordingModule module : drive.swerveModules) {
+      fastest = Math.max(fastest, Math.abs(module.speed));
+    }
+    assertEquals(2, fastest, 1e-9);
+  }
+
+  @Test
+  void steeringRatesMatchFiniteDifference() {
+    SwerveDrive<RecordingModule> drive = drive();
+    Vec2d translation = new Vec2d(1.2, -0.5);
+    Vec2d acceleration = new Vec2d(-0.7, 0.9);
+    double rotation = 0.8;
+    double angularAcceleration = -1.5;
+    double heading = 0.4;
+
+    double[] rates = new double[4];
+    drive.calculateSteeringRates(
+        new RobotMovement(rotation, translation),
+        new RobotMovement(angularAcceleration, acceleration),
+        -heading,
+        rates);
+
+    double h = 1e-5;
+    Vec2d[][] vectors = new Vec2d[2][];
+    for (int side = 0; side < 2; side++) {
+      double t = side == 0 ? -h : h;
+      vectors[side] =
+          drive.calculateMoveAngles(
+              translation.add(acceleration.scale(t)),
+              rotation + angularAcceleration * t,
+              -(heading + rotation * t + angularAcceleration * t * t / 2));
+    }
+    for (int i = 0; i < 4; i++) {
+      double change =
+          MathUtil.deltaAngle(vectors[0][i].getAngle(), vectors[1][i].getAngle()) / (2 * h);
+      assertEquals(change, rates[i], 1e-5);
+    }
+  }
+
+  @Test
+  void steeringRatesFadeNearStop() {
+    SwerveDrive<RecordingModule> drive = drive();
+    // barely moving while accelerating sideways would turn the modules at 1e4 rad/s
+    RobotMovement movement = new RobotMovement(0, new Vec2d(1e-4, 0));
+    RobotMovement acceleration = new RobotMovement(0, new Vec2d(0, 1));
+    double[] rates = new double[4];
+    drive.calculateSteeringRates(movement, acceleration, 0, rates);
+    for (double rate : rates) {
+      assertEquals(1e-4 / (0.1 * 0.1), rate, 1e-12);
+    }
+
+    drive.setMinFeedforwardSpeed(0);
+    drive.calculateSteeringRates(movement, acceleration, 0, rates);
+    assertEquals(1e4, rates[0], 1e-6);
+  }
+
+  @Test
+  void heldModulesGetNoFeedforward() {
+    double[] received = new double[4];
+    SwerveDrive<RecordingModule> batched = drive();
+    SwerveDrive<RecordingModule> direct = drive();
+    for (int i = 0; i < 4; i++) {
+      batched.swerveModules.get(i).setMinSteeringSpeed(0.05);
+      direct.swerveModules.get(i).setMinSteeringSpeed(0.05);
+    }
+    batched.setOutputBatch(
+        new ModuleOutputBatch() {
+          @Override
+          public void commit(double[] angles, double[] speeds, int count) {
+            fail("the feedforward was dropped");
+          }
+
+          @Override
+          public void commit(
+              double[] angles, double[] angularVelocities, double[] speeds, int count) {
+            System.arraycopy(angularVelocities, 0, received, 0, count);
+          }
+        });
+    // below the minimum steering speed, so every module keeps its angle
+    RobotMovement movement = new RobotMovement(0, new Vec2d(0.01, 0));
+    RobotMovement acceleration = new RobotMovement(0, new Vec2d(0, 1));
+    double[] rates = new double[4];
+    batched.calculateSteeringRates(movement, acceleration, 0, rates);
+    assertNotEquals(0, rates[0]);
+
+    batched.move(movement, acceleration, 0);
+    direct.move(movement, acceleration, 0);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(0, received[i]);
+      assertEquals(0, direct.swerveModules.get(i).angularVelocity);
+    }
+  }
+
+  @Test
+  void moveForwardsSteeringFeedforward() {
+    double[] received = new double[4];
+    SwerveDrive<RecordingModule> drive = drive();
+    drive.setOutputBatch(
+        new ModuleOutputBatch() {
+          @Override
+          public void commit(double[] angles, double[] speeds, int count) {
+            fail("the feedforward was dropped");
+          }
+
+          @Override
+          public void commit(
+              double[] angles, double[] angularVelocities, double[] speeds, int count) {
+            System.arraycopy(angularVelocities, 0, received, 0, count);
+          }
+        });
+    RobotMovement movement = new RobotMovement(0.5, new Vec2d(1, 0));
+    RobotMovement acceleration = new RobotMovement(0, new Vec2d(0, 1));
+    drive.move(movement, acceleration, 0);
+    double[] expected = new double[4];
+    drive.calculateSteeringRates(movement, acceleration, 0, expected);
+    assertArrayEquals(expected, received, 0);
+    assertNotEquals(0, expected[0]);
+
+    // modules without a batch get the same rates through set(Vec2d, double)
+    SwerveDrive<RecordingModule> direct = drive();
+    direct.move(movement, acceleration, 0);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(expected[i], direct.swerveModules.get(i).angularVelocity, 0);
+    }
+  }
+
+  @Test
+  void moduleStatesMatchMoveAngles() {
+    SwerveDrive<RecordingModule> drive = drive();
+    RobotMovement movement = new RobotMovement(1.5, new Vec2d(1.5, 0.5));
+    double[] angles = new double[4];
+    double[] speeds = new double[4];
+    drive.calculateModuleStates(movement, 0.3, angles, speeds);
+    Vec2d[] vectors =
+        drive.normalizeModuleVectors(
+            drive.calculateMoveAngles(movement.translation, movement.rotation, 0.3), 2);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(vectors[i].getLength(), speeds[i], 1e-9);
+      assertEquals(0, MathUtil.deltaAngle(vectors[i].getAngle(), angles[i]), 1e-9);
+    }
+  }
+}
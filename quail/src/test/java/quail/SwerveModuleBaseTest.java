@@ -0,0 +1,166 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.SwerveModuleBase;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import org.junit.jupiter.api.Test;
+
+public class SwerveModuleBaseTest {
+
+  static class RecordingModule extends SwerveModuleBase {
+    int angleWrites = 0;
+    int speedWrites = 0;
+    double angle;
+    double angularVelocity;
+    double speed;
+
+    RecordingModule() {
+      this(new Vec2d(1, 1));
+    }
+
+    RecordingModule(Vec2d position) {
+      super(position, 1, 1, true);
+    }
+
+    @Override
+    public void setRawAngle(double angle) {
+      angleWrites++;
+      this.angle = angle;
+    }
+
+    @Override
+    public void setRawAngle(double angle, double angularVelocity) {
+      this.angularVelocity = angularVelocity;
+      setRawAngle(angle);
+    }
+
+    @Override
+    public void setRawSpeed(double speed) {
+      speedWrites++;
+      this.speed = speed;
+    }
+  }
+
+  @Test
+  void forwardsEveryWriteByDefault() {
+    RecordingModule module = new RecordingModule();
+    for (int i = 0; i < 5; i++) {
+      module.set(new Vec2d(1, 0));
+    }
+    assertEquals(5, module.angleWrites);
+    assertEquals(5, module.speedWrites);
+    assertEquals(0, module.getSuppressedWriteCount());
+  }
+
+  @Test
+  void suppressesSmallChanges() {
+    RecordingModule module = new RecordingModule();
+    module.setWriteSuppression(0.01, 0.01, 0);
+    module.set(new Vec2d(1, 0));
+    module.set(new Vec2d(1.005, 0));
+    module.set(new Vec2d(1, 0.005));
+    assertEquals(1, module.angleWrites);
+    assertEquals(1, module.speedWrites);
+    assertEquals(4, module.getSuppressedWriteCount());
+
+    // small steps don't add up unnoticed, they are compared to the last value sent
+    module.set(new Vec2d(1.015, 0));
+    assertEquals(2, module.speedWrites);
+    assertEquals(1.015, module.speed, 1e-12);
+
+    module.resetWrites();
+    module.set(new Vec2d(1.015, 0));
+    assertEquals(2, module.angleWrites);
+    assertEquals(3, module.speedWrites);
+  }
+
+  @Test
+  void alwaysForwardsStop() {
+    RecordingModule module = new RecordingModule();
+    module.setWriteSuppression(0.01, 0.1, 0);
+    module.setSpeed(0.05);
+    module.setSpeed(0);
+    assertEquals(2, module.speedWrites);
+    assertEquals(0, module.speed);
+    module.setSpeed(0);
+    assertEquals(2, module.speedWrites);
+  }
+
+  @Test
+  void keepAliveResendsUnchangedValues() throws InterruptedException {
+    RecordingModule module = new RecordingModule();
+    module.setWriteSuppression(0.01, 0.01, 0.001);
+    module.setSpeed(0.5);
+    Thread.sleep(5);
+    module.setSpeed(0.5);
+    assertEquals(2, module.speedWrites);
+  }
+
+  @Test
+  void suppressesSmallFeedforwardChanges() throws InterruptedException {
+    RecordingModule module = new RecordingModule();
+    module.setWriteSuppression(0.01, 0.01, 0);
+    module.setAngle(0, 1);
+    // a feedforward that changes a little every loop doesn't force a write every loop
+    module.setAngle(0, 1 + 1e-6);
+    module.setAngle(0, 1 + 2e-6);
+    assertEquals(1, module.angleWrites);
+
+    Thread.sleep(20);
+    module.setAngle(0, 2);
+    assertEquals(2, module.angleWrites);
+    assertEquals(2, module.angularVelocity);
+  }
+
+  @Test
+  void skipsSteeringAtLowSpeed() {
+    RecordingModule module = new RecordingModule();
+    module.setMinSteeringSpeed(0.05);
+    module.set(new Vec2d(0, 1));
+    assertEquals(Math.PI / 2, module.angle, 1e-12);
+    module.set(new Vec2d(0.01, 0.01));
+    // without write suppression the held angle is still sent
+    assertEquals(2, module.angleWrites);
+    assertEquals(2, module.speedWrites);
+    assertEquals(Math.PI / 2, module.angle, 1e-12);
+    assertEquals(0, module.getSuppressedWriteCount());
+  }
+
+  @Test
+  void heldAngleGetsKeepAlive() throws InterruptedException {
+    RecordingModule module = new RecordingModule();
+    module.setMinSteeringSpeed(0.05);
+    module.setWriteSuppression(0.01, 0.01, 0.01);
+    module.set(new Vec2d(0, 1));
+    module.set(new Vec2d(0.01, 0.01), 3);
+    assertEquals(1, module.angleWrites);
+    assertEquals(1, module.getSuppressedWriteCount());
+
+    Thread.sleep(20);
+    module.set(new Vec2d(0.01, 0.01), 3);
+    assertEquals(2, module.angleWrites);
+    assertEquals(Math.PI / 2, module.angle, 1e-12);
+    assertEquals(0, module.angularVelocity);
+  }
+}
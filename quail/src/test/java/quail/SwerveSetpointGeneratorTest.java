@@ -0,0 +1,204 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.SwerveModuleBase;
+import com.mineinjava.quail.SwerveSetpointGenerator;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class SwerveSetpointGeneratorTest {
+  private static final double DT = 0.02;
+
+  private static SwerveSetpointGenerator generator() {
+    // 10 rad/s steering, 5 units/s^2 drive acceleration, 4 units/s top speed
+    return generator(10);
+  }
+
+  private static SwerveSetpointGenerator generator(double maxSteeringRate) {
+    List<SwerveModuleBase> modules =
+        Arrays.asList(
+            new SwerveModuleBase(new Vec2d(0.3, 0.3), 1, 1),
+            new SwerveModuleBase(new Vec2d(-0.3, 0.3), 1, 1),
+            new SwerveModuleBase(new Vec2d(-0.3, -0.3), 1, 1),
+            new SwerveModuleBase(new Vec2d(0.3, -0.3), 1, 1));
+    return new SwerveSetpointGenerator(modules, maxSteeringRate, 5, 4);
+  }
+
+  @Test
+  void feasibleMovementIsUnchanged() {
+    SwerveSetpointGenerator generator = generator();
+    generator.reset(1, 0.5, 0.2);
+    double[] out = new double[3];
+    generator.generate(1.05, 0.5, 0.2, DT, out);
+    assertArrayEquals(new double[] {1.05, 0.5, 0.2}, out, 1e-12);
+  }
+
+  @Test
+  void limitsAccelerationFromRest() {
+    SwerveSetpointGenerator generator = generator();
+    double[] out = new double[3];
+    generator.generate(0, 3, 0, DT, out);
+    // a stopped wheel may steer, but only speeds up by 5 * 0.02
+    assertEquals(0.1, out[1], 1e-3);
+    assertTrue(out[1] <= 0.1);
+    for (int step = 0; step < 100; step++) {
+      generator.generate(0, 3, 0, DT, out);
+    }
+    assertEquals(3, out[1], 1e-9);
+  }
+
+  @Test
+  void limitsSteeringRate() {
+    SwerveSetpointGenerator generator = generator();
+    generator.reset(2, 0, 0);
+    double[] before = new double[4];
+    double[] after = new double[4];
+    double[] speeds = new double[4];
+    double[] out = new double[3];
+    int steps = 0;
+    do {
+      generator.getModuleStates(before, speeds);
+      generator.generate(0, 2, 0, DT, out);
+      generator.getModuleStates(after, speeds);
+      for (int i = 0; i < 4; i++) {
+        assertTrue(Math.abs(after[i] - before[i]) <= 10 * DT + 1e-12);
+        assertEquals(Math.hypot(out[0], out[1]), Math.abs(speeds[i]), 1e-9);
+      }
+      steps++;
+    } while (out[1] < 2 && steps < 200);
+    assertArrayEquals(new double[] {0, 2, 0}, out, 1e-9);
+    // turning 90 degrees at 10 rad/s takes at least 8 loops
+    assertTrue(steps >= 8);
+  }
+
+  /** Asserts that no module steered faster than a rate limit. */
+  private static void assertSteeringLimited(double rate, double[] before, double[] after) {
+    for (int i = 0; i < before.length; i++) {
+      assertTrue(
+          Math.abs(after[i] - before[i]) <= rate * DT + 1e-9,
+          "module " + i + " turned by " + (after[i] - before[i]));
+    }
+  }
+
+  @Test
+  void randomMovementsRespectSteeringRate() {
+    Random random = new Random(50);
+    double[] before = new double[4];
+    double[] after = new double[4];
+    double[] speeds = new double[4];
+    double[] out = new double[3];
+    for (int trial = 0; trial < 20000; trial++) {
+      SwerveSetpointGenerator generator = generator(5);
+      generator.reset(
+          random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1, random.nextDouble() * 8 - 4);
+      for (int step = 0; step < 5; step++) {
+        generator.getModuleStates(before, speeds);
+        generator.generate(
+            random.nextDouble() * 2 - 1,
+            random.nextDouble() * 2 - 1,
+            random.nextDouble() * 8 - 4,
+            DT,
+            out);
+        generator.getModuleStates(after, speeds);
+        assertSteeringLimited(5, before, after);
+      }
+    }
+  }
+
+  @Test
+  void acceptedModulesAreRechecked() {
+    // module 1 can follow the whole way, but not the smaller fraction another module allows
+    SwerveSetpointGenerator generator = generator(5);
+    generator.reset(0.236, 0.277, 0.771);
+    double[] before = new double[4];
+    double[] after = new double[4];
+    double[] speeds = new double[4];
+    generator.getModuleStates(before, speeds);
+    generator.generate(0.905, -0.616, 3.467, DT, new double[3]);
+    generator.getModuleStates(after, speeds);
+    assertSteeringLimited(5, before, after);
+  }
+
+  @Test
+  void startsFromMeasuredModuleStates() {
+    SwerveSetpointGenerator generator = generator();
+    // standing still in an X, then driving forwards
+    double[] angles = {Math.PI / 4, -Math.PI / 4, Math.PI / 4, -Math.PI / 4};
+    double[] speeds = new double[4];
+    generator.reset(0, 0, 0, angles, speeds);
+    double[] before = new double[4];
+    double[] after = new double[4];
+    double[] out = new double[3];
+    generator.getModuleStates(before, speeds);
+    assertArrayEquals(angles, before, 0);
+
+    // stopped wheels steer freely, but moving ones keep to the limit
+    generator.generate(1, 0, 0, DT, out);
+    generator.getModuleStates(after, speeds);
+    assertArrayEquals(new double[4], after, 1e-12);
+
+    // moving wheels whose measured angles don't match the movement are turned at the limit
+    generator.reset(1, 0, 0, new double[] {0.5, 0, 0, 0}, new double[] {1, 1, 1, 1});
+    generator.getModuleStates(before, speeds);
+    generator.generate(1, 0, 0, DT, out);
+    generator.getModuleStates(after, speeds);
+    assertSteeringLimited(10, before, after);
+    assertEquals(0.5 - 10 * DT, after[0], 1e-12);
+  }
+
+  @Test
+  void reversesByFlippingTheWheel() {
+    SwerveSetpointGenerator generator = generator();
+    generator.reset(1, 0, 0);
+    double[] angles = new double[4];
+    double[] speeds = new double[4];
+    double[] out = new double[3];
+    for (int step = 0; step < 40; step++) {
+      generator.generate(-1, 0, 0, DT, out);
+    }
+    assertArrayEquals(new double[] {-1, 0, 0}, out, 1e-9);
+    generator.getModuleStates(angles, speeds);
+    for (int i = 0; i < 4; i++) {
+      // still pointing forwards, driving backwards
+      assertEquals(0, angles[i], 1e-12);
+      assertEquals(-1, speeds[i], 1e-9);
+    }
+  }
+
+  @Test
+  void desaturatesDesiredMovement() {
+    SwerveSetpointGenerator generator = generator();
+    generator.reset(3, 0, 0);
+    double[] out = new double[3];
+    generator.generate(10, 0, 0, DT, out);
+    assertEquals(3.1, out[0], 1e-3);
+    for (int step = 0; step < 50; step++) {
+      generator.generate(10, 0, 0, DT, out);
+    }
+    assertEquals(4, out[0], 1e-9);
+  }
+}
@@ -0,0 +1,128 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.localization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.localization.AsyncOdometryRunner;
+import com.mineinjava.quail.localization.PoseSample;
+import com.mineinjava.quail.localization.SwerveOdometry;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import org.junit.jupiter.api.Test;
+
+public class AsyncOdometryRunnerTest {
+
+  static SwerveOdometry odometry() {
+    return new SwerveOdometry(new Vec2d[] {new Vec2d(1, 1), new Vec2d(-1, -1)});
+  }
+
+  /** Waits until the runner has done some more updates. */
+  static void waitForSamples(AsyncOdometryRunner runner, long samples) throws InterruptedException {
+    long target = runner.getSampleCount() + samples;
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    while (runner.getSampleCount() < target && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  void publishesPoses() throws InterruptedException {
+    SwerveOdometry odometry = odometry();
+    try (AsyncOdometryRunner runner =
+        new AsyncOdometryRunner(odometry, () -> odometry.updateDeltaOdometry(1, 0, 0), 500)) {
+      assertEquals(new Pose2d(), runner.getPose());
+      runner.start();
+      waitForSamples(runner, 20);
+      assertTrue(runner.getPose().x >= 20);
+      assertTrue(runner.getMaxJitterNanos() >= runner.getMeanJitterNanos());
+
+      // 1 unit per update at 500 Hz, but the thread may be scheduled late
+      PoseSample sample = new PoseSample();
+      runner.getPoseSample(sample);
+      assertTrue(sample.hasVelocity);
+      assertTrue(sample.velocityX > 0);
+      assertEquals(0, sample.velocityY);
+      assertEquals(runner.getPoseTimestampNanos(), sample.timestampNanos);
+
+      runner.setPose(new Pose2d(-1000, 5, 0));
+      waitForSamples(runner, 2);
+      Pose2d pose = runner.getPose();
+      assertTrue(pose.x < -990);
+      assertEquals(5, pose.y);
+    }
+  }
+
+  @Test
+  void stopAppliesPendingPose() throws InterruptedException {
+    SwerveOdometry odometry = odometry();
+    // one update a second, so the pose is still pending when the runner stops
+    AsyncOdometryRunner runner =
+        new AsyncOdometryRunner(odometry, () -> odometry.updateDeltaOdometry(1, 0, 0), 1);
+    runner.start();
+    waitForSamples(runner, 1);
+    runner.setPose(new Pose2d(-1000, 5, 0));
+    runner.stop();
+    assertEquals(-1000, odometry.getPose().x);
+    assertEquals(5, runner.getPose().y);
+  }
+
+  @Test
+  void countsOverruns() throws InterruptedException {
+    SwerveOdometry odometry = odometry();
+    AsyncOdometryRunner runner =
+        new AsyncOdometryRunner(
+            odometry,
+            () -> {
+              try {
+                Thread.sleep(5);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            },
+            1000);
+    runner.start();
+    waitForSamples(runner, 5);
+    runner.stop();
+    assertFalse(runner.isRunning());
+    assertTrue(runner.getOverrunCount() >= 4);
+  }
+
+  @Test
+  void stopsOnFailure() throws InterruptedException {
+    SwerveOdometry odometry = odometry();
+    AsyncOdometryRunner runner =
+        new AsyncOdometryRunner(
+            odometry,
+            () -> {
+              throw new IllegalStateException("encoder unplugged");
+            },
+            100);
+    runner.start();
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    while (runner.isRunning() && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertFalse(runner.isRunning());
+    assertEquals("encoder unplugged", runner.getFailure().getMessage());
+    runner.stop();
+  }
+}
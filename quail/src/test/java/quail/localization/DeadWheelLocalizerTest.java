@@ -0,0 +1,207 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.localization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.localization.MecanumWheelLocalizer;
+import com.mineinjava.quail.localization.PoseSample;
+import com.mineinjava.quail.localization.ThreeWheelLocalizer;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class DeadWheelLocalizerTest {
+
+  static class SimulatedThreeWheel extends ThreeWheelLocalizer {
+    double[] wheels = new double[3];
+
+    SimulatedThreeWheel(List<Pose2d> wheelPoses) {
+      super(wheelPoses);
+    }
+
+    @Override
+    public void getWheelPositions(double[] out) {
+      System.arraycopy(wheels, 0, out, 0, 3);
+    }
+  }
+
+  static class SimulatedMecanum extends MecanumWheelLocalizer {
+    double[] wheels = new double[4];
+    final double[] heading;
+
+    SimulatedMecanum() {
+      super(2, 2);
+      this.heading = new double[1];
+    }
+
+    SimulatedMecanum(double[] heading) {
+      super(2, 2, () -> heading[0]);
+      this.heading = heading;
+    }
+
+    static SimulatedMecanum create(boolean usesHeading) {
+      return usesHeading ? new SimulatedMecanum(new double[1]) : new SimulatedMecanum();
+    }
+
+    @Override
+    public void getWheelPositions(double[] out) {
+      System.arraycopy(wheels, 0, out, 0, 4);
+    }
+
+    /** Moves the wheels as if the robot moved by a robot-relative delta. */
+    void move(double dx, double dy, double dtheta) {
+      wheels[0] += dx - dy - 2 * dtheta;
+      wheels[1] += dx + dy + 2 * dtheta;
+      wheels[2] += dx + dy - 2 * dtheta;
+      wheels[3] += dx - dy + 2 * dtheta;
+      heading[0] += dtheta;
+    }
+  }
+
+  @Test
+  void threeWheelDriveTurnDrive() {
+    // two parallel wheels 1 unit either side of center, one perpendicular wheel 1 unit behind it
+    SimulatedThreeWheel localizer =
+        new SimulatedThreeWheel(
+            Arrays.asList(
+                new Pose2d(0, 1, 0), new Pose2d(0, -1, 0), new Pose2d(-1, 0, Math.PI / 2)));
+    localizer.update();
+
+    localizer.wheels[0] += 2;
+    localizer.wheels[1] += 2;
+    localizer.update();
+    assertEquals(2, localizer.getPose().x, 1e-9);
+
+    // turn 90 degrees counterclockwise in place
+    double turn = Math.PI / 2;
+    localizer.wheels[0] -= turn;
+    localizer.wheels[1] += turn;
+    localizer.wheels[2] -= turn;
+    localizer.update();
+    assertEquals(2, localizer.getPose().x, 1e-9);
+    assertEquals(0, localizer.getPose().y, 1e-9);
+    assertEquals(turn, localizer.getPose().heading, 1e-9);
+
+    // strafe 1 to the robot's left, which is now -x
+    localizer.wheels[2] += 1;
+    localizer.update();
+    assertEquals(1, localizer.getPose().x, 1e-9);
+    assertEquals(0, localizer.getPose().y, 1e-9);
+    assertNull(localizer.getPoseVelocity());
+  }
+
+  @Test
+  void mecanum() {
+    for (boolean usesHeading : new boolean[] {false, true}) {
+      SimulatedMecanum localizer = SimulatedMecanum.create(usesHeading);
+      localizer.update();
+      localizer.move(0, 1, 0);
+      localizer.update();
+      assertEquals(0, localizer.getPose().x, 1e-9);
+      assertEquals(1, localizer.getPose().y, 1e-9);
+
+      localizer.move(0, 0, Math.PI);
+      localizer.update();
+      localizer.move(1, 0, 0);
+      localizer.update();
+      Pose2d pose = localizer.getPose();
+      assertEquals(-1, pose.x, 1e-9);
+      assertEquals(1, pose.y, 1e-9);
+      assertEquals(Math.PI, pose.heading, 1e-9);
+    }
+  }
+
+  @Test
+  void mecanumAveragesWheelNoise() {
+    SimulatedMecanum localizer = new SimulatedMecanum();
+    localizer.update();
+    // one wheel slips by 0.4, which least squares spreads over x, y and heading
+    localizer.move(1, 0, 0);
+    localizer.wheels[0] += 0.4;
+    localizer.update();
+    assertEquals(1.1, localizer.getPose().x, 0.01);
+  }
+
+  @Test
+  void gyroHeadingIsNotAveragedWithWheels() {
+    SimulatedMecanum localizer = new SimulatedMecanum(new double[1]);
+    localizer.update();
+    // a slipping wheel can't pull the heading away from the gyro
+    localizer.move(1, 0, 0);
+    localizer.wheels[0] += 0.4;
+    localizer.update();
+    assertEquals(0, localizer.getPose().heading, 1e-12);
+    assertEquals(1.1, localizer.getPose().x, 1e-9);
+    assertEquals(-0.1, localizer.getPose().y, 1e-9);
+
+    // with the turn from the gyro, the wheels give the translation exactly
+    localizer.move(0, 1, 0.5);
+    localizer.update();
+    assertEquals(0.5, localizer.getPose().heading, 1e-12);
+  }
+
+  @Test
+  void gyroNeedsHeading() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new MecanumWheelLocalizer(2, 2, null) {
+              @Override
+              public void getWheelPositions(double[] out) {}
+            });
+  }
+
+  @Test
+  void poseSampleVelocityFromPoseChange() throws InterruptedException {
+    SimulatedMecanum localizer = new SimulatedMecanum(new double[1]);
+    PoseSample sample = new PoseSample();
+    localizer.update();
+    localizer.getPoseSample(sample);
+    assertFalse(sample.hasVelocity);
+
+    localizer.move(0, 0, Math.PI / 2);
+    localizer.update();
+    Thread.sleep(20);
+    localizer.move(1, 0, 0);
+    localizer.update();
+    localizer.getPoseSample(sample);
+    assertTrue(sample.hasVelocity);
+    assertEquals(1, sample.y, 1e-9);
+    // the robot drove forward, which is +y on the field after turning left
+    assertEquals(0, sample.velocityX, 1e-9);
+    assertTrue(sample.velocityY > 0 && sample.velocityY < 1 / 0.019);
+    assertTrue(sample.getAgeSeconds() >= 0);
+  }
+
+  @Test
+  void underdeterminedIsRejected() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new SimulatedThreeWheel(
+                Arrays.asList(new Pose2d(0, 1, 0), new Pose2d(0, -1, 0), new Pose2d(0, 2, 0))));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new SimulatedThreeWheel(Arrays.asList(new Pose2d(0, 1, 0), new Pose2d(0, -1, 0))));
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.localization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.localization.ParticleFilterLocalizer;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import org.junit.jupiter.api.Test;
+
+public class ParticleFilterLocalizerTest {
+
+  @Test
+  void predictFollowsRobotFrameMotion() {
+    ParticleFilterLocalizer localizer = new ParticleFilterLocalizer(100, 1);
+    localizer.setPose(new Pose2d(1, 2, Math.PI / 2));
+    localizer.setMotionNoise(0, 0);
+    localizer.predict(1, 0, 0);
+    Pose2d pose = localizer.getPose();
+    assertEquals(1, pose.x, 1e-9);
+    assertEquals(3, pose.y, 1e-9);
+    assertEquals(Math.PI / 2, pose.heading, 1e-9);
+  }
+
+  @Test
+  void tracksObservedPose() {
+    ParticleFilterLocalizer localizer = new ParticleFilterLocalizer(500, 5000, 2);
+    localizer.setPose(new Pose2d(), 0.5, 0.2);
+    for (int i = 0; i < 20; i++) {
+      localizer.predict(0.1, 0, 0);
+      assertTrue(localizer.correct(new Pose2d(0.1 * (i + 1), 0, 0), 0.1, 0.05));
+    }
+    Pose2d pose = localizer.getPose();
+    assertEquals(2, pose.x, 0.1);
+    assertEquals(0, pose.y, 0.1);
+    assertEquals(0, pose.heading, 0.05);
+    assertTrue(localizer.getParticleCount() >= 500);
+    assertTrue(localizer.getParticleCount() <= 5000);
+  }
+
+  @Test
+  void resolvesSymmetricField() {
+    // a sensor that measures the distance to the nearest of two mirrored landmarks can't tell the
+    // two halves of the field apart until the robot drives towards one of them
+    ParticleFilterLocalizer localizer = new ParticleFilterLocalizer(4000, 3);
+    localizer.setMotionNoise(0.02, 0.02);
+    localizer.setUniform(-4, -1, 4, 1);
+    double x = 3;
+    for (int i = 0; i < 3; i++) {
+      double distance = Math.abs(Math.abs(x) - 4);
+      localizer.correct(
+          (px, py, heading) -> {
+            double error = Math.abs(Math.abs(px) - 4) - distance;
+            return Math.exp(-error * error / 0.02);
+          });
+      // heading from a gyro
+      localizer.correct((px, py, heading) -> Math.exp((Math.cos(heading) - 1) / 0.01));
+    }
+    assertEquals(0, localizer.getPose().heading, 0.2);
+    // both guesses survive
+    double[] particle = new double[4];
+    double left = 0;
+    double right = 0;
+    for (int i = 0; i < localizer.getParticleCount(); i++) {
+      localizer.getParticle(i, particle);
+      if (Math.abs(Math.abs(particle[0]) - 3) < 0.5) {
+        if (particle[0] < 0) {
+          left += particle[3];
+        } else {
+          right += particle[3];
+        }
+      }
+    }
+    assertTrue(left > 0.2, "left " + left);
+    assertTrue(right > 0.2, "right " + right);
+
+    // a landmark at x = 4 only; drive towards it
+    for (int i = 0; i < 10; i++) {
+      x += 0.05;
+      localizer.predict(0.05, 0, 0);
+      double distance = 4 - x;
+      localizer.correct(
+          (px, py, heading) -> {
+            double error = (4 - px) - distance;
+            return Math.exp(-error * error / 0.02);
+          });
+    }
+    assertEquals(x, localizer.getPose().x, 0.2);
+  }
+
+  @Test
+  void sameSeedSameResult() {
+    Pose2d[] poses = new Pose2d[2];
+    for (int run = 0; run < 2; run++) {
+      ParticleFilterLocalizer localizer = new ParticleFilterLocalizer(3000, 7);
+      localizer.setPose(new Pose2d(), 0.2, 0.1);
+      for (int i = 0; i < 5; i++) {
+        localizer.predict(0.3, 0.1, 0.2);
+        localizer.correct(new Pose2d(0.3 * i, 0, 0), 0.3, 0.3);
+      }
+      poses[run] = localizer.getPose();
+    }
+    assertEquals(poses[0], poses[1]);
+  }
+
+  @Test
+  void impossibleMeasurementIsIgnored() {
+    ParticleFilterLocalizer localizer = new ParticleFilterLocalizer(100, 1);
+    localizer.setPose(new Pose2d(1, 1, 0));
+    assertFalse(localizer.correct((x, y, heading) -> 0));
+    assertEquals(1, localizer.getPose().x, 1e-9);
+    assertEquals(100, localizer.getEffectiveSampleSize(), 1e-9);
+  }
+}
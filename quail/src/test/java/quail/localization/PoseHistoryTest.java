@@ -0,0 +1,88 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.localization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.localization.PoseHistory;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import org.junit.jupiter.api.Test;
+
+public class PoseHistoryTest {
+
+  @Test
+  void sampleInterpolates() {
+    PoseHistory history = new PoseHistory(4);
+    assertNull(history.sample(0));
+    history.add(0, 0, 0, 0);
+    history.add(10, 1, 2, 0.2);
+    history.add(20, 3, 2, 3.1);
+    history.add(30, 3, 4, -3.1);
+
+    double[] pose = new double[3];
+    assertTrue(history.sample(5, pose));
+    assertArrayEquals(new double[] {0.5, 1, 0.1}, pose, 1e-9);
+    assertEquals(new Pose2d(3, 2, 3.1), history.sample(20));
+    assertEquals(new Pose2d(0, 0, 0), history.sample(-5));
+    assertEquals(new Pose2d(3, 4, -3.1), history.sample(100));
+
+    // headings interpolate the short way across pi
+    history.sample(25, pose);
+    assertEquals(Math.PI, pose[2], 1e-9);
+  }
+
+  @Test
+  void overwritesOldest() {
+    PoseHistory history = new PoseHistory(3);
+    for (int i = 0; i < 5; i++) {
+      history.add(i, i, 0, 0);
+    }
+    assertEquals(3, history.size());
+    assertEquals(2, history.getOldestTimestamp());
+    assertEquals(4, history.getNewestTimestamp());
+    assertEquals(new Pose2d(2, 0, 0), history.sample(0));
+
+    history.add(4, 10, 0, 0);
+    assertEquals(3, history.size(), "The same timestamp replaces the newest pose");
+    assertThrows(IllegalArgumentException.class, () -> history.add(3, 0, 0, 0));
+  }
+
+  @Test
+  void correctReplaysOdometry() {
+    PoseHistory history = new PoseHistory(8);
+    // drive 1 unit forward (along x) every 10 ms
+    for (int i = 0; i <= 5; i++) {
+      history.add(i * 10, i, 0, 0);
+    }
+    double[] newest = new double[3];
+    // at 20 ms the robot was really at (0, 5) facing +y
+    assertTrue(history.correct(20, 0, 5, Math.PI / 2, newest));
+    // the 3 units driven since then are now along +y
+    assertArrayEquals(new double[] {0, 8, Math.PI / 2}, newest, 1e-9);
+    assertEquals(new Pose2d(1, 0, 0), history.sample(10));
+
+    // between samples
+    history.correct(35, 0, 0, Math.PI / 2, newest);
+    assertArrayEquals(new double[] {0, 1.5, Math.PI / 2}, newest, 1e-9);
+
+    assertFalse(history.correct(60, 0, 0, 0, newest));
+  }
+}
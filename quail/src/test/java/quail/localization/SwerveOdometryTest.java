@@ -0,0 +1,97 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.localization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.RobotMovement;
+import com.mineinjava.quail.SwerveDrive;
+import com.mineinjava.quail.SwerveModuleBase;
+import com.mineinjava.quail.localization.SwerveOdometry;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class SwerveOdometryTest {
+
+  static SwerveOdometry odometry() {
+    return new SwerveOdometry(
+        new Vec2d[] {new Vec2d(1, 1), new Vec2d(-1, 1), new Vec2d(-1, -1), new Vec2d(1, -1)});
+  }
+
+  @Test
+  void twistFollowsArc() {
+    // a quarter circle of radius 1 counterclockwise, in one step
+    SwerveOdometry odometry = odometry();
+    odometry.updateTwist(Math.PI / 2, 0, Math.PI / 2);
+    Pose2d pose = odometry.getPose();
+    assertEquals(1, pose.x, 1e-9);
+    assertEquals(1, pose.y, 1e-9);
+    assertEquals(Math.PI / 2, pose.heading, 1e-9);
+  }
+
+  @Test
+  void twistIsIndependentOfStepCount() {
+    SwerveOdometry coarse = odometry();
+    SwerveOdometry fine = odometry();
+    RobotMovement movement = new RobotMovement(0.8, new Vec2d(1, 0.5));
+    coarse.updateTwist(movement, 1);
+    for (int i = 0; i < 100; i++) {
+      fine.updateTwist(movement, 0.01);
+    }
+    assertEquals(coarse.x, fine.x, 1e-9);
+    assertEquals(coarse.y, fine.y, 1e-9);
+    assertEquals(coarse.theta, fine.theta, 1e-9);
+  }
+
+  @Test
+  void twistWithoutRotationIsStraight() {
+    SwerveOdometry odometry = odometry();
+    odometry.setPose(new Pose2d(1, 1, Math.PI / 2));
+    odometry.updateTwist(2, 1, 0);
+    assertEquals(0, odometry.x, 1e-9);
+    assertEquals(3, odometry.y, 1e-9);
+  }
+
+  @Test
+  void modulesStatesGiveMovementBack() {
+    // three modules, not centered on the robot
+    Vec2d[] positions = {new Vec2d(1.5, 0.5), new Vec2d(-0.5, 1), new Vec2d(0, -1.2)};
+    List<SwerveModuleBase> modules = new ArrayList<>();
+    for (Vec2d position : positions) {
+      modules.add(new SwerveModuleBase(position, 1, 1));
+    }
+    SwerveDrive<SwerveModuleBase> drive = new SwerveDrive<>(modules, 100);
+    SwerveOdometry odometry = new SwerveOdometry(positions);
+
+    RobotMovement movement = new RobotMovement(-0.7, new Vec2d(0.4, 1.1));
+    double[] angles = new double[3];
+    double[] speeds = new double[3];
+    drive.calculateModuleStates(movement, 0, angles, speeds);
+    double[] velocity = new double[3];
+    odometry.calculateOdometry(angles, speeds, velocity);
+    assertEquals(0.4, velocity[0], 1e-9);
+    assertEquals(1.1, velocity[1], 1e-9);
+    assertEquals(-0.7, velocity[2], 1e-9);
+  }
+}
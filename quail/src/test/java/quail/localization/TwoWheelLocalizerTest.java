@@ -0,0 +1,163 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.localization;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.localization.TwoWheelLocalizer;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class TwoWheelLocalizerTest {
+  // a wheel 1 unit left of center measuring x, and one 1 unit forward measuring y
+  static final List<Pose2d> WHEELS =
+      Arrays.asList(new Pose2d(0, 1, 0), new Pose2d(1, 0, Math.PI / 2));
+
+  /** Simulated localizer using the fast accessors. */
+  static class ArrayLocalizer extends TwoWheelLocalizer {
+    double[] wheels = new double[2];
+    double heading = 0;
+
+    ArrayLocalizer() {
+      super(WHEELS);
+    }
+
+    @Override
+    public void getWheelPositions(double[] out) {
+      out[0] = wheels[0];
+      out[1] = wheels[1];
+    }
+
+    @Override
+    public double getHeading() {
+      return heading;
+    }
+
+    @Override
+    public boolean getVelocities(double[] out) {
+      out[0] = 2;
+      out[1] = 0;
+      out[2] = 0;
+      return true;
+    }
+  }
+
+  /** The same, using the original list accessors. */
+  static class ListLocalizer extends TwoWheelLocalizer {
+    ArrayLocalizer source;
+
+    ListLocalizer(ArrayLocalizer source) {
+      super(WHEELS);
+      this.source = source;
+    }
+
+    @Override
+    public List<Double> getWheelPositions() {
+      return Arrays.asList(source.wheels[0], source.wheels[1]);
+    }
+
+    @Override
+    public double getHeading() {
+      return source.heading;
+    }
+  }
+
+  @Test
+  void driveTurnDrive() {
+    ArrayLocalizer localizer = new ArrayLocalizer();
+    ListLocalizer listLocalizer = new ListLocalizer(localizer);
+    localizer.update();
+    listLocalizer.update();
+
+    // forward 2
+    localizer.wheels[0] += 2;
+    localizer.update();
+    listLocalizer.update();
+    assertEquals(2, localizer.getPose().x, 1e-9);
+    assertEquals(0, localizer.getPose().y, 1e-9);
+
+    // turn in place by 90 degrees, the wheels roll with the turn
+    localizer.heading = Math.PI / 2;
+    localizer.wheels[0] -= Math.PI / 2;
+    localizer.wheels[1] += Math.PI / 2;
+    localizer.update();
+    listLocalizer.update();
+    assertEquals(2, localizer.getPose().x, 1e-9);
+    assertEquals(0, localizer.getPose().y, 1e-9);
+
+    // forward 1, which is now along +y
+    localizer.wheels[0] += 1;
+    localizer.update();
+    listLocalizer.update();
+    Pose2d pose = localizer.getPose();
+    assertEquals(2, pose.x, 1e-9);
+    assertEquals(1, pose.y, 1e-9);
+    assertEquals(Math.PI / 2, pose.heading, 1e-9);
+    assertEquals(pose, listLocalizer.getPose());
+
+    Pose2d velocity = localizer.getPoseVelocity();
+    assertEquals(2, velocity.x, 1e-9);
+    assertEquals(0, velocity.y, 1e-9);
+    assertNull(listLocalizer.getPoseVelocity());
+  }
+
+  @Test
+  void relativeOdometryUpdateUsesRadians() {
+    Pose2d pose =
+        TwoWheelLocalizer.relativeOdometryUpdate(
+            new Pose2d(0, 0, Math.PI / 2), new Pose2d(1, 0, 0));
+    assertEquals(0, pose.x, 1e-9);
+    assertEquals(1, pose.y, 1e-9);
+  }
+
+  @Test
+  void missingWheelPositionsIsReported() {
+    List<Pose2d> wheels = Arrays.asList(new Pose2d(0, 1, 0), new Pose2d(-1, 0, Math.PI / 2));
+    TwoWheelLocalizer localizer =
+        new TwoWheelLocalizer(wheels) {
+          @Override
+          public double getHeading() {
+            return 0;
+          }
+        };
+    assertThrows(IllegalStateException.class, localizer::update);
+    assertThrows(IllegalStateException.class, localizer::getWheelPositions);
+  }
+
+  @Test
+  void parallelWheelsAreRejected() {
+    List<Pose2d> parallel = Arrays.asList(new Pose2d(0, 1, 0), new Pose2d(0, -1, 0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new TwoWheelLocalizer(parallel) {
+              @Override
+              public void getWheelPositions(double[] out) {}
+
+              @Override
+              public double getHeading() {
+                return 0;
+              }
+            });
+  }
+}
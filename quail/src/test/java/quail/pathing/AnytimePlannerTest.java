@@ -0,0 +1,119 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.pathing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.pathing.AnytimePlanner;
+import com.mineinjava.quail.pathing.OccupancyGrid;
+import com.mineinjava.quail.pathing.Path;
+import com.mineinjava.quail.pathing.ThetaStarPlanner;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class AnytimePlannerTest {
+
+  /** Random obstacles with the corners kept free. */
+  static OccupancyGrid randomGrid(int size, long seed) {
+    OccupancyGrid grid = new OccupancyGrid(size, size, 1);
+    Random random = new Random(seed);
+    for (int row = 0; row < size; row++) {
+      for (int column = 0; column < size; column++) {
+        if (random.nextDouble() < 0.25) {
+          grid.setOccupied(column, row, true);
+        }
+      }
+    }
+    grid.setOccupied(0, 0, false);
+    grid.setOccupied(size - 1, size - 1, false);
+    return grid;
+  }
+
+  @Test
+  void improvesOverSteps() {
+    OccupancyGrid grid = randomGrid(60, 3);
+    Pose2d start = new Pose2d(0.5, 0.5, 0);
+    Pose2d goal = new Pose2d(59.5, 59.5, 1);
+    AnytimePlanner planner = new AnytimePlanner(3, 0.5);
+    planner.start(grid, start, goal);
+    assertNull(planner.getBestPath());
+
+    int steps = 0;
+    double lastWeight = Double.POSITIVE_INFINITY;
+    while (!planner.isFinished()) {
+      if (planner.step(0)) {
+        assertTrue(planner.getBestPathWeight() < lastWeight);
+        lastWeight = planner.getBestPathWeight();
+      }
+      steps++;
+    }
+    assertTrue(steps > 1, "A zero budget should spread the search over several steps");
+    assertEquals(1, planner.getBestPathWeight());
+
+    Path path = planner.getBestPath();
+    assertEquals(start, path.points.get(0));
+    assertEquals(goal, path.points.get(path.points.size() - 1));
+    Path reference = new ThetaStarPlanner().plan(grid, start, goal);
+    // theta* paths are any-angle, the shortened grid path can't be much longer
+    assertTrue(path.length() <= reference.length() * 1.1);
+  }
+
+  @Test
+  void sameResultAsPlan() {
+    OccupancyGrid grid = randomGrid(40, 7);
+    Pose2d start = new Pose2d(0.5, 0.5, 0);
+    Pose2d goal = new Pose2d(39.5, 39.5, 0);
+    Path planned = new AnytimePlanner().plan(grid, start, goal);
+    // a budget of 0 also splits the re-keying of the open list over many steps
+    for (long budget : new long[] {1000, 0}) {
+      AnytimePlanner stepped = new AnytimePlanner();
+      stepped.start(grid, start, goal);
+      while (!stepped.isFinished()) {
+        stepped.step(budget);
+      }
+      assertEquals(planned.points, stepped.getBestPath().points);
+    }
+  }
+
+  @Test
+  void noPath() {
+    OccupancyGrid grid = new OccupancyGrid(10, 10, 1);
+    for (int row = 0; row < 10; row++) {
+      grid.setOccupied(5, row, true);
+    }
+    AnytimePlanner planner = new AnytimePlanner();
+    planner.start(grid, new Pose2d(0.5, 0.5, 0), new Pose2d(9.5, 9.5, 0));
+    assertFalse(planner.step(Long.MAX_VALUE));
+    assertTrue(planner.isFinished());
+    assertNull(planner.getBestPath());
+
+    planner.start(grid, new Pose2d(5.5, 0.5, 0), new Pose2d(0.5, 0.5, 0));
+    assertTrue(planner.isFinished());
+  }
+
+  @Test
+  void straightPath() {
+    OccupancyGrid grid = new OccupancyGrid(10, 10, 1);
+    Path path = new AnytimePlanner().plan(grid, new Pose2d(0.5, 0.5, 0), new Pose2d(7.5, 2.5, 0));
+    assertEquals(2, path.points.size());
+  }
+}
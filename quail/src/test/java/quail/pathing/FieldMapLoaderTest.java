@@ -0,0 +1,139 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.pathing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.pathing.FieldMapLoader;
+import com.mineinjava.quail.pathing.OccupancyGrid;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FieldMapLoaderTest {
+  @TempDir Path tempDir;
+
+  File imageFile;
+  FieldMapLoader loader;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    // 100x100 pixel white field with a black square in the top-left quarter
+    BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, 100, 100);
+    graphics.setColor(Color.BLACK);
+    graphics.fillRect(0, 0, 50, 50);
+    graphics.dispose();
+
+    imageFile = tempDir.resolve("field.png").toFile();
+    ImageIO.write(image, "png", imageFile);
+
+    // 10x10 field centered on the origin, 1 unit cells
+    loader = new FieldMapLoader(10, 10, 1);
+  }
+
+  @Test
+  void thresholdsImage() throws IOException {
+    OccupancyGrid grid = loader.load(imageFile);
+    assertEquals(10, grid.getWidth());
+    assertEquals(10, grid.getHeight());
+
+    // the top-left of the image is -x, +y on the field
+    assertTrue(grid.isOccupied(-2.5, 2.5));
+    assertFalse(grid.isOccupied(2.5, 2.5));
+    assertFalse(grid.isOccupied(-2.5, -2.5));
+    assertFalse(grid.isOccupied(2.5, -2.5));
+    assertTrue(grid.isOccupied(-0.5, 0.5));
+    assertFalse(grid.isOccupied(0.5, 0.5));
+    assertTrue(grid.isOccupied(20, 0), "Outside of the field is occupied");
+  }
+
+  @Test
+  void obstaclesLight() throws IOException {
+    loader.setObstaclesDark(false);
+    OccupancyGrid grid = loader.load(imageFile);
+    assertFalse(grid.isOccupied(-2.5, 2.5));
+    assertTrue(grid.isOccupied(2.5, -2.5));
+  }
+
+  @Test
+  void cacheIsWrittenAndReused() throws IOException {
+    File cache = tempDir.resolve("field.grid").toFile();
+    OccupancyGrid first = loader.load(imageFile, cache);
+    assertTrue(cache.isFile());
+
+    OccupancyGrid cached = loader.load(imageFile, cache);
+    for (int row = 0; row < first.getHeight(); row++) {
+      for (int column = 0; column < first.getWidth(); column++) {
+        assertEquals(first.isOccupied(column, row), cached.isOccupied(column, row));
+      }
+    }
+  }
+
+  @Test
+  void cacheWithDifferentResolutionIsRebuilt() throws IOException {
+    File cache = tempDir.resolve("field.grid").toFile();
+    loader.load(imageFile, cache);
+
+    OccupancyGrid grid = new FieldMapLoader(10, 10, 0.5).load(imageFile, cache);
+    assertEquals(20, grid.getWidth());
+  }
+
+  @Test
+  void cacheWithDifferentThresholdingIsRebuilt() throws IOException {
+    File cache = tempDir.resolve("field.grid").toFile();
+    assertTrue(loader.load(imageFile, cache).isOccupied(-2.5, 2.5));
+
+    loader.setObstaclesDark(false);
+    assertFalse(loader.load(imageFile, cache).isOccupied(-2.5, 2.5));
+    loader.setObstaclesDark(true);
+    loader.setThreshold(0);
+    assertFalse(loader.load(imageFile, cache).isOccupied(-2.5, 2.5));
+  }
+
+  @Test
+  void tallImageIsReadInStrips() throws IOException {
+    // taller than one strip, with the obstacle only in the bottom rows
+    BufferedImage image = new BufferedImage(2048, 1200, BufferedImage.TYPE_BYTE_GRAY);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(Color.WHITE);
+    graphics.fillRect(0, 0, 2048, 1200);
+    graphics.setColor(Color.BLACK);
+    graphics.fillRect(0, 1100, 2048, 100);
+    graphics.dispose();
+    File tall = tempDir.resolve("tall.png").toFile();
+    ImageIO.write(image, "png", tall);
+
+    OccupancyGrid grid = new FieldMapLoader(2048, 1200, 100).load(tall);
+    for (int row = 0; row < grid.getHeight(); row++) {
+      assertEquals(row == 0, grid.isOccupied(0, row), "row " + row);
+    }
+  }
+}
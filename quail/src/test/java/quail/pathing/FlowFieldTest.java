@@ -0,0 +1,109 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.pathing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.pathing.FlowField;
+import com.mineinjava.quail.pathing.OccupancyGrid;
+import com.mineinjava.quail.pathing.Path;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import quail.TestUtil;
+
+public class FlowFieldTest {
+  OccupancyGrid grid;
+  Pose2d goal = new Pose2d(9.5, 0.5, 2);
+
+  @BeforeEach
+  void setUp() {
+    // wall at column 5 with a gap in the top row
+    grid = new OccupancyGrid(10, 10, 1);
+    for (int row = 0; row < 9; row++) {
+      grid.setOccupied(5, row, true);
+    }
+  }
+
+  @Test
+  void costs() {
+    FlowField field = FlowField.build(grid, goal);
+    assertEquals(0, field.getCost(9, 0));
+    TestUtil.assertEpsilonEquals(3.0, field.getCost(6.5, 0.5));
+    assertTrue(field.getCost(0.5, 0.5) > 9);
+    assertEquals(Double.POSITIVE_INFINITY, field.getCost(5, 0));
+    assertEquals(Double.POSITIVE_INFINITY, field.getCost(-1, 0));
+  }
+
+  @Test
+  void pathGoesThroughGap() {
+    FlowField field = FlowField.build(grid, goal);
+    Pose2d start = new Pose2d(0.5, 0.5, 0);
+    Path path = field.getPath(start);
+    assertNotNull(path);
+    assertEquals(start, path.points.get(0));
+    assertEquals(goal, path.points.get(path.points.size() - 1));
+    assertTrue(path.points.size() <= 4, "Downhill cells should be shortened to straight segments");
+    for (int i = 0; i < path.points.size() - 1; i++) {
+      Pose2d from = path.points.get(i);
+      Pose2d to = path.points.get(i + 1);
+      assertTrue(
+          grid.hasLineOfSight(
+              grid.getColumn(from.x),
+              grid.getRow(from.y),
+              grid.getColumn(to.x),
+              grid.getRow(to.y)));
+    }
+
+    Vec2d direction = field.getDirection(4.5, 0.5);
+    assertEquals(0, direction.x, 1e-9);
+    assertEquals(1, direction.y, 1e-9);
+  }
+
+  @Test
+  void unreachable() {
+    grid.setOccupied(5, 9, true);
+    FlowField field = FlowField.build(grid, goal);
+    assertNull(field.getPath(new Pose2d(0.5, 0.5, 0)));
+    assertNotNull(field.getPath(new Pose2d(7.5, 7.5, 0)));
+    assertNull(FlowField.build(grid, new Pose2d(5.5, 0.5, 0)).getPath(new Pose2d(7.5, 7.5, 0)));
+  }
+
+  @Test
+  void buildAsyncAndRoundTrip() throws IOException, ExecutionException, InterruptedException {
+    FlowField field = FlowField.buildAsync(grid, goal).get();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    field.write(out);
+    FlowField read = FlowField.read(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(goal, read.getGoal());
+    assertTrue(read.getGrid().isOccupied(5, 0));
+    assertEquals(field.getCost(0.5, 0.5), read.getCost(0.5, 0.5));
+    assertEquals(
+        field.getPath(new Pose2d(0.5, 0.5, 0)).points,
+        read.getPath(new Pose2d(0.5, 0.5, 0)).points);
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.pathing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.RobotMovement;
+import com.mineinjava.quail.localization.SwerveOdometry;
+import com.mineinjava.quail.pathing.ConstraintsPair;
+import com.mineinjava.quail.pathing.HolonomicTrajectoryController;
+import com.mineinjava.quail.pathing.Path;
+import com.mineinjava.quail.pathing.Trajectory;
+import com.mineinjava.quail.util.MiniPID;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import com.mineinjava.quail.util.geometry.Vec2d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class HolonomicTrajectoryControllerTest {
+
+  @Test
+  void tracksTrajectoryFromOffsetStart() {
+    Path path =
+        new Path(
+            new ArrayList<>(
+                Arrays.asList(
+                    new Pose2d(0, 0, 0), new Pose2d(2, 0, Math.PI / 2), new Pose2d(2, 2, 0))));
+    Trajectory trajectory = Trajectory.fromPath(path, new ConstraintsPair(1.5, 2), 0.02);
+
+    SwerveOdometry odometry = new SwerveOdometry(new Vec2d[] {new Vec2d(1, 1), new Vec2d(-1, -1)});
+    odometry.setPose(new Pose2d(0.2, -0.1, 0.1));
+    HolonomicTrajectoryController controller =
+        new HolonomicTrajectoryController(
+            odometry, new MiniPID(3, 0, 0), new MiniPID(3, 0, 0), new MiniPID(3, 0, 0));
+
+    double dt = 0.02;
+    double time = 10;
+    controller.start(trajectory, time);
+    double worstError = 0;
+    while (!controller.isFinished(time)) {
+      RobotMovement movement = controller.calculate(time);
+      // a perfect drivetrain that lags by one loop
+      odometry.updateDeltaOdometry(movement.translation.scale(dt), movement.rotation * dt);
+      time += dt;
+      if (time - 10 > 1) {
+        worstError = Math.max(worstError, controller.getTranslationError());
+      }
+      assertTrue(time < 20, "never finished");
+    }
+    // once the start offset is corrected, feedforward keeps the robot on the reference
+    assertTrue(worstError < 0.05, "worst error " + worstError);
+    assertEquals(2, odometry.x, 0.05);
+    assertEquals(2, odometry.y, 0.05);
+  }
+
+  @Test
+  void feedforwardOnlyWithoutError() {
+    Trajectory trajectory = new Trajectory();
+    trajectory.add(0, 0, 0, 0, 1, 2, 0.5);
+    trajectory.add(1, 1, 2, 0.5, 1, 2, 0.5);
+    SwerveOdometry odometry = new SwerveOdometry(new Vec2d[] {new Vec2d(1, 1), new Vec2d(-1, -1)});
+    HolonomicTrajectoryController controller =
+        new HolonomicTrajectoryController(
+            odometry, new MiniPID(3, 0, 0), new MiniPID(3, 0, 0), new MiniPID(3, 0, 0));
+    controller.start(trajectory, 0);
+    RobotMovement movement = controller.calculate(0);
+    assertEquals(1, movement.translation.x, 1e-9);
+    assertEquals(2, movement.translation.y, 1e-9);
+    assertEquals(0.5, movement.rotation, 1e-9);
+  }
+}
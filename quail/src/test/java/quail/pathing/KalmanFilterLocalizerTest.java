@@ -20,10 +20,164 @@
 
 package quail.pathing;
 
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.localization.KalmanFilterLocalizer;
+import com.mineinjava.quail.localization.PoseSample;
+import com.mineinjava.quail.util.geometry.Pose2d;
 import org.junit.jupiter.api.Test;
 
 /** KalmanFilterLocalizer */
 public class KalmanFilterLocalizerTest {
   @Test
   void constructor() {}
+
+  @Test
+  void predictFollowsRobotFrameVelocity() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(1, 2, Math.PI / 2), 0);
+    localizer.predict(1, 0, 0, 0.5);
+    Pose2d pose = localizer.getPose();
+    assertEquals(1, pose.x, 1e-9);
+    assertEquals(2.5, pose.y, 1e-9);
+
+    double[] covariance = new double[9];
+    localizer.getCovariance(covariance);
+    assertTrue(covariance[0] > 0, "Predicting should add uncertainty");
+    assertEquals(covariance[1], covariance[3]);
+  }
+
+  @Test
+  void correctWeighsByCovariance() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(0, 0, 0), 0);
+    localizer.setCovariance(1, 1, 1);
+
+    // an observation as uncertain as the estimate lands halfway
+    Pose2d pose = localizer.correct(2, -2, 0.5, 1, 1, 1);
+    assertEquals(1, pose.x, 1e-9);
+    assertEquals(-1, pose.y, 1e-9);
+    assertEquals(0.25, pose.heading, 1e-9);
+    double[] covariance = new double[9];
+    localizer.getCovariance(covariance);
+    assertEquals(0.5, covariance[0], 1e-9);
+
+    // a much noisier observation barely moves it
+    pose = localizer.correct(new Pose2d(100, 0, 0), 100, 10);
+    assertTrue(pose.x < 1.01);
+  }
+
+  @Test
+  void headingInnovationWraps() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(0, 0, 3.1), 0);
+    localizer.setCovariance(1, 1, 1);
+    Pose2d pose = localizer.correct(0, 0, -3.1, 1, 1, 1);
+    assertTrue(pose.heading > 3.1, "Should turn the short way across pi");
+  }
+
+  @Test
+  void correlatedCorrection() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(0, 0, 0), 0);
+    localizer.setCovariance(0.01, 0.01, 0.1);
+    localizer.setProcessNoise(0, 0);
+    // driving forward makes y depend on the heading
+    localizer.predict(2, 0, 0, 1);
+    // correcting only the heading should then also move y
+    Pose2d pose = localizer.correct(2, 0, 0.1, 1e-6, 1e6, 1e-6);
+    assertTrue(pose.y > 0.1);
+  }
+
+  @Test
+  void updateShiftsVisionByDistanceSinceCapture() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(), 0.02, 16);
+    Pose2d velocity = new Pose2d(1, -2, 0);
+    // uneven loop times, and more updates than the history holds
+    double time = 0;
+    for (int i = 0; i < 40; i++) {
+      time += i % 2 == 0 ? 10 : 30;
+      localizer.update(new Pose2d(), velocity, 0, 0, 0, time);
+    }
+    // the vision pose was captured 45 ms ago
+    Pose2d pose = localizer.update(new Pose2d(3, 4, 0), velocity, 45, 1, 1, time + 10);
+    assertEquals(3 + 0.045, pose.x, 1e-9);
+    assertEquals(4 - 0.09, pose.y, 1e-9);
+    assertEquals(0, pose.heading, 1e-9);
+
+    // half weight moves the pose at capture time halfway, the 100 ms since then are added back
+    localizer.setPose(new Pose2d());
+    localizer.update(new Pose2d(), new Pose2d(), 0, 0, 0, 0);
+    localizer.update(new Pose2d(), velocity, 0, 0, 0, 100);
+    pose = localizer.update(new Pose2d(1, 1, 0), velocity, 100, 0.5, 0.5, 200);
+    assertEquals(0.55 + 0.1, pose.x, 1e-9);
+    assertEquals(0.4 - 0.2, pose.y, 1e-9);
+  }
+
+  @Test
+  void updateDeadReckonsWithRealDt() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(), 0.02);
+    Pose2d velocity = new Pose2d(2, 0, 0);
+    localizer.update(new Pose2d(), velocity, 0, 0, 0, 1000);
+    Pose2d pose = localizer.update(new Pose2d(), velocity, 0, 0, 0, 1050);
+    // 20 ms for the first update, then 50 ms
+    assertEquals(0.14, pose.x, 1e-9);
+  }
+
+  @Test
+  void poseSampleHasFieldVelocity() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(0, 0, Math.PI / 2), 0);
+    PoseSample sample = new PoseSample();
+    localizer.getPoseSample(sample);
+    assertFalse(sample.hasVelocity);
+
+    long before = System.nanoTime();
+    localizer.predict(1, 0, 0.5, 0.1);
+    localizer.getPoseSample(sample);
+    assertTrue(sample.hasVelocity);
+    assertTrue(sample.timestampNanos >= before);
+    assertEquals(localizer.getPose().y, sample.y, 1e-12);
+    // forward in the robot's frame is +y on the field, at the heading halfway through the step
+    assertEquals(-Math.sin(0.025), sample.velocityX, 1e-9);
+    assertEquals(Math.cos(0.025), sample.velocityY, 1e-9);
+    assertEquals(0.5, sample.velocityHeading, 1e-9);
+  }
+
+  @Test
+  void correctBatchMatchesSequentialCorrections() {
+    KalmanFilterLocalizer batch = new KalmanFilterLocalizer(new Pose2d(), 0);
+    KalmanFilterLocalizer sequential = new KalmanFilterLocalizer(new Pose2d(), 0);
+    batch.setCovariance(1, 2, 0.5);
+    sequential.setCovariance(1, 2, 0.5);
+    double[] observations = {0.5, -0.2, 0.1, 0.5, 0.5, 0.1, 0.3, 0.1, 0.05, 1, 0.25, 0.2};
+    assertEquals(0, batch.correctBatch(observations, 2));
+    sequential.correct(0.5, -0.2, 0.1, 0.5, 0.5, 0.1);
+    sequential.correct(0.3, 0.1, 0.05, 1, 0.25, 0.2);
+
+    Pose2d expected = sequential.getPose();
+    Pose2d actual = batch.getPose();
+    assertEquals(expected.x, actual.x, 1e-9);
+    assertEquals(expected.y, actual.y, 1e-9);
+    assertEquals(expected.heading, actual.heading, 1e-9);
+    double[] expectedCovariance = new double[9];
+    double[] actualCovariance = new double[9];
+    sequential.getCovariance(expectedCovariance);
+    batch.getCovariance(actualCovariance);
+    assertArrayEquals(expectedCovariance, actualCovariance, 1e-9);
+  }
+
+  @Test
+  void correctBatchRejectsOutliers() {
+    KalmanFilterLocalizer localizer = new KalmanFilterLocalizer(new Pose2d(), 0);
+    localizer.setCovariance(0.01, 0.01, 0.01);
+    // the second observation is a bad detection, many standard deviations away
+    double[] observations = {
+      0.05, 0, 0, 0.01, 0.01, 0.01, 3, 3, 0, 0.01, 0.01, 0.01, 0.05, 0, 0, 0.01, 0.01, 0.01
+    };
+    assertEquals(1, localizer.correctBatch(observations, 3));
+    assertEquals(1, localizer.getRejectedObservationCount());
+    Pose2d pose = localizer.getPose();
+    // three equal variances: the estimate and two observations at 0.05
+    assertEquals(0.05 * 2 / 3, pose.x, 1e-9);
+    assertEquals(0, pose.y, 1e-9);
+
+    assertEquals(1, localizer.correctBatch(observations, 2));
+    assertEquals(2, localizer.getRejectedObservationCount());
+  }
 }
@@ -27,6 +27,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.mineinjava.quail.RobotMovement;
 import com.mineinjava.quail.localization.KalmanFilterLocalizer;
+import com.mineinjava.quail.localization.Localizer;
+import com.mineinjava.quail.localization.PoseSample;
 import com.mineinjava.quail.localization.SwerveOdometry;
 import com.mineinjava.quail.pathing.ConstraintsPair;
 import com.mineinjava.quail.pathing.Path;
@@ -218,4 +220,59 @@ public class PathFollowerTest {
       }
     }
   }
+
+  /** A localizer whose pose was measured 0.1 s ago, while moving at 3 units/s along x. */
+  static class StaleLocalizer implements Localizer {
+    Pose2d pose = new Pose2d(2.5, 0, 0);
+
+    @Override
+    public Pose2d getPose() {
+      return pose;
+    }
+
+    @Override
+    public void setPose(Pose2d pose) {
+      this.pose = pose;
+    }
+
+    @Override
+    public void getPoseSample(PoseSample out) {
+      out.set(pose.x, pose.y, pose.heading, System.nanoTime() - 100_000_000L);
+      out.setVelocity(3, 0, 0);
+    }
+  }
+
+  private RobotMovement movementWithLatencyCompensation(double maxLatencyCompensation) {
+    Path straight =
+        new Path(
+            new ArrayList<Pose2d>() {
+              {
+                add(new Pose2d(0, 0, 0));
+                add(new Pose2d(3, 0, 0));
+              }
+            });
+    straight.incrementCurrentPointIndex();
+    PathFollower follower =
+        new PathFollower(
+            new StaleLocalizer(),
+            straight,
+            new ConstraintsPair(1, 1000),
+            new ConstraintsPair(2, 20),
+            new MiniPID(1, 0, 0),
+            0.2,
+            0.1,
+            1,
+            1,
+            0);
+    follower.setMaxLatencyCompensation(maxLatencyCompensation);
+    return follower.calculateNextDriveMovement();
+  }
+
+  @Test
+  void stalePoseIsExtrapolated() {
+    // slowing down in proportion to the distance left: measured 0.5 from the end
+    assertEquals(0.5, movementWithLatencyCompensation(0).translation.x, 1e-6);
+    // but actually 0.2 from the end by now
+    assertEquals(0.2, movementWithLatencyCompensation(0.1).translation.x, 0.01);
+  }
 }
@@ -0,0 +1,94 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.pathing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.pathing.OccupancyGrid;
+import com.mineinjava.quail.pathing.Path;
+import com.mineinjava.quail.pathing.ThetaStarPlanner;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import quail.TestUtil;
+
+public class ThetaStarPlannerTest {
+  OccupancyGrid grid;
+  ThetaStarPlanner planner;
+
+  @BeforeEach
+  void setUp() {
+    grid = new OccupancyGrid(10, 10, 1);
+    planner = new ThetaStarPlanner();
+  }
+
+  @Test
+  void straightLineInEmptyGrid() {
+    Path path = planner.plan(grid, new Pose2d(0.5, 0.5, 0), new Pose2d(9.5, 9.5, 1));
+    assertEquals(2, path.points.size(), "Any-angle paths don't follow the grid");
+    TestUtil.assertEpsilonEquals(Math.hypot(9, 9), path.length());
+    assertEquals(new Pose2d(9.5, 9.5, 1), path.points.get(1));
+  }
+
+  @Test
+  void goesThroughGapInWall() {
+    // wall at column 5 with a gap in the top row
+    for (int row = 0; row < 9; row++) {
+      grid.setOccupied(5, row, true);
+    }
+    Path path = planner.plan(grid, new Pose2d(0.5, 0.5, 0), new Pose2d(9.5, 0.5, 0));
+    assertNotNull(path);
+    assertTrue(path.length() > 9);
+    for (int i = 0; i < path.points.size() - 1; i++) {
+      Pose2d from = path.points.get(i);
+      Pose2d to = path.points.get(i + 1);
+      assertTrue(
+          grid.hasLineOfSight(
+              grid.getColumn(from.x), grid.getRow(from.y), grid.getColumn(to.x), grid.getRow(to.y)),
+          "Every segment of the path must be free");
+    }
+    assertTrue(planner.getNodesExpanded() > 0);
+  }
+
+  @Test
+  void blockedGoal() {
+    grid.setOccupied(9, 9, true);
+    assertNull(planner.plan(grid, new Pose2d(0.5, 0.5, 0), new Pose2d(9.5, 9.5, 0)));
+  }
+
+  @Test
+  void unreachableGoal() {
+    for (int row = 0; row < 10; row++) {
+      grid.setOccupied(5, row, true);
+    }
+    assertNull(planner.plan(grid, new Pose2d(0.5, 0.5, 0), new Pose2d(9.5, 9.5, 0)));
+    // reusing the planner after a failed search still works
+    assertNotNull(planner.plan(grid, new Pose2d(0.5, 0.5, 0), new Pose2d(3.5, 9.5, 0)));
+  }
+
+  @Test
+  void lineOfSightDoesNotSqueezeBetweenDiagonalObstacles() {
+    grid.setOccupied(1, 0, true);
+    grid.setOccupied(0, 1, true);
+    assertFalse(grid.hasLineOfSight(0, 0, 1, 1));
+    assertTrue(grid.hasLineOfSight(2, 2, 9, 9));
+  }
+}
@@ -0,0 +1,80 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.pathing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.pathing.ConstraintsPair;
+import com.mineinjava.quail.pathing.Path;
+import com.mineinjava.quail.pathing.Trajectory;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class TrajectoryTest {
+
+  @Test
+  void sampleInterpolates() {
+    Trajectory trajectory = new Trajectory();
+    trajectory.add(0, 0, 0, 0, 1, 0, 0);
+    trajectory.add(1, 1, 0, 0, 2, 0, 0);
+    double[] state = new double[Trajectory.STATE_SIZE];
+    trajectory.sample(0.5, state);
+    assertEquals(0.5, state[0], 1e-9);
+    assertEquals(1.5, state[3], 1e-9);
+    // after the end, hold the final pose
+    trajectory.sample(2, state);
+    assertEquals(1, state[0], 1e-9);
+    assertEquals(0, state[3], 1e-9);
+    assertThrows(IllegalArgumentException.class, () -> trajectory.add(1, 0, 0, 0, 0, 0, 0));
+  }
+
+  @Test
+  void fromPathFollowsProfile() {
+    Path path =
+        new Path(
+            new ArrayList<>(
+                Arrays.asList(new Pose2d(0, 0, 0), new Pose2d(2, 0, 0), new Pose2d(2, 2, 0))));
+    Trajectory trajectory = Trajectory.fromPath(path, new ConstraintsPair(1, 1), 0.01);
+    // accelerate for 1 s (0.5 units), cruise 3 units, decelerate for 1 s
+    assertEquals(5, trajectory.getDuration(), 1e-9);
+    double[] state = new double[Trajectory.STATE_SIZE];
+    trajectory.sample(2.5, state);
+    assertEquals(2, state[0], 1e-9);
+    assertEquals(0, state[1], 1e-9);
+    trajectory.sample(3.5, state);
+    assertEquals(2, state[0], 1e-9);
+    assertEquals(1, state[1], 1e-9);
+    assertEquals(1, state[4], 1e-9);
+    Pose2d end = trajectory.samplePose(5);
+    assertEquals(2, end.y, 1e-9);
+  }
+
+  @Test
+  void fromPathRejectsTurnInPlace() {
+    Path turn =
+        new Path(new ArrayList<>(Arrays.asList(new Pose2d(1, 1, 0), new Pose2d(1, 1, 1.5))));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> Trajectory.fromPath(turn, new ConstraintsPair(1, 1), 0.02));
+  }
+}
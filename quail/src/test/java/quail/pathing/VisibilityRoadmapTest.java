@@ -0,0 +1,98 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.pathing;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.pathing.Path;
+import com.mineinjava.quail.pathing.VisibilityRoadmap;
+import com.mineinjava.quail.util.geometry.Polygon;
+import com.mineinjava.quail.util.geometry.Pose2d;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import quail.TestUtil;
+
+public class VisibilityRoadmapTest {
+  List<Polygon> obstacles;
+  VisibilityRoadmap roadmap;
+
+  @BeforeEach
+  void setUp() {
+    obstacles = new ArrayList<>();
+    obstacles.add(Polygon.rectangle(-1, -1, 1, 1));
+    roadmap = VisibilityRoadmap.build(obstacles, 0.5);
+  }
+
+  @Test
+  void inflatedVerticesAreNodes() {
+    assertEquals(4, roadmap.getVertexCount());
+    Polygon inflated = roadmap.getObstacles().get(0);
+    TestUtil.assertEpsilonEquals(9.0, Math.abs(inflated.signedArea()), "3x3 inflated square");
+  }
+
+  @Test
+  void directPathWhenVisible() {
+    Path path = roadmap.query(new Pose2d(-3, 2, 0), new Pose2d(3, 2, 1));
+    assertEquals(2, path.points.size());
+    assertEquals(new Pose2d(3, 2, 1), path.points.get(1));
+  }
+
+  @Test
+  void pathGoesAroundObstacle() {
+    Path path = roadmap.query(new Pose2d(-3, 0, 0), new Pose2d(3, 0, 0));
+    assertNotNull(path);
+    assertEquals(4, path.points.size());
+    TestUtil.assertEpsilonEquals(3 + 2 * Math.hypot(1.5, 1.5), path.length());
+    for (Pose2d point : path.points) {
+      assertTrue(Math.abs(point.x) >= 1.5 || Math.abs(point.y) >= 1.5, "Path enters the obstacle");
+    }
+  }
+
+  @Test
+  void unreachableGoalReturnsNull() {
+    Path path = roadmap.query(new Pose2d(-3, 0, 0), new Pose2d(0, 0, 0));
+    assertNull(path);
+  }
+
+  @Test
+  void saveAndLoad() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    roadmap.save(out);
+    VisibilityRoadmap loaded = VisibilityRoadmap.load(new ByteArrayInputStream(out.toByteArray()));
+
+    assertEquals(roadmap.getVertexCount(), loaded.getVertexCount());
+    assertEquals(roadmap.getRobotRadius(), loaded.getRobotRadius());
+    Path expected = roadmap.query(new Pose2d(-3, 0, 0), new Pose2d(3, 0, 0));
+    Path actual = loaded.query(new Pose2d(-3, 0, 0), new Pose2d(3, 0, 0));
+    assertEquals(expected.points, actual.points);
+  }
+
+  @Test
+  void loadRejectsOtherData() {
+    assertThrows(
+        IOException.class, () -> VisibilityRoadmap.load(new ByteArrayInputStream(new byte[16])));
+  }
+}
@@ -0,0 +1,133 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mineinjava.quail.util.LqrGainTable;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.jupiter.api.Test;
+
+public class LqrGainTableTest {
+  private static final double DT = 0.02;
+
+  /**
+   * Path-tracking error of a differential drive at speed v: along-track, cross-track and heading
+   * error, with speed and turn rate as inputs. The cross-track error grows with v times the heading
+   * error.
+   */
+  private static RealMatrix[] unicycle(double v) {
+    RealMatrix a =
+        MatrixUtils.createRealMatrix(new double[][] {{1, 0, 0}, {0, 1, v * DT}, {0, 0, 1}});
+    RealMatrix b =
+        MatrixUtils.createRealMatrix(new double[][] {{DT, 0}, {0, v * DT * DT / 2}, {0, DT}});
+    return new RealMatrix[] {a, b};
+  }
+
+  private static final RealMatrix Q = MatrixUtils.createRealDiagonalMatrix(new double[] {4, 4, 1});
+  private static final RealMatrix R = MatrixUtils.createRealDiagonalMatrix(new double[] {1, 1});
+
+  @Test
+  void scalarDare() {
+    // P^2 - P - 1 = 0 for A = B = Q = R = 1, so P is the golden ratio
+    RealMatrix one = MatrixUtils.createRealIdentityMatrix(1);
+    RealMatrix p = LqrGainTable.solveDare(one, one, one, one);
+    double golden = (1 + Math.sqrt(5)) / 2;
+    assertEquals(golden, p.getEntry(0, 0), 1e-9);
+    assertEquals(golden / (1 + golden), LqrGainTable.gain(one, one, one, one).getEntry(0, 0), 1e-9);
+  }
+
+  @Test
+  void solutionSatisfiesRiccatiEquation() {
+    RealMatrix[] model = unicycle(2);
+    RealMatrix a = model[0];
+    RealMatrix b = model[1];
+    RealMatrix p = LqrGainTable.solveDare(a, b, Q, R);
+    RealMatrix bTransposeP = b.transpose().multiply(p);
+    RealMatrix inner = MatrixUtils.inverse(R.add(bTransposeP.multiply(b)));
+    RealMatrix right =
+        a.transpose()
+            .multiply(p)
+            .multiply(a)
+            .subtract(
+                a.transpose()
+                    .multiply(bTransposeP.transpose())
+                    .multiply(inner)
+                    .multiply(bTransposeP.multiply(a)))
+            .add(Q);
+    assertTrue(right.subtract(p).getNorm() < 1e-6 * p.getNorm());
+  }
+
+  @Test
+  void interpolatesBetweenGridPoints() {
+    LqrGainTable table = new LqrGainTable(LqrGainTableTest::unicycle, Q, R, 0.5, 3.5, 4);
+    double[] low = new double[6];
+    double[] high = new double[6];
+    double[] middle = new double[6];
+    table.getGain(1.5, low);
+    table.getGain(2.5, high);
+    table.getGain(2, middle);
+    for (int i = 0; i < 6; i++) {
+      assertEquals((low[i] + high[i]) / 2, middle[i], 1e-12);
+    }
+    double[] exact = LqrGainTable.gain(unicycle(1.5)[0], unicycle(1.5)[1], Q, R).getRow(1);
+    assertEquals(exact[1], low[4], 1e-9);
+    // clamped outside the grid
+    table.getGain(10, middle);
+    table.getGain(3.5, high);
+    assertArrayEquals(high, middle, 0);
+
+    double[] error = {0.1, -0.2, 0.05};
+    double[] input = new double[2];
+    table.calculate(1.5, error, input);
+    assertEquals(low[3] * 0.1 - low[4] * 0.2 + low[5] * 0.05, input[1], 1e-12);
+  }
+
+  @Test
+  void scheduledGainsStabilize() {
+    LqrGainTable table = new LqrGainTable(LqrGainTableTest::unicycle, Q, R, 0.5, 3.5, 7);
+    double velocity = 2.2; // between grid points
+    RealMatrix[] model = unicycle(velocity);
+    double[] x = {0.3, -0.4, 0.2};
+    double[] u = new double[2];
+    for (int k = 0; k < 500; k++) {
+      // the error is the negated state
+      table.calculate(velocity, new double[] {-x[0], -x[1], -x[2]}, u);
+      x = model[0].operate(x);
+      double[] bu = model[1].operate(u);
+      for (int i = 0; i < 3; i++) {
+        x[i] += bu[i];
+      }
+    }
+    for (double value : x) {
+      assertEquals(0, value, 1e-3);
+    }
+  }
+
+  @Test
+  void unstabilizableModelThrows() {
+    // at standstill the cross-track error can't be corrected
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new LqrGainTable(LqrGainTableTest::unicycle, Q, R, 0, 1, 3));
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.mineinjava.quail.util.MiniPID;
+import org.junit.jupiter.api.Test;
+
+public class MiniPIDTest {
+
+  @Test
+  void timedIntegralIgnoresLoopRate() {
+    double[] steps = {0.01, 0.05};
+    for (double dt : steps) {
+      MiniPID pid = new MiniPID(0, 1, 0);
+      for (int i = 0; i < Math.round(1 / dt); i++) {
+        pid.getOutput(0, 1, dt);
+      }
+      // the error of 1 was integrated over one second
+      assertEquals(1, pid.getOutput(0, 1, 0), 1e-9);
+    }
+  }
+
+  @Test
+  void timedDerivativeIsARate() {
+    double[] steps = {0.01, 0.05};
+    for (double dt : steps) {
+      MiniPID pid = new MiniPID(0, 0, 1);
+      double output = 0;
+      for (int i = 0; i <= 10; i++) {
+        output = pid.getOutput(2 * dt * i, 0, dt);
+      }
+      assertEquals(-2, output, 1e-9);
+    }
+  }
+
+  @Test
+  void derivativeFilterSmoothsSteps() {
+    MiniPID raw = new MiniPID(0, 0, 1);
+    MiniPID filtered = new MiniPID(0, 0, 1);
+    filtered.setDerivativeFilter(0.1);
+    raw.getOutput(0, 0, 0.01);
+    filtered.getOutput(0, 0, 0.01);
+    double rawOutput = raw.getOutput(1, 0, 0.01);
+    double filteredOutput = filtered.getOutput(1, 0, 0.01);
+    assertEquals(-100, rawOutput, 1e-9);
+    assertEquals(-100 * 0.01 / 0.11, filteredOutput, 1e-9);
+    // the filtered derivative decays instead of dropping straight back to zero
+    assertEquals(0, raw.getOutput(1, 0, 0.01), 1e-9);
+    assertTrue(filtered.getOutput(1, 0, 0.01) < 0);
+  }
+
+  @Test
+  void trapezoidalIntegrationIsExactForRamps() {
+    MiniPID pid = new MiniPID(0, 1, 0);
+    pid.setTrapezoidalIntegration(true);
+    // the error grows linearly to 1 over one second, so its integral is 0.5
+    for (int i = 0; i <= 10; i++) {
+      pid.getOutput(0, i * 0.1, i == 0 ? 0 : 0.1);
+    }
+    assertEquals(0.5, pid.getOutput(0, 1, 0), 1e-9);
+  }
+
+  @Test
+  void timestampsGiveTheTimeStep() {
+    MiniPID pid = new MiniPID(0, 1, 0);
+    pid.getOutputAt(0, 1, 100.0);
+    pid.getOutputAt(0, 1, 100.25);
+    pid.getOutputAt(0, 1, 100.5);
+    assertEquals(0.5, pid.getOutputAt(0, 1, 100.5), 1e-9);
+
+    pid.reset();
+    assertEquals(0, pid.getOutputAt(0, 1, 200.0), 1e-9);
+  }
+
+  @Test
+  void timedRampRateIsPerSecond() {
+    MiniPID pid = new MiniPID(1, 0, 0);
+    pid.setOutputRampRate(1);
+    pid.getOutput(0, 0, 0.1);
+    assertEquals(0.1, pid.getOutput(0, 10, 0.1), 1e-9);
+    assertEquals(0.3, pid.getOutput(0, 10, 0.2), 1e-9);
+  }
+}
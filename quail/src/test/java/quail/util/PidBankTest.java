@@ -0,0 +1,86 @@
+// Copyright (C) Marcus Kauffman 2023-Present
+
+// This work would not have been possible without the work of many
+// contributors, most notably Colin Montigel. See ACKNOWLEDGEMENT.md for
+// more details.
+
+// This file is part of Quail.
+
+// Quail is free software: you can redistribute it and/or modify it
+// underthe terms of the GNU General Public License as published by the
+// Free Software Foundation, version 3.
+
+// Quail is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+// for more details.
+
+// You should have received a copy of the GNU General Public License
+// along with Quail. If not, see <https://www.gnu.org/licenses/>
+
+package quail.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.mineinjava.quail.util.MiniPID;
+import com.mineinjava.quail.util.PidBank;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class PidBankTest {
+
+  @Test
+  void matchesMiniPid() {
+    int size = 6;
+    Random random = new Random(41);
+    PidBank bank = new PidBank(size);
+    MiniPID[] controllers = new MiniPID[size];
+    for (int k = 0; k < size; k++) {
+      double p = random.nextDouble();
+      double i = random.nextDouble() * 0.1;
+      double d = random.nextDouble() * 0.5;
+      double f = random.nextDouble() * 0.2;
+      controllers[k] = new MiniPID(p, i, d, f);
+      bank.setPID(k, p, i, d, f);
+    }
+    // give each controller a different set of the optional features
+    controllers[1].setOutputLimits(0.5);
+    bank.setOutputLimits(1, 0.5);
+    controllers[2].setOutputRampRate(0.05);
+    bank.setOutputRampRate(2, 0.05);
+    controllers[3].setOutputFilter(0.3);
+    bank.setOutputFilter(3, 0.3);
+    controllers[3].setMaxIOutput(0.2);
+    bank.setMaxIOutput(3, 0.2);
+    controllers[4].setDeadband(0.1);
+    bank.setDeadband(4, 0.1);
+    controllers[4].setSetpointRange(0.4);
+    bank.setSetpointRange(4, 0.4);
+    controllers[5].setDirection(true);
+    bank.setDirection(5, true);
+    controllers[5].setPID(1, 0.05, 0.1, 0);
+    bank.setPID(5, 1, 0.05, 0.1, 0);
+    controllers[5].setOutputLimits(-0.2, 1);
+    bank.setOutputLimits(5, -0.2, 1);
+
+    double[] actuals = new double[size];
+    double[] setpoints = new double[size];
+    double[] outputs = new double[size];
+    for (int step = 0; step < 200; step++) {
+      if (step == 100) {
+        controllers[0].setI(0.3);
+        bank.setI(0, 0.3);
+        controllers[2].reset();
+        bank.reset(2);
+      }
+      for (int k = 0; k < size; k++) {
+        setpoints[k] = step < 50 ? 1 : -0.5;
+        actuals[k] += outputs[k] * 0.1 + (random.nextDouble() - 0.5) * 0.01;
+      }
+      bank.getOutputs(actuals, setpoints, outputs);
+      for (int k = 0; k < size; k++) {
+        assertEquals(controllers[k].getOutput(actuals[k], setpoints[k]), outputs[k], "" + k);
+      }
+    }
+  }
+}